@@ -0,0 +1,37 @@
+package org.anichakra.framework.circuitbreaker.benchmark;
+
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+
+/**
+ * The circuit breaker of the benchmarks. Its fallback answers the input and
+ * every {@link IllegalStateException} is a fault.
+ * 
+ * @author 576219
+ *
+ */
+class BenchmarkCircuitBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+	/**
+	 * 
+	 * @param maxAllowableFaults
+	 *            The number of faults in 20 minutes after which the circuit
+	 *            trips
+	 */
+	BenchmarkCircuitBreaker(final int maxAllowableFaults) {
+		super(new DefaultFaultThreshold() {
+			public int getMaxAllowableFaults() {
+				return maxAllowableFaults;
+			}
+		}, new DefaultHealthThreshold());
+	}
+
+	public Integer executeFallback(Integer k) {
+		return k;
+	}
+
+	protected Class<? extends Exception> getFaultType() {
+		return IllegalStateException.class;
+	}
+}
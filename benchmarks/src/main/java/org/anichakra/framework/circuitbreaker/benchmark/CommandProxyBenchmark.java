@@ -0,0 +1,77 @@
+package org.anichakra.framework.circuitbreaker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The overhead of {@link CommandProxy#execute(Object)} on a closed circuit
+ * compared to calling the {@link Command} directly, in both execution modes,
+ * and the throughput of the fallback on an open circuit.
+ * 
+ * @author 576219
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandProxyBenchmark {
+
+	private final Command<Integer, Integer> command = (k) -> k + 1;
+
+	private int input = 42;
+
+	private CommandProxy<Integer, Integer> callerThreadProxy;
+
+	private CommandProxy<Integer, Integer> threadPoolProxy;
+
+	private CommandProxy<Integer, Integer> openProxy;
+
+	@Setup
+	public void setUp() {
+		callerThreadProxy = new CommandProxy<Integer, Integer>(command, new BenchmarkCircuitBreaker(1000),
+				new DefaultExecutorServiceFactory(4), ExecutionMode.CALLER_THREAD);
+		threadPoolProxy = new CommandProxy<Integer, Integer>(command, new BenchmarkCircuitBreaker(1000),
+				new DefaultExecutorServiceFactory(4), ExecutionMode.THREAD_POOL);
+		BenchmarkCircuitBreaker tripped = new BenchmarkCircuitBreaker(0);
+		tripped.checkFault(new IllegalStateException("fault"));
+		tripped.trip();
+		openProxy = new CommandProxy<Integer, Integer>(command, tripped, new DefaultExecutorServiceFactory(4),
+				ExecutionMode.CALLER_THREAD);
+	}
+
+	@Benchmark
+	public Integer rawCommand() throws CommandExecutionFailureException {
+		return command.execute(input);
+	}
+
+	@Benchmark
+	public Integer closedCallerThread() throws CommandExecutionFailureException {
+		return callerThreadProxy.execute(input);
+	}
+
+	@Benchmark
+	public Integer closedThreadPool() throws CommandExecutionFailureException {
+		return threadPoolProxy.execute(input);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Threads(4)
+	public Integer openFallback() throws CommandExecutionFailureException {
+		return openProxy.execute(input);
+	}
+}
@@ -0,0 +1,61 @@
+package org.anichakra.framework.circuitbreaker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The cost of {@link CircuitBreaker#checkFault(Exception)} when 1, 8 and 64
+ * threads record faults in the same window, and of reading the state of the
+ * circuit with {@link CircuitBreaker#hasTripped()}. The threshold is never
+ * reached, so every call records a fault.
+ * 
+ * @author 576219
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FaultWindowBenchmark {
+
+	private final IllegalStateException fault = new IllegalStateException("fault");
+
+	private BenchmarkCircuitBreaker breaker;
+
+	@Setup
+	public void setUp() {
+		breaker = new BenchmarkCircuitBreaker(Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean checkFault1Thread() {
+		return breaker.checkFault(fault);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean checkFault8Threads() {
+		return breaker.checkFault(fault);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean checkFault64Threads() {
+		return breaker.checkFault(fault);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean hasTripped() {
+		return breaker.hasTripped();
+	}
+}
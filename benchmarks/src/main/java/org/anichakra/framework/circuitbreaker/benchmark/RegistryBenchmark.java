@@ -0,0 +1,85 @@
+package org.anichakra.framework.circuitbreaker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of resolving a circuit by name with
+ * {@link DefaultCommandRegistry#discover(String)} among 100 registered
+ * circuits, against calling it through the {@link CircuitHandle} kept from
+ * its registration.
+ * 
+ * @author 576219
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegistryBenchmark {
+
+	private static final int CIRCUITS = 100;
+
+	private final DefaultCommandRegistry registry = new DefaultCommandRegistry();
+
+	private String name;
+
+	private CircuitHandle<Integer, Integer> handle;
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < CIRCUITS; i++) {
+			registry.register("circuit-" + i, new Circuit<Integer, Integer>() {
+
+				public Command<Integer, Integer> getCommand() {
+					return (k) -> k;
+				}
+
+				public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+					return new BenchmarkCircuitBreaker(1000);
+				}
+
+				public ExecutorServiceFactory getExecutorServiceFactory() {
+					return new DefaultExecutorServiceFactory(1);
+				}
+
+				public ExecutionMode getExecutionMode() {
+					return ExecutionMode.CALLER_THREAD;
+				}
+			});
+		}
+		name = new String("circuit-" + (CIRCUITS / 2));
+		handle = registry.getCircuit(name);
+	}
+
+	@Benchmark
+	public Command<Integer, Integer> discover() {
+		return registry.discover(name);
+	}
+
+	@Benchmark
+	public Integer discoverAndExecute() throws CommandExecutionFailureException {
+		Command<Integer, Integer> command = registry.discover(name);
+		return command.execute(1);
+	}
+
+	@Benchmark
+	public Integer executeHandle() throws CommandExecutionFailureException {
+		return handle.execute(1);
+	}
+}
@@ -0,0 +1,101 @@
+package org.anichakra.framework.circuitbreaker.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.VirtualThreadExecutorServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The time to complete a burst of {@value #CALLS} concurrent calls of 1 ms
+ * each through {@link CommandProxy#executeAsync(Object)}, with the threads of
+ * a {@link DefaultExecutorServiceFactory} or of a
+ * {@link VirtualThreadExecutorServiceFactory}. When the call blocks inside a
+ * synchronized block a virtual thread pins its carrier thread, which shows how
+ * much of the gain of the virtual threads is lost by a pinning Command. On a
+ * runtime older than Java 21 both factories use platform threads.
+ * 
+ * @author 576219
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadBenchmark {
+
+	private static final int CALLS = 256;
+
+	/**
+	 * One monitor per call of a burst, reachable from a static field so that
+	 * the JIT cannot elide the locking of a monitor that does not escape
+	 */
+	private static final Object[] MONITORS = new Object[CALLS];
+
+	static {
+		for (int i = 0; i < CALLS; i++)
+			MONITORS[i] = new Object();
+	}
+
+	@Param({ "platform", "virtual" })
+	private String threads;
+
+	@Param({ "false", "true" })
+	private boolean pinned;
+
+	private CommandProxy<Integer, Integer> proxy;
+
+	@Setup
+	public void setUp() {
+		ExecutorServiceFactory factory = "virtual".equals(threads) ? new VirtualThreadExecutorServiceFactory()
+				: new DefaultExecutorServiceFactory(CALLS);
+		proxy = new CommandProxy<Integer, Integer>(pinned ? new PinningCommand() : new SleepingCommand(),
+				new BenchmarkCircuitBreaker(Integer.MAX_VALUE), factory);
+	}
+
+	@Benchmark
+	public Object burst() {
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Integer>[] calls = new CompletableFuture[CALLS];
+		for (int i = 0; i < CALLS; i++)
+			calls[i] = proxy.executeAsync(i);
+		return CompletableFuture.allOf(calls).join();
+	}
+
+	private static class SleepingCommand implements Command<Integer, Integer> {
+
+		public Integer execute(Integer k) {
+			sleep();
+			return k;
+		}
+	}
+
+	private static class PinningCommand implements Command<Integer, Integer> {
+
+		public Integer execute(Integer k) {
+			// an uncontended monitor, held while the thread blocks
+			synchronized (MONITORS[k]) {
+				sleep();
+			}
+			return k;
+		}
+	}
+
+	private static void sleep() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
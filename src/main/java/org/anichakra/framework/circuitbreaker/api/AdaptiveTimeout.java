@@ -0,0 +1,60 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultAdaptiveTimeout;
+
+/**
+ * The configuration of a timeout that follows the latency of the external
+ * system instead of being fixed. The timeout of each call is a percentile of
+ * the latencies of the successful calls in a rolling window multiplied by a
+ * factor, and it is kept between {@link #getMinimumTimeout()} and the timeout
+ * of the circuit breaker, that is {@link CircuitBreaker#getInvocationTimeout()}.
+ * The timeout of the circuit breaker is also used as long as the window has
+ * not seen {@link #getMinimumNumberOfCalls()} calls.
+ * 
+ * @see DefaultAdaptiveTimeout
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public interface AdaptiveTimeout {
+
+	/**
+	 * The percentile of the latencies from which the timeout is calculated
+	 * 
+	 * @return A percentile between 0 and 100, for example 99
+	 */
+	double getPercentile();
+
+	/**
+	 * 
+	 * @return The factor by which the percentile of the latencies is
+	 *         multiplied to get the timeout
+	 */
+	double getMultiplier();
+
+	/**
+	 * The lower bound of the timeout, so that a burst of very fast calls does
+	 * not make the next ordinary call time out.
+	 * 
+	 * @return The minimum timeout
+	 */
+	Duration getMinimumTimeout();
+
+	/**
+	 * The minimum number of successful calls in the window before the timeout
+	 * is calculated from the latencies.
+	 * 
+	 * @return The number of calls
+	 */
+	int getMinimumNumberOfCalls();
+
+	/**
+	 * The span of the rolling window of the latencies.
+	 * 
+	 * @return Time in seconds
+	 */
+	int getWindowSize();
+}
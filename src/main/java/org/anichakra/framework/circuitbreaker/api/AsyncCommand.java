@@ -0,0 +1,33 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of {@link Command}. A Command calling an
+ * external system through a non-blocking client can implement this interface
+ * as well, so that the calls made through its {@link Circuit} do not need a
+ * thread for each call in flight. The circuit applies the timeout, the fault
+ * accounting, the trip and the fallback by composing the returned future.
+ * 
+ * @author 576219
+ * @see CommandRegistry#discoverAsync(String)
+ * @see Command
+ * @param <K>
+ * @param <V>
+ */
+public interface AsyncCommand<K, V> {
+
+	/**
+	 * The implementation should start the invocation to an remote or external
+	 * system and return without waiting for it.
+	 * 
+	 * @param k
+	 *            Any input parameter
+	 * @return A future that completes with the valid return value from the
+	 *         external interface call, or exceptionally with the underlying
+	 *         exception be it timeout or any connection related system
+	 *         exception.
+	 */
+	CompletableFuture<V> executeAsync(K k);
+
+}
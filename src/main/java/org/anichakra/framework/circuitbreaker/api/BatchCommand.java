@@ -0,0 +1,40 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.util.List;
+import java.util.Map;
+
+import org.anichakra.framework.circuitbreaker.impl.BatchingCommand;
+
+/**
+ * A {@link Command} calling the bulk interface of an external system, which
+ * takes many inputs in a single call. It is the Command of a {@link Circuit}
+ * like any other, so the bulk call is protected by the {@link CircuitBreaker}
+ * of that circuit, whose fallback answers for a whole batch. The
+ * {@link BatchingCommand} collects the concurrent calls made for single inputs
+ * into the batches of such a Command.
+ * 
+ * @author 576219
+ * @see BatchingCommand
+ * @see BatchPolicy
+ * @param <K>
+ * @param <V>
+ */
+public interface BatchCommand<K, V> extends Command<List<K>, Map<K, V>> {
+
+	/**
+	 * The implementation should make one invocation to the bulk interface of
+	 * the remote or external system for all the inputs.
+	 * 
+	 * @param keys
+	 *            The distinct inputs of the batch, in the order of the calls
+	 * @return The valid return value of each input. An input missing from the
+	 *         map is considered failed, and only the call made for that input
+	 *         fails.
+	 * @throws CommandExecutionFailureException
+	 *             This will wrap the underlying exception be it timeout or any
+	 *             connection related system exception, and fails all the
+	 *             inputs of the batch.
+	 */
+	Map<K, V> execute(List<K> keys) throws CommandExecutionFailureException;
+
+}
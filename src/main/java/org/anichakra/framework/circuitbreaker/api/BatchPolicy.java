@@ -0,0 +1,33 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.BatchingCommand;
+import org.anichakra.framework.circuitbreaker.impl.DefaultBatchPolicy;
+
+/**
+ * The configuration of the batches of a {@link BatchingCommand}. A batch is
+ * sent to the external system as soon as it holds
+ * {@link #getMaxBatchSize()} inputs, or {@link #getMaxDelay()} after its first
+ * input whichever comes first.
+ * 
+ * @see DefaultBatchPolicy
+ * @author 576219
+ *
+ */
+public interface BatchPolicy {
+
+	/**
+	 * 
+	 * @return The maximum number of distinct inputs in a batch
+	 */
+	int getMaxBatchSize();
+
+	/**
+	 * The maximum time the first call of a batch waits for other calls to
+	 * join it, that is the latency added to a call when the traffic is low.
+	 * 
+	 * @return The maximum delay of a batch
+	 */
+	Duration getMaxDelay();
+}
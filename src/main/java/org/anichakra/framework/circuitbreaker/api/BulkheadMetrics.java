@@ -0,0 +1,36 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The current usage of the bulkhead of a {@link Circuit}.
+ * 
+ * @see BulkheadType
+ * @author 576219
+ *
+ */
+public interface BulkheadMetrics {
+
+	/**
+	 * 
+	 * @return The maximum number of concurrent calls to the external system
+	 */
+	int getMaxConcurrentCalls();
+
+	/**
+	 * 
+	 * @return The number of calls to the external system in progress
+	 */
+	int getActiveCalls();
+
+	/**
+	 * 
+	 * @return The number of calls waiting in the queue of the thread pool, it
+	 *         is always 0 for a {@link BulkheadType#SEMAPHORE} bulkhead
+	 */
+	int getQueueDepth();
+
+	/**
+	 * 
+	 * @return The number of calls rejected because the bulkhead was full
+	 */
+	long getRejectedCalls();
+}
@@ -0,0 +1,34 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The way the concurrent calls to the external system of a {@link Circuit} are
+ * bounded, so that a slow external system cannot hold all the threads of this
+ * system. A call that finds the bulkhead full is rejected and the fallback is
+ * called instead.
+ * 
+ * @see ExecutorServiceFactory#getBulkheadType()
+ * @author 576219
+ *
+ */
+public enum BulkheadType {
+
+	/**
+	 * The concurrent calls are not bounded
+	 */
+	NONE,
+
+	/**
+	 * The concurrent calls are bounded by a semaphore with as many permits as
+	 * the concurrency level, the calls are executed by an unbounded
+	 * ExecutorService or in the calling thread
+	 */
+	SEMAPHORE,
+
+	/**
+	 * The calls are executed by a thread pool with as many threads as the
+	 * concurrency level and a bounded queue. In
+	 * {@link ExecutionMode#CALLER_THREAD} mode this is the same as
+	 * {@link #SEMAPHORE}.
+	 */
+	THREAD_POOL
+}
@@ -0,0 +1,42 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The usage of the cache of the results of a {@link Circuit}.
+ * 
+ * @see CachePolicy
+ * @author 576219
+ *
+ */
+public interface CacheMetrics {
+
+	/**
+	 * 
+	 * @return The number of inputs in the cache
+	 */
+	int getSize();
+
+	/**
+	 * 
+	 * @return The number of calls answered with a fresh result
+	 */
+	long getNumberOfHits();
+
+	/**
+	 * 
+	 * @return The number of calls which found no fresh result
+	 */
+	long getNumberOfMisses();
+
+	/**
+	 * 
+	 * @return The number of calls answered with a stale result in place of the
+	 *         fallback
+	 */
+	long getNumberOfStaleHits();
+
+	/**
+	 * 
+	 * @return The number of results evicted because the cache was full
+	 */
+	long getNumberOfEvictions();
+}
@@ -0,0 +1,46 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.DefaultCachePolicy;
+import org.anichakra.framework.circuitbreaker.impl.ResultCache;
+
+/**
+ * The configuration of the cache of the results of the {@link Command} of a
+ * {@link Circuit}. A result is fresh for {@link #getTimeToLive()} after the
+ * call that returned it, and a call with the same input is answered from the
+ * cache without calling the Command. Once expired the result is kept as stale
+ * for {@link #getMaximumStaleness()}, and it is returned instead of calling
+ * {@link CircuitBreaker#executeFallback(Object)} when the call cannot be made
+ * because the circuit is open. A result older than both is removed from the
+ * cache.
+ * 
+ * @see DefaultCachePolicy
+ * @see ResultCache
+ * @author 576219
+ *
+ */
+public interface CachePolicy {
+
+	/**
+	 * The bound of the memory used by the cache. The oldest inputs are evicted
+	 * first when the cache is full.
+	 * 
+	 * @return The maximum number of inputs in the cache
+	 */
+	int getMaximumSize();
+
+	/**
+	 * 
+	 * @return The time a result is served from the cache instead of calling
+	 *         the Command
+	 */
+	Duration getTimeToLive();
+
+	/**
+	 * 
+	 * @return The time after its expiry a result is still served in place of
+	 *         the fallback of an open circuit
+	 */
+	Duration getMaximumStaleness();
+}
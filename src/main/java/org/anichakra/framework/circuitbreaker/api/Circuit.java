@@ -36,4 +36,93 @@ public interface Circuit<K, V> {
 	 * @return The associated ExecutorServiceFactory.
 	 */
 	ExecutorServiceFactory getExecutorServiceFactory();
+
+	/**
+	 * 
+	 * @return The way the Command is executed. By default each call is
+	 *         executed in a thread of the ExecutorService.
+	 */
+	default ExecutionMode getExecutionMode() {
+		return ExecutionMode.THREAD_POOL;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the timeout that follows the latency of the
+	 *         Command, or null if the timeout of the CircuitBreaker is used as
+	 *         it is. By default it is null.
+	 */
+	default AdaptiveTimeout getAdaptiveTimeout() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return The span of the rolling window of the {@link CircuitMetrics} in
+	 *         seconds. By default it is 60 seconds.
+	 */
+	default int getMetricsWindowSize() {
+		return 60;
+	}
+
+	/**
+	 * Whether the concurrent calls with equal inputs share one execution of
+	 * the Command. A call made while another call with an equal input is in
+	 * flight waits for the outcome of that call, be it its value, its
+	 * exception or its fallback, instead of calling the Command again. Only the
+	 * call in flight is counted by the CircuitBreaker. The inputs must
+	 * implement equals and hashCode, and the Command must not depend on which
+	 * caller calls it.
+	 * 
+	 * @return TRUE to collapse the calls. By default it is FALSE.
+	 */
+	default boolean isRequestCollapsingEnabled() {
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the cache of the results of the Command,
+	 *         or null if the results are not cached. By default it is null.
+	 */
+	default CachePolicy getCachePolicy() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the limit of the concurrent calls that
+	 *         follows the latency of the Command, or null if the calls are
+	 *         only bounded by the bulkhead. By default it is null.
+	 */
+	default ConcurrencyLimit getConcurrencyLimit() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the rate of the calls, or null if the
+	 *         calls are not rate limited. By default it is null.
+	 */
+	default RateLimit getRateLimit() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the retries of the failed calls, or null
+	 *         if the calls are not retried. By default it is null.
+	 */
+	default RetryPolicy getRetryPolicy() {
+		return null;
+	}
+
+	/**
+	 * 
+	 * @return The configuration of the hedged calls, or null if the calls are
+	 *         not hedged. By default it is null.
+	 */
+	default HedgePolicy getHedgePolicy() {
+		return null;
+	}
 }
@@ -1,5 +1,7 @@
 package org.anichakra.framework.circuitbreaker.api;
 
+import java.time.Duration;
+
 import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
 import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
 
@@ -46,6 +48,19 @@ public interface CircuitBreaker<K, V> {
 	 */
 	void trip();
 
+	/**
+	 * The same as {@link #trip()} for a call permitted by
+	 * {@link #acquirePermission()} whose fault has reached the threshold. The
+	 * circuit is opened only if it has made no state transition since the
+	 * permission was given. By default the permission is not checked.
+	 * 
+	 * @param permission
+	 *            The permission of the call
+	 */
+	default void trip(long permission) {
+		trip();
+	}
+
 	/**
 	 * 
 	 * @return TRUE if the circuit is already tripped. If the circuit is again
@@ -54,6 +69,74 @@ public interface CircuitBreaker<K, V> {
 	 */
 	boolean hasTripped();
 
+	/**
+	 * 
+	 * @return The current state of the circuit. By default the circuit is
+	 *         {@link CircuitState#OPEN} if it has tripped, otherwise it is
+	 *         {@link CircuitState#CLOSED}.
+	 */
+	default CircuitState getState() {
+		return hasTripped() ? CircuitState.OPEN : CircuitState.CLOSED;
+	}
+
+	/**
+	 * Adds a listener to be notified of the changes of the state of the
+	 * circuit. By default the state changes are not notified.
+	 * 
+	 * @param listener
+	 */
+	default void addStateTransitionListener(StateTransitionListener listener) {
+	}
+
+	/**
+	 * Removes a listener added with
+	 * {@link #addStateTransitionListener(StateTransitionListener)}.
+	 * 
+	 * @param listener
+	 */
+	default void removeStateTransitionListener(StateTransitionListener listener) {
+	}
+
+	/**
+	 * This method is invoked before each call to the {@link Command} to decide
+	 * whether the call can go to the external system or the fallback has to be
+	 * called instead. In {@link CircuitState#HALF_OPEN} state a call that is
+	 * permitted is a trial request and consumes one of the limited permits.
+	 * 
+	 * @return TRUE if the Command can be called. By default it is permitted
+	 *         when the circuit has not tripped.
+	 */
+	default boolean tryAcquirePermission() {
+		return !hasTripped();
+	}
+
+	/**
+	 * The same as {@link #tryAcquirePermission()}, but the permission names
+	 * the generation of the state of the circuit in which it was given, that
+	 * is the number of state transitions so far. The permission is passed back
+	 * with the outcome of the call to {@link #recordSuccess(long)} or
+	 * {@link #checkFault(Exception, long)}, so that the outcome of a call
+	 * permitted before a later state transition can be ignored.
+	 * 
+	 * @return The permission, or a negative value if the Command cannot be
+	 *         called. By default the generation is always 0.
+	 */
+	default long acquirePermission() {
+		return tryAcquirePermission() ? 0 : -1;
+	}
+
+	/**
+	 * Gives back the permission of a call which has not been made after all,
+	 * like a call rejected by the bulkhead of the circuit, so that a trial
+	 * request of the {@link CircuitState#HALF_OPEN} state is not lost. By
+	 * default there is nothing to give back.
+	 * 
+	 * @param permission
+	 *            The permission of the call
+	 */
+	default void releasePermission(long permission) {
+	}
+
 	/**
 	 * 
 	 * @return The timeout in seconds for the external service call. The
@@ -68,6 +151,20 @@ public interface CircuitBreaker<K, V> {
 	 */
 	int invocationTimeout();
 
+	/**
+	 * The timeout of the external service call with a precision finer than a
+	 * second, for external systems that answer within milliseconds. It takes
+	 * precedence over {@link #invocationTimeout()} which is only used by the
+	 * default implementation of this method.
+	 * 
+	 * @return The timeout for the external service call. When the circuit has
+	 *         an {@link AdaptiveTimeout} this is the upper bound of the
+	 *         timeout.
+	 */
+	default Duration getInvocationTimeout() {
+		return Duration.ofSeconds(invocationTimeout());
+	}
+
 	/**
 	 * This will check if the circuit is still workable or circuit breaker need
 	 * to trip and open the connection to external system. This method need to
@@ -86,6 +183,50 @@ public interface CircuitBreaker<K, V> {
 
 	boolean checkFault(Exception exception);
 
+	/**
+	 * The same as {@link #checkFault(Exception)} for a call permitted by
+	 * {@link #acquirePermission()}.
+	 * 
+	 * @param exception
+	 *            The exception that has occurred while calling the
+	 *            {@link Command}
+	 * @param permission
+	 *            The permission of the call
+	 * @return TRUE if fault threshold is reached after adding this exception in
+	 *         the stack. By default the permission is not checked.
+	 */
+	default boolean checkFault(Exception exception, long permission) {
+		return checkFault(exception);
+	}
+
+	/**
+	 * This method is invoked each time the {@link Command} has completed
+	 * without any exception, so that the implementation can keep track of the
+	 * successful calls along with the faults, for example to calculate a
+	 * failure rate.
+	 */
+	default void recordSuccess() {
+	}
+
+	/**
+	 * The same as {@link #recordSuccess()} for a call permitted by
+	 * {@link #acquirePermission()}. By default the permission is not checked.
+	 * 
+	 * @param permission
+	 *            The permission of the call
+	 */
+	default void recordSuccess(long permission) {
+		recordSuccess();
+	}
+
+	/**
+	 * Stops the scheduled health checks once the circuit is closed by its
+	 * {@link CircuitHandle}, so that nothing is run for an unregistered
+	 * circuit. By default there is nothing to stop.
+	 */
+	default void shutdown() {
+	}
+
 	/**
 	 * After the fault has happened and circuit is tripped the circuit breaker
 	 * automatically fires this method intermittently to check the health of the
@@ -0,0 +1,39 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * An event of a registered {@link Circuit}. The events are recycled after
+ * they have been delivered, so a {@link CircuitEventListener} must copy what
+ * it needs from an event instead of keeping a reference to it.
+ * 
+ * @see CircuitEventListener
+ * @author 576219
+ *
+ */
+public interface CircuitEvent {
+
+	/**
+	 * 
+	 * @return The name under which the circuit is registered
+	 */
+	String getCircuitName();
+
+	/**
+	 * 
+	 * @return The type of the event
+	 */
+	CircuitEventType getType();
+
+	/**
+	 * 
+	 * @return The time of the event in milliseconds since the epoch
+	 */
+	long getTimestamp();
+
+	/**
+	 * 
+	 * @return The exception raised by the call for a
+	 *         {@link CircuitEventType#FAILED} or a
+	 *         {@link CircuitEventType#TIMED_OUT} event, otherwise null
+	 */
+	Throwable getFailure();
+}
@@ -0,0 +1,22 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * Receives the {@link CircuitEvent}s of one or all the registered circuits.
+ * The events are delivered in order by a single thread which is not the thread
+ * of the call, so a listener never slows the calls down. A listener which is
+ * slower than the rate of the events makes events to be dropped instead.
+ * 
+ * @see CommandRegistry#subscribe(String, CircuitEventListener)
+ * @author 576219
+ *
+ */
+@FunctionalInterface
+public interface CircuitEventListener {
+
+	/**
+	 * 
+	 * @param event
+	 *            The event, which must not be used after this method returns
+	 */
+	void onEvent(CircuitEvent event);
+}
@@ -0,0 +1,68 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The types of the {@link CircuitEvent}s, that are the transitions of the
+ * {@link CircuitState} and the outcomes of the calls which did not succeed.
+ * 
+ * @see CircuitEventListener
+ * @author 576219
+ *
+ */
+public enum CircuitEventType {
+
+	/**
+	 * The circuit has been opened
+	 */
+	TRIPPED,
+
+	/**
+	 * The circuit has gone to half open state to let trial requests through
+	 */
+	HALF_OPENED,
+
+	/**
+	 * The circuit has been closed again
+	 */
+	RECOVERED,
+
+	/**
+	 * A call was not made because the circuit was open
+	 */
+	SHORT_CIRCUITED,
+
+	/**
+	 * A call was not made because the bulkhead of the circuit was full
+	 */
+	REJECTED,
+
+	/**
+	 * A call was not made because the adaptive concurrency limit of the
+	 * circuit was reached
+	 */
+	LIMITED,
+
+	/**
+	 * A call was not made because the rate limit of the circuit was reached
+	 */
+	THROTTLED,
+
+	/**
+	 * A failed call is made again
+	 */
+	RETRIED,
+
+	/**
+	 * A second attempt of a slow call is made
+	 */
+	HEDGED,
+
+	/**
+	 * A call to the Command timed out
+	 */
+	TIMED_OUT,
+
+	/**
+	 * A call to the Command raised an exception
+	 */
+	FAILED
+}
@@ -0,0 +1,82 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+
+/**
+ * The handle of a {@link Circuit} registered in a {@link CommandRegistry}. It
+ * is typed by the Circuit it was registered with and resolved once, so the
+ * code that calls the Command of the circuit keeps the handle instead of
+ * looking the circuit up by name on every call. The handle also gives the
+ * state and the metrics of the circuit for monitoring.
+ * <p>
+ * Closing the handle unregisters the circuit, shuts down its ExecutorService
+ * and stops the health checks of its CircuitBreaker. A closed handle cannot be
+ * called any more.
+ * 
+ * @see CommandRegistry#register(String, Circuit)
+ * @see CommandProxy
+ * @author 576219
+ *
+ * @param <K>
+ * @param <V>
+ */
+public interface CircuitHandle<K, V> extends Command<K, V>, AsyncCommand<K, V>, AutoCloseable {
+
+	/**
+	 * 
+	 * @return The name under which the circuit is registered
+	 */
+	String getName();
+
+	/**
+	 * 
+	 * @return The current state of the circuit
+	 */
+	CircuitState getState();
+
+	/**
+	 * 
+	 * @return A snapshot of the outcomes and the latencies of the calls in the
+	 *         window of the metrics
+	 */
+	CircuitMetrics getMetrics();
+
+	/**
+	 * 
+	 * @return The current usage of the bulkhead of the circuit
+	 */
+	BulkheadMetrics getBulkheadMetrics();
+
+	/**
+	 * 
+	 * @return The usage of the cache of the results, or null if the circuit
+	 *         has no {@link CachePolicy}
+	 */
+	CacheMetrics getCacheMetrics();
+
+	/**
+	 * 
+	 * @return The current limit of the concurrent calls, or null if the
+	 *         circuit has no {@link ConcurrencyLimit}
+	 */
+	ConcurrencyLimitMetrics getConcurrencyLimitMetrics();
+
+	/**
+	 * 
+	 * @return The rate limiter of the circuit, whose rate can be changed, or
+	 *         null if the circuit has no {@link RateLimit}
+	 */
+	RateLimiter getRateLimiter();
+
+	/**
+	 * 
+	 * @return TRUE if the handle has been closed
+	 */
+	boolean isClosed();
+
+	/**
+	 * Unregisters the circuit and releases its resources. Closing a closed
+	 * handle has no effect.
+	 */
+	void close();
+}
@@ -0,0 +1,125 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.CircuitMetricsRecorder;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+
+/**
+ * A snapshot of the outcomes and the latencies of the calls to the
+ * {@link Command} of a {@link Circuit} over a rolling window of
+ * {@link Circuit#getMetricsWindowSize()} seconds. The values do not change
+ * after the snapshot is taken.
+ * 
+ * @see CommandRegistry#getMetrics(String)
+ * @see CircuitMetricsRecorder
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public interface CircuitMetrics {
+
+	/**
+	 * 
+	 * @return The span of the window of the snapshot
+	 */
+	Duration getWindow();
+
+	/**
+	 * 
+	 * @return The number of calls to the Command that completed without an
+	 *         exception
+	 */
+	long getNumberOfSuccessfulCalls();
+
+	/**
+	 * 
+	 * @return The number of calls to the Command that raised an exception
+	 */
+	long getNumberOfFailedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls to the Command that timed out
+	 */
+	long getNumberOfTimedOutCalls();
+
+	/**
+	 * 
+	 * @return The number of calls that were not made because the circuit was
+	 *         open
+	 */
+	long getNumberOfShortCircuitedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls that were not made because the bulkhead of
+	 *         the circuit was full
+	 */
+	long getNumberOfRejectedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls answered by
+	 *         {@link CircuitBreaker#executeFallback(Object)}
+	 */
+	long getNumberOfFallbackCalls();
+
+	/**
+	 * 
+	 * @return The number of calls that shared the outcome of a call in flight
+	 *         for an equal input instead of calling the Command, see
+	 *         {@link Circuit#isRequestCollapsingEnabled()}
+	 */
+	long getNumberOfCollapsedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls that were not made because the
+	 *         {@link ConcurrencyLimit} of the circuit was reached
+	 */
+	long getNumberOfLimitedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls that were not made because the
+	 *         {@link RateLimit} of the circuit was reached
+	 */
+	long getNumberOfThrottledCalls();
+
+	/**
+	 * 
+	 * @return The number of times a failed call was made again as per the
+	 *         {@link RetryPolicy} of the circuit. The attempts are counted as
+	 *         calls as well.
+	 */
+	long getNumberOfRetries();
+
+	/**
+	 * 
+	 * @return The number of times a second attempt of a slow call was made as
+	 *         per the {@link HedgePolicy} of the circuit. A hedged call is
+	 *         counted once, by the outcome of the attempt that completed it.
+	 */
+	long getNumberOfHedgedCalls();
+
+	/**
+	 * 
+	 * @return The number of calls made to the Command, that is the successful,
+	 *         the failed and the timed out calls
+	 */
+	default long getNumberOfCalls() {
+		return getNumberOfSuccessfulCalls() + getNumberOfFailedCalls() + getNumberOfTimedOutCalls();
+	}
+
+	/**
+	 * The latency of the calls that completed, successfully or not. The timed
+	 * out calls are not included.
+	 * 
+	 * @param percentile
+	 *            A percentile between 0 and 100
+	 * @return The latency below which the percentage of the calls falls, or
+	 *         zero if no call completed in the window
+	 */
+	Duration getLatency(double percentile);
+}
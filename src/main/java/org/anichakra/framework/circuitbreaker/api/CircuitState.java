@@ -0,0 +1,28 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The states of a {@link Circuit} as maintained by its {@link CircuitBreaker}.
+ * 
+ * @see CircuitBreaker#getState()
+ * @author 576219
+ *
+ */
+public enum CircuitState {
+
+	/**
+	 * The circuit is closed and all the calls go to the external system
+	 */
+	CLOSED,
+
+	/**
+	 * The circuit is tripped and all the calls go to the fallback
+	 */
+	OPEN,
+
+	/**
+	 * The circuit is tripped but a limited number of calls are let through to
+	 * the external system as trial requests, whose outcomes decide whether the
+	 * circuit is closed or opened again
+	 */
+	HALF_OPEN
+}
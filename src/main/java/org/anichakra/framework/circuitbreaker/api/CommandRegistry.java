@@ -1,5 +1,7 @@
 package org.anichakra.framework.circuitbreaker.api;
 
+import java.util.Collection;
+
 import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
 
 /**
@@ -9,7 +11,7 @@ import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
  * @author 576219
  *
  */
-public interface CommandRegistry {
+public interface CommandRegistry extends AutoCloseable {
 
 	/**
 	 * 
@@ -21,11 +23,80 @@ public interface CommandRegistry {
 	<K, V> Command<K, V> discover(String string);
 
 	/**
+	 * 
+	 * @param name
+	 *            The name of the circuit
+	 * @return The asynchronous handle of the Command associated with the
+	 *         circuit that is registered
+	 */
+	<K, V> AsyncCommand<K, V> discoverAsync(String name);
+
+	/**
+	 * Registers a circuit. A circuit already registered with the same name is
+	 * replaced and closed.
 	 * 
 	 * @param name
 	 *            The unique name of the circuit
 	 * @param circuit
 	 *            The Circuit instance
+	 * @return The handle of the circuit, to be kept by the code calling its
+	 *         Command
+	 */
+	<K, V> CircuitHandle<K, V> register(String name, Circuit<K, V> circuit);
+
+	/**
+	 * 
+	 * @param name
+	 *            The name of the circuit
+	 * @return The handle of the circuit, or null if no circuit is registered
+	 *         with the name
+	 */
+	<K, V> CircuitHandle<K, V> getCircuit(String name);
+
+	/**
+	 * 
+	 * @return A snapshot of the handles of all the registered circuits
+	 */
+	Collection<CircuitHandle<?, ?>> getCircuits();
+
+	/**
+	 * Unregisters a circuit and closes its handle.
+	 * 
+	 * @param name
+	 *            The name of the circuit
+	 * @return TRUE if a circuit was registered with the name
+	 */
+	boolean unregister(String name);
+
+	/**
+	 * 
+	 * @param name
+	 *            The name of the circuit
+	 * @return A snapshot of the metrics of the circuit, or null if no circuit
+	 *         is registered with the name
+	 */
+	CircuitMetrics getMetrics(String name);
+
+	/**
+	 * Subscribes a listener to the events of a circuit.
+	 * 
+	 * @param name
+	 *            The name of the circuit, or null to receive the events of all
+	 *            the circuits
+	 * @param listener
+	 */
+	void subscribe(String name, CircuitEventListener listener);
+
+	/**
+	 * Unsubscribes a listener from all the events it was subscribed to.
+	 * 
+	 * @param listener
+	 */
+	void unsubscribe(CircuitEventListener listener);
+
+	/**
+	 * Closes all the registered circuits and unsubscribes the listeners
+	 * subscribed through the registry. No circuit can be registered after.
 	 */
-	<K, V> void register(String name, Circuit<K, V> circuit);
+	void close();
 }
@@ -0,0 +1,56 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import org.anichakra.framework.circuitbreaker.impl.AdaptiveConcurrencyLimiter;
+import org.anichakra.framework.circuitbreaker.impl.DefaultConcurrencyLimit;
+
+/**
+ * The configuration of a limit of the concurrent calls of a {@link Circuit}
+ * that follows the latency of the external system. The limit grows while the
+ * latency of the calls stays close to the latency the external system has
+ * without load, and shrinks as soon as the calls get slower than
+ * {@link #getTolerance()} times that latency or time out. The calls above the
+ * limit are not made and answered by
+ * {@link CircuitBreaker#executeFallback(Object)}, so a degraded external
+ * system gets fewer calls well before enough faults are counted to trip the
+ * circuit.
+ *
+ * @see DefaultConcurrencyLimit
+ * @see AdaptiveConcurrencyLimiter
+ * @author 576219
+ *
+ */
+public interface ConcurrencyLimit {
+
+	/**
+	 * 
+	 * @return The limit before any call has completed
+	 */
+	int getInitialLimit();
+
+	/**
+	 * 
+	 * @return The lowest limit, at least 1
+	 */
+	int getMinimumLimit();
+
+	/**
+	 * 
+	 * @return The highest limit
+	 */
+	int getMaximumLimit();
+
+	/**
+	 * The ratio of the latency of the calls to the latency without load below
+	 * which the limit is not decreased.
+	 * 
+	 * @return A ratio of at least 1, for example 1.5
+	 */
+	double getTolerance();
+
+	/**
+	 * 
+	 * @return The factor by which the limit is multiplied when a call times
+	 *         out, between 0 and 1
+	 */
+	double getBackoffRatio();
+}
@@ -0,0 +1,29 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The current state of the adaptive {@link ConcurrencyLimit} of a
+ * {@link Circuit}.
+ *
+ * @author 576219
+ *
+ */
+public interface ConcurrencyLimitMetrics {
+
+	/**
+	 * 
+	 * @return The current limit of the concurrent calls
+	 */
+	int getLimit();
+
+	/**
+	 * 
+	 * @return The number of calls in progress
+	 */
+	int getInFlightCalls();
+
+	/**
+	 * 
+	 * @return The number of calls not made because the limit was reached
+	 */
+	long getLimitedCalls();
+}
@@ -0,0 +1,27 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The way the {@link Command} of a {@link Circuit} is executed.
+ * 
+ * @see Circuit#getExecutionMode()
+ * @author 576219
+ *
+ */
+public enum ExecutionMode {
+
+	/**
+	 * Each call is executed in a thread of the ExecutorService provided by the
+	 * {@link ExecutorServiceFactory}, while the calling thread waits for it
+	 * with the timeout of the {@link CircuitBreaker}
+	 */
+	THREAD_POOL,
+
+	/**
+	 * Each call is executed in the calling thread itself. The timeout of the
+	 * {@link CircuitBreaker} is enforced by the shared timer of the circuits,
+	 * which interrupts the calling thread only when the timeout has passed. The
+	 * Command should respond to the interrupt, a call that completes after
+	 * the timeout is anyway considered as failed.
+	 */
+	CALLER_THREAD
+}
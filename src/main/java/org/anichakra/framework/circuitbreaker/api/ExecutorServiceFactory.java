@@ -4,7 +4,8 @@ import java.util.concurrent.ExecutorService;
 
 /**
  * This Factory class provides an ExecutorService based on the thread pool
- * configuration in implementaton class.
+ * configuration in implementaton class, along with the configuration of the
+ * bulkhead that bounds the concurrent calls of the circuit.
  * 
  * @author 576219
  *
@@ -16,4 +17,41 @@ public interface ExecutorServiceFactory {
 	 * @return An ExecutorService instance
 	 */
 	ExecutorService getExecutorService();
+
+	/**
+	 * 
+	 * @return The type of the bulkhead that bounds the concurrent calls of the
+	 *         circuit. By default the calls are not bounded.
+	 */
+	default BulkheadType getBulkheadType() {
+		return BulkheadType.NONE;
+	}
+
+	/**
+	 * 
+	 * @return The maximum number of concurrent calls of the circuit when a
+	 *         bulkhead is used
+	 */
+	default int getConcurrencyLevel() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * 
+	 * @return The number of calls that can wait in the queue of a
+	 *         {@link BulkheadType#THREAD_POOL} bulkhead when all the threads
+	 *         are busy
+	 */
+	default int getQueueCapacity() {
+		return 0;
+	}
+
+	/**
+	 * 
+	 * @return TRUE if a call rejected by a full bulkhead has to be considered
+	 *         as a fault of the circuit
+	 */
+	default boolean isRejectionCountedAsFault() {
+		return false;
+	}
 }
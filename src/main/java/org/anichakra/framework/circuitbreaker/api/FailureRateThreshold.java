@@ -0,0 +1,50 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFailureRateThreshold;
+
+/**
+ * A {@link FaultThreshold} that is reached when the percentage of failed calls
+ * goes above a rate, instead of when an absolute number of faults is reached.
+ * The rate is calculated over a sliding window of either the last N calls or
+ * the calls in the last N seconds, and only once the window has seen a minimum
+ * number of calls. When a circuit breaker is configured with this threshold
+ * {@link #getMaxAllowableFaults()} is not used to trip the circuit.
+ * 
+ * @see DefaultFailureRateThreshold
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public interface FailureRateThreshold extends FaultThreshold {
+
+	/**
+	 * The failure rate in percentage above which the circuit is tripped
+	 * 
+	 * @return A percentage between 0 and 100
+	 */
+	float getFailureRateThreshold();
+
+	/**
+	 * The minimum number of calls in the window before the failure rate is
+	 * considered. This avoids tripping the circuit on a handful of calls.
+	 * 
+	 * @return The number of calls
+	 */
+	int getMinimumNumberOfCalls();
+
+	/**
+	 * 
+	 * @return Whether the window is count based or time based
+	 */
+	SlidingWindowType getSlidingWindowType();
+
+	/**
+	 * The size of the sliding window.
+	 * 
+	 * @return The number of calls for a {@link SlidingWindowType#COUNT_BASED}
+	 *         window or the number of seconds for a
+	 *         {@link SlidingWindowType#TIME_BASED} window
+	 */
+	int getSlidingWindowSize();
+}
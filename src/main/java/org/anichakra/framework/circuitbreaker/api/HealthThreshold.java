@@ -40,4 +40,18 @@ public interface HealthThreshold {
 	 */
 	int getMaxDurationForHealthCheck();
 
+	/**
+	 * The number of real calls that are let through as trial requests when the
+	 * circuit goes to {@link CircuitState#HALF_OPEN} state after
+	 * {@link #getDelayBetweenHealthChecks()}. The circuit is closed when all of
+	 * them succeed and opened again when any of them fails. When it is 0 no
+	 * trial request is made and the health is checked only by calling
+	 * {@link CircuitBreaker#checkHealth()} repeatedly.
+	 * 
+	 * @return The number of trial requests
+	 */
+	default int getPermittedCallsInHalfOpenState() {
+		return 0;
+	}
+
 }
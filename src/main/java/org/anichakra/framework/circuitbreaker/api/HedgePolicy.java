@@ -0,0 +1,67 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.DefaultHedgePolicy;
+import org.anichakra.framework.circuitbreaker.impl.Hedger;
+
+/**
+ * The configuration of the hedged calls of a {@link Circuit}. When a call has
+ * not completed after a percentile of the latencies of the successful calls,
+ * a second attempt with the same input is made and the call completes with
+ * the first attempt that succeeds, the other one is cancelled. A hedged call
+ * that succeeds is a success, the slow attempt is never checked as a fault.
+ * <p>
+ * Only an idempotent Command, typically a read, may be hedged. The calls are
+ * hedged in {@link ExecutionMode#THREAD_POOL} mode only, and asynchronous
+ * calls only when the Command is not an {@link AsyncCommand}, since both
+ * attempts need a thread of their own. No call is hedged as long as the
+ * window has not seen {@link #getMinimumNumberOfCalls()} successful calls.
+ * <p>
+ * The hedges are bounded by a {@link Hedger}: the hedges of the last seconds
+ * cannot be more than {@link #getHedgeBudgetRatio()} of the calls of the same
+ * seconds, so that a slow external system gets at most that much more load.
+ *
+ * @see DefaultHedgePolicy
+ * @author 576219
+ *
+ */
+public interface HedgePolicy {
+
+	/**
+	 * The percentile of the latencies after which a call is hedged
+	 * 
+	 * @return A percentile between 0 and 100, for example 95
+	 */
+	double getPercentile();
+
+	/**
+	 * The lower bound of the delay before a hedge, so that a burst of very
+	 * fast calls does not hedge the next ordinary call.
+	 * 
+	 * @return The minimum delay
+	 */
+	Duration getMinimumDelay();
+
+	/**
+	 * The minimum number of successful calls in the window before the calls
+	 * are hedged.
+	 * 
+	 * @return The number of calls
+	 */
+	int getMinimumNumberOfCalls();
+
+	/**
+	 * The span of the rolling window of the latencies.
+	 * 
+	 * @return Time in seconds
+	 */
+	int getWindowSize();
+
+	/**
+	 * 
+	 * @return The number of hedges allowed for every call, for example 0.05
+	 *         for one hedge every twenty calls
+	 */
+	double getHedgeBudgetRatio();
+}
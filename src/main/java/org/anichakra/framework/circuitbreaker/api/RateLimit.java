@@ -0,0 +1,45 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.DefaultRateLimit;
+import org.anichakra.framework.circuitbreaker.impl.TokenBucketRateLimiter;
+
+/**
+ * The configuration of the rate of the calls of a {@link Circuit} to an
+ * external system which enforces a quota. The calls take their permits from a
+ * token bucket that holds up to {@link #getBurstSize()} permits and is refilled
+ * at {@link #getPermitsPerSecond()}. A call that finds the bucket empty waits
+ * for its permit up to {@link #getMaximumWait()}, or is answered by
+ * {@link CircuitBreaker#executeFallback(Object)} right away when it would have
+ * to wait longer. The throttled calls are never checked as faults, since the
+ * external system has not been called at all.
+ *
+ * @see DefaultRateLimit
+ * @see TokenBucketRateLimiter
+ * @see RateLimiter
+ * @author 576219
+ *
+ */
+public interface RateLimit {
+
+	/**
+	 * 
+	 * @return The number of permits added to the bucket every second
+	 */
+	double getPermitsPerSecond();
+
+	/**
+	 * 
+	 * @return The number of permits the bucket holds, that is the number of
+	 *         calls that can be made at once after a quiet period
+	 */
+	int getBurstSize();
+
+	/**
+	 * 
+	 * @return The longest time a call waits for its permit, or zero to answer
+	 *         the call by the fallback as soon as the bucket is empty
+	 */
+	Duration getMaximumWait();
+}
@@ -0,0 +1,52 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The rate limiter of a {@link Circuit} with a {@link RateLimit}. Its rate can
+ * be changed while the circuit is in use, for example when the quota of the
+ * external system changes, and the change applies to the next call.
+ *
+ * @see CircuitHandle#getRateLimiter()
+ * @author 576219
+ *
+ */
+public interface RateLimiter {
+
+	/**
+	 * 
+	 * @return The number of permits added to the bucket every second
+	 */
+	double getPermitsPerSecond();
+
+	/**
+	 * 
+	 * @param permitsPerSecond
+	 *            The new number of permits added to the bucket every second
+	 */
+	void setPermitsPerSecond(double permitsPerSecond);
+
+	/**
+	 * 
+	 * @return The number of permits the bucket holds
+	 */
+	int getBurstSize();
+
+	/**
+	 * 
+	 * @param burstSize
+	 *            The new number of permits the bucket holds
+	 */
+	void setBurstSize(int burstSize);
+
+	/**
+	 * 
+	 * @return The number of permits in the bucket now
+	 */
+	int getAvailablePermits();
+
+	/**
+	 * 
+	 * @return The number of calls answered by the fallback because no permit
+	 *         was available in time
+	 */
+	long getThrottledCalls();
+}
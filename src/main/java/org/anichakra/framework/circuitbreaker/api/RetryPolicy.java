@@ -0,0 +1,87 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import org.anichakra.framework.circuitbreaker.impl.DefaultRetryPolicy;
+import org.anichakra.framework.circuitbreaker.impl.RetryBudget;
+
+/**
+ * The configuration of the retries of the calls of a {@link Circuit} that
+ * failed with a {@link CommandExecutionFailureException}. A failed call is
+ * made again after a backoff that grows exponentially with every attempt and
+ * is shortened by a random jitter, so that the callers which failed together
+ * do not retry together. Every attempt goes through the CircuitBreaker again.
+ * <p>
+ * The retries are bounded by a {@link RetryBudget}: the retries of the last
+ * seconds cannot be more than {@link #getRetryBudgetRatio()} of the successful
+ * calls of the same seconds, plus {@link #getMinimumRetriesPerSecond()}. When
+ * the external system fails the successful calls stop and so do the retries,
+ * and no call is retried while the circuit is not closed.
+ *
+ * @see DefaultRetryPolicy
+ * @author 576219
+ *
+ */
+public interface RetryPolicy {
+
+	/**
+	 * 
+	 * @return The maximum number of attempts of a call, the first one
+	 *         included
+	 */
+	int getMaxAttempts();
+
+	/**
+	 * 
+	 * @return The backoff before the first retry
+	 */
+	Duration getInitialBackoff();
+
+	/**
+	 * 
+	 * @return The factor by which the backoff is multiplied after every retry
+	 */
+	double getBackoffMultiplier();
+
+	/**
+	 * 
+	 * @return The longest backoff
+	 */
+	Duration getMaximumBackoff();
+
+	/**
+	 * The part of the backoff which is random. With a jitter of 0.5 the
+	 * backoff is between half of and the whole calculated backoff.
+	 * 
+	 * @return A fraction between 0 and 1
+	 */
+	double getJitter();
+
+	/**
+	 * 
+	 * @return The number of retries allowed for every successful call, for
+	 *         example 0.1 for one retry every ten successful calls
+	 */
+	double getRetryBudgetRatio();
+
+	/**
+	 * The retries allowed whatever the number of successful calls, so that a
+	 * circuit with little traffic can retry too.
+	 * 
+	 * @return The number of retries per second
+	 */
+	int getMinimumRetriesPerSecond();
+
+	/**
+	 * Whether a failure is worth retrying. By default every failure is.
+	 * 
+	 * @param exception
+	 *            The exception raised by the Command, or a
+	 *            {@link TimeoutException} if the call timed out
+	 * @return TRUE to retry the call
+	 */
+	default boolean isRetryable(Exception exception) {
+		return true;
+	}
+}
@@ -0,0 +1,22 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * The type of the sliding window over which the failure rate of a
+ * {@link FailureRateThreshold} is calculated.
+ * 
+ * @see FailureRateThreshold
+ * @author 576219
+ *
+ */
+public enum SlidingWindowType {
+
+	/**
+	 * The window holds the outcomes of the last N calls
+	 */
+	COUNT_BASED,
+
+	/**
+	 * The window holds the outcomes of the calls made in the last N seconds
+	 */
+	TIME_BASED
+}
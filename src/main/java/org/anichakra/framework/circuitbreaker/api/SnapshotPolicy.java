@@ -0,0 +1,47 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+import java.io.File;
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultSnapshotPolicy;
+
+/**
+ * The configuration of the snapshots of the state of the circuits of a
+ * {@link CommandRegistry}, so that a restarted process does not call an
+ * external system which is still failing as if all its circuits were closed.
+ * The state of each circuit, the time it was opened and the faults in its
+ * window are saved to a local file every {@link #getInterval()} and when the
+ * registry is closed, and restored when a circuit of the same name is
+ * registered again.
+ * <p>
+ * A snapshot is restored only if it is not older than
+ * {@link #getMaximumAge()}. A circuit which was open or half open is restored
+ * open and recovers as if it had been open since the time saved, and only the
+ * faults still within the window of the circuit are restored.
+ *
+ * @see DefaultSnapshotPolicy
+ * @see DefaultCommandRegistry
+ * @author 576219
+ *
+ */
+public interface SnapshotPolicy {
+
+	/**
+	 * 
+	 * @return The file of the snapshots, written by one registry only
+	 */
+	File getFile();
+
+	/**
+	 * 
+	 * @return The interval between two snapshots
+	 */
+	Duration getInterval();
+
+	/**
+	 * 
+	 * @return The age after which a snapshot is ignored
+	 */
+	Duration getMaximumAge();
+}
@@ -0,0 +1,23 @@
+package org.anichakra.framework.circuitbreaker.api;
+
+/**
+ * Is notified by a {@link CircuitBreaker} each time its {@link CircuitState}
+ * changes. It is called by the thread which has changed the state, so it must
+ * return quickly.
+ * 
+ * @see CircuitBreaker#addStateTransitionListener(StateTransitionListener)
+ * @author 576219
+ *
+ */
+@FunctionalInterface
+public interface StateTransitionListener {
+
+	/**
+	 * 
+	 * @param from
+	 *            The previous state of the circuit
+	 * @param to
+	 *            The new state of the circuit
+	 */
+	void onStateTransition(CircuitState from, CircuitState to);
+}
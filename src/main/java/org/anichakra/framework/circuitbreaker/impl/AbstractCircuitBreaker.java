@@ -1,27 +1,46 @@
 package org.anichakra.framework.circuitbreaker.impl;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
 import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.FailureRateThreshold;
 import org.anichakra.framework.circuitbreaker.api.FaultThreshold;
 import org.anichakra.framework.circuitbreaker.api.HealthThreshold;
+import org.anichakra.framework.circuitbreaker.api.StateTransitionListener;
 
 /**
  * The abstract {@link CircuitBreaker} that provides a default implementation of
  * the trip functionality along with the check functionalities. It abstracts and
  * keeps open the implementation of the fallback method and the checkHealth
  * method to the implementer.
- * 
+ * <p>
+ * The state of the circuit, the generation of that state, that is the number
+ * of transitions so far, and the time the circuit has left the closed state
+ * are packed in a single word. Every transition is one compare-and-set of the
+ * word from the exact state it was decided on, so two threads can never both
+ * open the circuit or start two recoveries for one trip, and reading the state
+ * on the path of every call is a single volatile load. The outcome of a call
+ * that was permitted in an earlier generation is ignored.
+ * <p>
+ * The word and the window of the faults are kept in a
+ * {@link CircuitStateSlot}, of the circuit breaker itself by default, or of a
+ * {@link CircuitStateStore} shared with the circuit breakers of the same name
+ * in other processes. Such a circuit breaker takes over the recovery of a
+ * circuit opened by another process, as the trip of that process may be its
+ * last, and notifies its listeners of the transitions made by the other
+ * processes once it sees them. The permits of the half open state and the
+ * window of a {@link FailureRateThreshold} stay local to each process.
  * 
  * @author 576219
  *
@@ -30,31 +49,105 @@ import org.anichakra.framework.circuitbreaker.api.HealthThreshold;
  */
 public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K, V> {
 
-	private AtomicBoolean closed = new AtomicBoolean(true);
+	private static final int STATE_BITS = 2;
+
+	private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+
+	private static final int GENERATION_BITS = 22;
+
+	private static final long GENERATION_MASK = (1L << GENERATION_BITS) - 1;
+
+	private static final int SINCE_SHIFT = STATE_BITS + GENERATION_BITS;
+
+	/**
+	 * The time since the creation of the circuit breaker is kept in
+	 * milliseconds on the remaining 40 bits, that is about 34 years
+	 */
+	private static final long SINCE_MASK = -1L >>> SINCE_SHIFT;
+
+	/**
+	 * Returned when a transition has not been made, no packed word has all its
+	 * state bits set
+	 */
+	private static final long NO_TRANSITION = -1L;
+
+	private static final CircuitState[] STATES = CircuitState.values();
+
+	/**
+	 * The state, the generation and the time the circuit left the closed
+	 * state, and the faults. A new slot holds the word of the closed state,
+	 * which is 0.
+	 */
+	private final CircuitStateSlot state;
+
+	/**
+	 * The time from which the times in the word are counted, moved back when
+	 * a circuit opened before is restored
+	 */
+	private volatile long createdMillis;
+
+	private final long faultWindowMillis;
+
+	/**
+	 * The latest word this circuit breaker has made or seen, to tell the
+	 * transitions made by another process when the slot is shared
+	 */
+	private final AtomicLong knownWord = new AtomicLong();
+
+	/**
+	 * The number of transitions being made by this circuit breaker, whose
+	 * words are not yet known when they are set
+	 */
+	private final AtomicInteger transitionsInProgress = new AtomicInteger();
 
 	/**
 	 * The default timeout in seconds for external system calls
 	 */
 	private final static int INVOCATION_TIMEOUT = 60;
 
-	private Queue<Long> faultQueue = new ConcurrentLinkedQueue<Long>();
+	/**
+	 * The timeout of {@link #invocationTimeout()}, kept so that the timeout
+	 * of every call does not allocate a Duration
+	 */
+	private volatile Duration invocationTimeoutDuration = Duration.ofSeconds(INVOCATION_TIMEOUT);
+
+	private final OutcomeWindow outcomeWindow;
 
 	private AtomicInteger healthCheckCounter = new AtomicInteger(0);
 
+	private final AtomicInteger halfOpenPermits = new AtomicInteger(0);
+
+	private final AtomicInteger halfOpenSuccesses = new AtomicInteger(0);
+
+	/**
+	 * The time the last trial request was permitted in half open state
+	 */
+	private volatile long lastTrialMillis;
+
 	private final FaultThreshold faultThreshold;
 
 	private final HealthThreshold healthThreshold;
 
-	private ExecutorService executor;
+	private final CircuitClock clock;
+
+	private volatile boolean shutdown;
+
+	/**
+	 * The move to half open state or the health checks scheduled by the last
+	 * trip, cancelled on {@link #shutdown()}
+	 */
+	private volatile Future<?> pendingHalfOpen;
+
+	private volatile Recovery pendingRecovery;
+
+	private final List<StateTransitionListener> stateTransitionListeners = new CopyOnWriteArrayList<StateTransitionListener>();
 
 	/**
 	 * Creates an instance of {@link CircuitBreaker} with
 	 * {@link DefaultFaultThreshold} and {@link DefaultHealthThreshold}.
 	 */
 	protected AbstractCircuitBreaker() {
-		this.faultThreshold = new DefaultFaultThreshold();
-		this.healthThreshold = new DefaultHealthThreshold();
-		executor = Executors.newCachedThreadPool();
+		this(new DefaultFaultThreshold(), new DefaultHealthThreshold());
 	}
 
 	/**
@@ -65,45 +158,367 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 	 * @param healthThreshold
 	 */
 	protected AbstractCircuitBreaker(final FaultThreshold faultThreshold, final HealthThreshold healthThreshold) {
+		this(faultThreshold, healthThreshold, SystemClock.INSTANCE);
+	}
+
+	/**
+	 * Creates an instance of {@link CircuitBreaker} with the passed
+	 * {@link DefaultFaultThreshold} and {@link DefaultHealthThreshold} which
+	 * reads the time and schedules its health checks with the passed clock.
+	 * 
+	 * @param faultThreshold
+	 * @param healthThreshold
+	 * @param clock
+	 *            The {@link SystemClock}, or a {@link VirtualClock} to
+	 *            simulate the circuit breaker
+	 */
+	protected AbstractCircuitBreaker(final FaultThreshold faultThreshold, final HealthThreshold healthThreshold,
+			final CircuitClock clock) {
+		this(faultThreshold, healthThreshold, clock, null, null);
+	}
+
+	/**
+	 * Creates an instance of {@link CircuitBreaker} with the passed
+	 * {@link DefaultFaultThreshold} and {@link DefaultHealthThreshold} which
+	 * keeps the state of the circuit in the slot of the store for the passed
+	 * name.
+	 * 
+	 * @param faultThreshold
+	 * @param healthThreshold
+	 * @param store
+	 *            A store shared with other processes, like the
+	 *            {@link MappedCircuitStateStore}
+	 * @param name
+	 *            The name of the circuit in the store
+	 */
+	protected AbstractCircuitBreaker(final FaultThreshold faultThreshold, final HealthThreshold healthThreshold,
+			final CircuitStateStore store, final String name) {
+		this(faultThreshold, healthThreshold, SystemClock.INSTANCE, store, name);
+	}
+
+	/**
+	 * 
+	 * @param faultThreshold
+	 * @param healthThreshold
+	 * @param clock
+	 * @param store
+	 *            The store of the state, or null to keep it in the circuit
+	 *            breaker itself
+	 * @param name
+	 *            The name of the circuit in the store
+	 */
+	protected AbstractCircuitBreaker(final FaultThreshold faultThreshold, final HealthThreshold healthThreshold,
+			final CircuitClock clock, final CircuitStateStore store, final String name) {
 		this.faultThreshold = faultThreshold;
 		this.healthThreshold = healthThreshold;
-		executor = Executors.newFixedThreadPool(2);
+		this.clock = clock;
+		this.faultWindowMillis = TimeUnit.MINUTES.toMillis(faultThreshold.getTimeSpanForCheck());
+		this.state = store == null ? new HeapCircuitStateSlot(faultWindowMillis, clock.currentTimeMillis())
+				: store.getSlot(name, faultWindowMillis, clock.currentTimeMillis());
+		this.createdMillis = state.getCreatedMillis();
+		long current = state.getWord();
+		// a circuit left open by another process is taken over on the first call
+		this.knownWord.set(stateOf(current) == CircuitState.CLOSED ? current
+				: pack(CircuitState.CLOSED, generationOf(current) - 1, 0));
+		this.outcomeWindow = newOutcomeWindow(faultThreshold);
 	}
 
 	/**
-	 * Open the circuit and starts a new thread that continuously checks the
-	 * status of the health of the external system by calling the checkHealth()
-	 * method. If health is found restored then it again close the circuit. The
-	 * health is checked until
-	 * {@link HealthThreshold#getMaxDurationForHealthCheck()}. If health is
-	 * still not restored then no more health check is done, and fallback method
-	 * is called forever.
+	 * Open the circuit and schedules its recovery with the {@link CircuitClock}
+	 * without blocking the calling thread.
+	 * <p>
+	 * If {@link HealthThreshold#getPermittedCallsInHalfOpenState()} is set then
+	 * after {@link HealthThreshold#getDelayBetweenHealthChecks()} the circuit
+	 * goes to half open state and lets that many real calls through as trial
+	 * requests. Otherwise the checkHealth() method is called after every
+	 * {@link HealthThreshold#getDelayBetweenHealthChecks()} until the health is
+	 * found restored and the circuit is closed again. The health is checked until
+	 * {@link HealthThreshold#getMaxDurationForHealthCheck()}, that deadline is
+	 * enforced by the clock itself. If health is still not restored then no
+	 * more health check is done, and fallback method is called forever.
 	 */
 
 	public void trip() {
-		if (hasTripped())
+		trip(generationOf(state.getWord()));
+	}
+
+	/**
+	 * Opens the circuit only if it is still in the generation of the
+	 * permission, so that a caller which has seen the fault threshold reached
+	 * before a later transition, like the move to half open state or the
+	 * close of the circuit, does not open it again.
+	 */
+	public void trip(long permission) {
+		if (shutdown)
+			return;
+		long current = state.getWord();
+		if (permission != generationOf(current) || stateOf(current) == CircuitState.OPEN)
+			return;
+		final long open = transition(current, CircuitState.OPEN);
+		if (open != NO_TRANSITION)
+			scheduleRecovery(open, 0);
+	}
+
+	/**
+	 * Schedules the move to half open state or the health checks of the
+	 * circuit opened with the passed word.
+	 * 
+	 * @param elapsedMillis
+	 *            The time the circuit has already been open, which is taken
+	 *            off the first delay and the deadline of the health checks
+	 */
+	private void scheduleRecovery(final long open, long elapsedMillis) {
+		long delayMillis = Math.max(0,
+				TimeUnit.SECONDS.toMillis(healthThreshold.getDelayBetweenHealthChecks()) - elapsedMillis);
+		if (healthThreshold.getPermittedCallsInHalfOpenState() > 0) {
+			pendingHalfOpen = clock.schedule(() -> halfOpen(open), delayMillis, TimeUnit.MILLISECONDS);
+		} else {
+			final Recovery recovery = new Recovery(open);
+			recovery.deadline = clock.schedule(recovery::expire, Math.max(0,
+					TimeUnit.HOURS.toMillis(healthThreshold.getMaxDurationForHealthCheck()) - elapsedMillis),
+					TimeUnit.MILLISECONDS);
+			pendingRecovery = recovery;
+			recovery.scheduleNext(delayMillis);
+		}
+		if (shutdown)
+			cancelPending();
+	}
+
+	/**
+	 * Cancels the scheduled move to half open state and the health checks. The
+	 * circuit stays in the state it is in and is never tripped again.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		cancelPending();
+	}
+
+	private void cancelPending() {
+		Future<?> f = pendingHalfOpen;
+		if (f != null)
+			f.cancel(false);
+		Recovery recovery = pendingRecovery;
+		if (recovery != null) {
+			recovery.expire();
+			recovery.deadline.cancel(false);
+		}
+	}
+
+	/**
+	 * Moves the circuit to half open state with a fresh set of permits for the
+	 * trial requests, if it is still open by the same trip.
+	 */
+	private void halfOpen(long open) {
+		if (shutdown || state.getWord() != open)
+			return;
+		halfOpenSuccesses.set(0);
+		halfOpenPermits.set(healthThreshold.getPermittedCallsInHalfOpenState());
+		long halfOpen = transition(open, CircuitState.HALF_OPEN);
+		if (halfOpen != NO_TRANSITION)
+			watchTrialRequests(halfOpen, getInvocationTimeout().toMillis());
+	}
+
+	/**
+	 * Opens the circuit again if a trial request has not ended within the
+	 * invocation timeout after the last one was permitted, so a permit which
+	 * is never given back, by a caller that died or a call rejected after it
+	 * was permitted, does not keep the circuit half open forever. While no
+	 * trial request is running the circuit stays half open.
+	 */
+	private void watchTrialRequests(final long halfOpen, long delayMillis) {
+		pendingHalfOpen = clock.schedule(() -> {
+			if (shutdown || state.getWord() != halfOpen)
+				return;
+			long timeoutMillis = getInvocationTimeout().toMillis();
+			long sinceLastTrial = clock.currentTimeMillis() - lastTrialMillis;
+			int running = healthThreshold.getPermittedCallsInHalfOpenState() - halfOpenPermits.get()
+					- halfOpenSuccesses.get();
+			if (running <= 0)
+				watchTrialRequests(halfOpen, timeoutMillis);
+			else if (sinceLastTrial >= timeoutMillis)
+				trip(generationOf(halfOpen));
+			else
+				watchTrialRequests(halfOpen, timeoutMillis - sinceLastTrial);
+		}, delayMillis, TimeUnit.MILLISECONDS);
+		if (shutdown)
+			cancelPending();
+	}
+
+	/**
+	 * Closes the circuit and forgets the faults that have tripped it, if it is
+	 * still in the same state.
+	 */
+	private void close(long from) {
+		if (state.getWord() != from)
+			return;
+		state.clearFaults();
+		if (outcomeWindow != null)
+			outcomeWindow.clear();
+		transition(from, CircuitState.CLOSED);
+	}
+
+	/**
+	 * Changes the state of the circuit and notifies the listeners if the word
+	 * has not changed since it was read. The half open state keeps the time
+	 * the circuit was opened.
+	 * 
+	 * @return The new word, or {@link #NO_TRANSITION} if the word has changed
+	 */
+	private long transition(long from, CircuitState to) {
+		long since = to == CircuitState.HALF_OPEN ? sinceOf(from) : clock.currentTimeMillis() - createdMillis;
+		long next = pack(to, generationOf(from) + 1, since);
+		if (state.isShared()) {
+			transitionsInProgress.incrementAndGet();
+			try {
+				if (!state.compareAndSetWord(from, next))
+					return NO_TRANSITION;
+				knownWord.accumulateAndGet(next, AbstractCircuitBreaker::later);
+			} finally {
+				transitionsInProgress.decrementAndGet();
+			}
+		} else if (!state.compareAndSetWord(from, next)) {
+			return NO_TRANSITION;
+		}
+		notifyListeners(stateOf(from), to);
+		return next;
+	}
+
+	private void notifyListeners(CircuitState from, CircuitState to) {
+		for (StateTransitionListener listener : stateTransitionListeners) {
+			try {
+				listener.onStateTransition(from, to);
+			} catch (RuntimeException e) {
+				// a failing listener must not break the state machine
+			}
+		}
+	}
+
+	/**
+	 * Takes over a word of a shared slot that differs from the last word this
+	 * circuit breaker has made or seen and is not of an earlier generation,
+	 * that is a transition made by another process. The word of a transition
+	 * made here is only known once it is set, so nothing is taken over while
+	 * such a transition is in progress, the word is observed again by a later
+	 * call. A process that loses a simultaneous transition still knows the
+	 * word it had read, and takes over the word of the winner.
+	 */
+	private void observe(long current) {
+		if (transitionsInProgress.get() != 0)
+			return;
+		long known = knownWord.get();
+		if (known == current || later(current, known) != current || !knownWord.compareAndSet(known, current))
 			return;
-		closed.set(false);
-		Future<?> future = executor.submit(() -> {
-			boolean healthy = false;
-			do {
-				try {
-					TimeUnit.SECONDS.sleep(healthThreshold.getDelayBetweenHealthChecks());
-					healthy = checkHealth();
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
+		CircuitState to = stateOf(current);
+		if (stateOf(known) != to)
+			notifyListeners(stateOf(known), to);
+		if (shutdown)
+			return;
+		if (to == CircuitState.OPEN) {
+			scheduleRecovery(current, 0);
+		} else if (to == CircuitState.HALF_OPEN) {
+			// the trial requests are let through by the other process, open the circuit again if it never ends them
+			halfOpenPermits.set(0);
+			pendingHalfOpen = clock.schedule(() -> {
+				if (!shutdown && state.getWord() == current)
+					trip(generationOf(current));
+			}, TimeUnit.SECONDS.toMillis(healthThreshold.getDelayBetweenHealthChecks())
+					+ getInvocationTimeout().toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 
+	 * @return The word of the later generation, the generations wrap around
+	 */
+	private static long later(long word, long other) {
+		long ahead = (generationOf(other) - generationOf(word)) & GENERATION_MASK;
+		return ahead != 0 && ahead < GENERATION_MASK >>> 1 ? other : word;
+	}
+
+	private static long pack(CircuitState state, long generation, long sinceMillis) {
+		return state.ordinal() | (generation & GENERATION_MASK) << STATE_BITS
+				| Math.min(Math.max(0, sinceMillis), SINCE_MASK) << SINCE_SHIFT;
+	}
+
+	private static CircuitState stateOf(long word) {
+		return STATES[(int) (word & STATE_MASK)];
+	}
+
+	private static long generationOf(long word) {
+		return (word >>> STATE_BITS) & GENERATION_MASK;
+	}
+
+	private static long sinceOf(long word) {
+		return word >>> SINCE_SHIFT;
+	}
+
+	/**
+	 * 
+	 */
+	public void addStateTransitionListener(StateTransitionListener listener) {
+		stateTransitionListeners.add(listener);
+	}
+
+	/**
+	 * 
+	 */
+	public void removeStateTransitionListener(StateTransitionListener listener) {
+		stateTransitionListeners.remove(listener);
+	}
+
+	private void recordTrialSuccess(long halfOpen) {
+		if (halfOpenSuccesses.incrementAndGet() >= healthThreshold.getPermittedCallsInHalfOpenState())
+			close(halfOpen);
+	}
+
+	/**
+	 * The state of the health checks started by one trip of the circuit.
+	 */
+	private final class Recovery implements Runnable {
+
+		/**
+		 * The word of the circuit opened by the trip
+		 */
+		private final long open;
+
+		private volatile boolean expired;
+
+		private volatile Future<?> probe;
+
+		private Future<?> deadline;
+
+		private Recovery(long open) {
+			this.open = open;
+		}
+
+		private void scheduleNext(long delayMillis) {
+			if (expired)
+				return;
+			probe = clock.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+			if (expired)
+				probe.cancel(false);
+		}
+
+		private void expire() {
+			expired = true;
+			Future<?> f = probe;
+			if (f != null)
+				f.cancel(true);
+		}
+
+		public void run() {
+			if (expired || shutdown || state.getWord() != open)
+				return;
+			checkHealthAsync().thenAccept((healthy) -> {
+				if (expired)
+					return;
+				if (healthy) {
+					deadline.cancel(false);
+					close(open);
+				} else {
+					scheduleNext(TimeUnit.SECONDS.toMillis(healthThreshold.getDelayBetweenHealthChecks()));
 				}
-			} while (!healthy);
-			faultQueue.clear();
-			closed.set(true);
-		});
-		try {
-			future.get(healthThreshold.getMaxDurationForHealthCheck(), TimeUnit.HOURS);
-		} catch (InterruptedException e) {
-			future.cancel(true);
-			Thread.currentThread().interrupt();
-		} catch (ExecutionException | TimeoutException e) {
-			future.cancel(true);
+			});
 		}
 	}
 
@@ -111,7 +526,7 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 	 * Each health check is done in a new {@link Runnable}. If fault happens
 	 * that that is added to the fault counter. For each health check call
 	 * timeout is also set according to
-	 * {@link CircuitBreaker#invocationTimeout()}. If number of faults is less
+	 * {@link CircuitBreaker#getInvocationTimeout()}. If number of faults is less
 	 * than {@link HealthThreshold#getMinAllowableFaults()) within
 	 * {@link HealthThreshold#getTimeSpanForCheck()) then it is considered that
 	 * health is restored.
@@ -122,26 +537,38 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 	 */
 
 	public boolean checkHealth() {
-		Future<?> future = executor.submit(() -> {
+		return checkHealthAsync().join();
+	}
+
+	/**
+	 * Runs one health check in a new {@link Runnable} submitted to the
+	 * {@link CircuitClock} without blocking the calling thread. The timeout of
+	 * the health check is scheduled with the clock as well.
+	 * 
+	 * @return A future that completes with the outcome of
+	 *         {@link #checkHealth()}
+	 */
+	private CompletableFuture<Boolean> checkHealthAsync() {
+		final CompletableFuture<Void> check = new CompletableFuture<Void>();
+		final Future<?> future = clock.submit(() -> {
 			try {
 				executeHealthCheck(healthCheckCounter.getAndIncrement());
-				refreshFaultQueue();
 			} catch (Exception e) {
 				checkFault(e);
 			}
+			check.complete(null);
+		});
+		final Future<?> timeout = check.isDone() ? null : clock.schedule(() -> {
+			if (check.completeExceptionally(new TimeoutException()))
+				future.cancel(true);
+		}, getInvocationTimeout().toNanos(), TimeUnit.NANOSECONDS);
+		return check.handle((v, t) -> {
+			if (timeout != null)
+				timeout.cancel(false);
+			if (t != null)
+				handleException(t instanceof Exception ? (Exception) t : new ExecutionException(t));
+			return state.countFaults(clock.currentTimeMillis()) <= healthThreshold.getMinAllowableFaults();
 		});
-
-		try {
-			future.get(invocationTimeout(), TimeUnit.SECONDS);
-		} catch (InterruptedException e) {
-			future.cancel(true);
-			Thread.currentThread().interrupt();
-			handleException(e);
-		} catch (ExecutionException | TimeoutException e) {
-			future.cancel(true);
-			handleException(e);
-		}
-		return faultQueue.size() <= healthThreshold.getMinAllowableFaults();
 	}
 
 	private void handleException(Exception e) {
@@ -154,35 +581,196 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 	 * Each exception raised need to be added to the fault counter and when the
 	 * {@link FaultThreshold#getMaxAllowableFaults()} is reached within
 	 * {@link FaultThreshold#getTimeSpanForCheck()} then fault threshold is said
-	 * to be reached.
+	 * to be reached. If the fault threshold is a {@link FailureRateThreshold}
+	 * then the threshold is said to be reached when the failure rate of the
+	 * calls in its sliding window goes above
+	 * {@link FailureRateThreshold#getFailureRateThreshold()}.
 	 * <p>
 	 * This method abstracts getFaultType();
 	 */
 
 	public boolean checkFault(Exception e) {
-		if (e instanceof CommandExecutionFailureException || e.getClass().isAssignableFrom(getFaultType())) {
-			faultQueue.offer(System.currentTimeMillis());
-			refreshFaultQueue();
+		return checkFault(e, generationOf(state.getWord()));
+	}
+
+	/**
+	 * The fault of a call permitted in an earlier generation is ignored, it
+	 * tells about the external system before the last transition.
+	 */
+	public boolean checkFault(Exception e, long permission) {
+		long current = state.getWord();
+		if (permission != generationOf(current))
+			return false;
+		long now = clock.currentTimeMillis();
+		boolean fault = e instanceof CommandExecutionFailureException
+				|| e.getClass().isAssignableFrom(getFaultType());
+		if (fault) {
+			state.recordFault(now);
 		}
-		return faultQueue.size() > faultThreshold.getMaxAllowableFaults();
+		if (stateOf(current) == CircuitState.HALF_OPEN) {
+			// a faulty trial request opens the circuit again
+			if (!fault)
+				recordTrialSuccess(current);
+			return fault;
+		}
+		if (outcomeWindow != null) {
+			outcomeWindow.record(fault, now);
+			return isFailureRateExceeded(now);
+		}
+		return state.countFaults(now) > faultThreshold.getMaxAllowableFaults();
+	}
+
+	/**
+	 * Records the successful call in the sliding window of the
+	 * {@link FailureRateThreshold}, if one is configured. In half open state
+	 * the circuit is closed once all the trial requests have succeeded.
+	 */
+	public void recordSuccess() {
+		recordSuccess(generationOf(state.getWord()));
 	}
 
 	/**
-	 * Refreshes the fault queue. Removes faults from the queue if older than
-	 * {@linkplain FaultThreshold#getTimeSpanForCheck()}.
+	 * The success of a call permitted in an earlier generation is ignored.
 	 */
-	protected void refreshFaultQueue() {
-		while ((System.currentTimeMillis() - faultQueue.peek().longValue()) / 60000 > faultThreshold
-				.getTimeSpanForCheck()) {
-			faultQueue.poll();
+	public void recordSuccess(long permission) {
+		long current = state.getWord();
+		if (permission != generationOf(current))
+			return;
+		if (stateOf(current) == CircuitState.HALF_OPEN) {
+			recordTrialSuccess(current);
+		} else if (outcomeWindow != null) {
+			outcomeWindow.record(false, clock.currentTimeMillis());
 		}
 	}
 
+	private boolean isFailureRateExceeded(long now) {
+		FailureRateThreshold threshold = (FailureRateThreshold) faultThreshold;
+		int calls = outcomeWindow.getNumberOfCalls(now);
+		if (calls == 0 || calls < threshold.getMinimumNumberOfCalls())
+			return false;
+		return outcomeWindow.getNumberOfFailedCalls(now) * 100f / calls > threshold.getFailureRateThreshold();
+	}
+
+	private static OutcomeWindow newOutcomeWindow(FaultThreshold faultThreshold) {
+		if (faultThreshold instanceof FailureRateThreshold)
+			return OutcomeWindow.of((FailureRateThreshold) faultThreshold);
+		return null;
+	}
+
 	/**
 	 * Whether the circuit breaker is in tripped state
 	 */
 	public boolean hasTripped() {
-		return !closed.get();
+		return stateOf(state.getWord()) != CircuitState.CLOSED;
+	}
+
+	/**
+	 * The current state of the circuit
+	 */
+	public CircuitState getState() {
+		return stateOf(state.getWord());
+	}
+
+	/**
+	 * 
+	 * @return The time in milliseconds since the epoch at which the circuit
+	 *         was opened, or 0 if it is closed
+	 */
+	public long getOpenSince() {
+		long current = state.getWord();
+		return stateOf(current) == CircuitState.CLOSED ? 0 : createdMillis + sinceOf(current);
+	}
+
+	/**
+	 * Takes a snapshot of the state of the circuit, the time it was opened and
+	 * the faults in its window, to be restored after a restart.
+	 * 
+	 * @return The snapshot
+	 */
+	public CircuitSnapshot snapshot() {
+		long current = state.getWord();
+		long now = clock.currentTimeMillis();
+		CircuitState s = stateOf(current);
+		return new CircuitSnapshot(now, s, s == CircuitState.CLOSED ? 0 : createdMillis + sinceOf(current),
+				state.getFaults(now));
+	}
+
+	/**
+	 * Restores a snapshot taken before a restart. The faults still within the
+	 * window are added to it, and a circuit which was open or half open is
+	 * opened again, with its recovery scheduled as if it had been open since
+	 * the time saved. The trial requests of the half open state are not
+	 * restored, the circuit goes to half open state again after the delay.
+	 * <p>
+	 * Only a circuit breaker which has not made any transition yet is
+	 * restored, and never one whose state is kept in a shared
+	 * {@link CircuitStateSlot}, as the state of the slot outlives the process
+	 * on its own.
+	 * 
+	 * @param snapshot
+	 * @return TRUE if the snapshot has been restored
+	 */
+	public boolean restore(CircuitSnapshot snapshot) {
+		long current = state.getWord();
+		if (shutdown || state.isShared() || current != pack(CircuitState.CLOSED, 0, 0))
+			return false;
+		long now = clock.currentTimeMillis();
+		long[] faults = snapshot.getFaults();
+		for (int i = 0; i < faults.length; i += 2) {
+			if (faults[i] > now - faultWindowMillis && faults[i] <= now)
+				state.addFaults(faults[i], (int) faults[i + 1]);
+		}
+		if (snapshot.getState() == CircuitState.CLOSED)
+			return true;
+		long openSince = Math.min(snapshot.getOpenSinceMillis(), now);
+		createdMillis = Math.min(createdMillis, openSince);
+		long open = pack(CircuitState.OPEN, generationOf(current) + 1, openSince - createdMillis);
+		if (!state.compareAndSetWord(current, open))
+			return false;
+		notifyListeners(CircuitState.CLOSED, CircuitState.OPEN);
+		scheduleRecovery(open, now - openSince);
+		return true;
+	}
+
+	/**
+	 * Permits all the calls when the circuit is closed and none when it is
+	 * open. When it is half open only the configured number of trial requests
+	 * are permitted.
+	 */
+	public boolean tryAcquirePermission() {
+		return acquirePermission() >= 0;
+	}
+
+	/**
+	 * 
+	 */
+	public long acquirePermission() {
+		long current = state.getWord();
+		if (state.isShared())
+			observe(current);
+		CircuitState s = stateOf(current);
+		if (s == CircuitState.CLOSED)
+			return generationOf(current);
+		if (s == CircuitState.OPEN)
+			return -1;
+		int permits;
+		do {
+			permits = halfOpenPermits.get();
+			if (permits <= 0)
+				return -1;
+		} while (!halfOpenPermits.compareAndSet(permits, permits - 1));
+		lastTrialMillis = clock.currentTimeMillis();
+		return generationOf(current);
+	}
+
+	/**
+	 * The permit of a trial request is handed out again if the circuit is
+	 * still half open in the same generation.
+	 */
+	public void releasePermission(long permission) {
+		long current = state.getWord();
+		if (permission == generationOf(current) && stateOf(current) == CircuitState.HALF_OPEN)
+			halfOpenPermits.incrementAndGet();
 	}
 
 	/**
@@ -192,6 +780,20 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 		return INVOCATION_TIMEOUT;
 	}
 
+	/**
+	 * The timeout of {@link #invocationTimeout()} in seconds, the same
+	 * instance while the number of seconds is unchanged.
+	 */
+	public Duration getInvocationTimeout() {
+		int seconds = invocationTimeout();
+		Duration timeout = invocationTimeoutDuration;
+		if (timeout.getSeconds() != seconds) {
+			timeout = Duration.ofSeconds(seconds);
+			invocationTimeoutDuration = timeout;
+		}
+		return timeout;
+	}
+
 	/**
 	 * The external system interface might raise many different types of
 	 * exceptions. But this abstraction is kept so that the implemeter can
@@ -205,11 +807,19 @@ public abstract class AbstractCircuitBreaker<K, V> implements CircuitBreaker<K,
 
 	/**
 	 * The external system call should be done here with some data embedded in
-	 * the method itself.
+	 * the method itself. It need not be implemented when
+	 * {@link HealthThreshold#getPermittedCallsInHalfOpenState()} is set, as the
+	 * trial requests check the health with real calls. If it is not implemented
+	 * otherwise then no health check adds a fault, but the faults that tripped
+	 * the circuit stay in the window of
+	 * {@link FaultThreshold#getTimeSpanForCheck()}. The circuit is closed by the
+	 * first health check after enough of them have left the window for
+	 * {@link HealthThreshold#getMinAllowableFaults()} to be reached.
 	 * 
 	 * @param The
 	 *            number of times the health check is called
 	 */
-	protected abstract void executeHealthCheck(int counter);
+	protected void executeHealthCheck(int counter) {
+	}
 
 }
@@ -0,0 +1,185 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimit;
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimitMetrics;
+
+/**
+ * The limit of the concurrent calls of a circuit, adjusted from the latencies
+ * of the calls as configured by a {@link ConcurrencyLimit}. The limiter keeps
+ * two moving averages of the latency, a long one that stands for the latency
+ * of the external system without load and a short one that follows the
+ * latency of the last calls. After every call the limit is moved towards
+ * <code>limit * gradient + sqrt(limit)</code>, where the gradient is the ratio
+ * of the long average times the tolerance to the short average, kept between
+ * 0.5 and 1. While the external system keeps its latency the limit grows by
+ * about its square root, which is the number of calls it lets queue up, and
+ * once the latency rises the limit shrinks in proportion. A timeout cuts the
+ * limit by the backoff ratio right away.
+ * <p>
+ * Taking a slot for a call is a compare-and-set of the number of calls in
+ * flight against the limit, the limit is only written under a lock. A latency
+ * that finds the lock taken by another thread is dropped rather than waited
+ * for, the next one is applied.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class AdaptiveConcurrencyLimiter implements ConcurrencyLimitMetrics {
+
+	/**
+	 * The number of calls averaged in the long latency
+	 */
+	private static final int LONG_WINDOW = 600;
+
+	/**
+	 * The number of calls averaged in the short latency
+	 */
+	private static final int SHORT_WINDOW = 10;
+
+	/**
+	 * The weight of the new limit when moving the limit towards it
+	 */
+	private static final double SMOOTHING = 0.2;
+
+	private final int minimumLimit;
+
+	private final int maximumLimit;
+
+	private final double tolerance;
+
+	private final double backoffRatio;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder limitedCalls = new LongAdder();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile int limit;
+
+	/**
+	 * The limit before it is rounded, guarded by the lock like the averages
+	 */
+	private double estimatedLimit;
+
+	private double longLatency;
+
+	private double shortLatency;
+
+	private long samples;
+
+	/**
+	 *
+	 * @param concurrencyLimit
+	 */
+	public AdaptiveConcurrencyLimiter(ConcurrencyLimit concurrencyLimit) {
+		if (concurrencyLimit.getMinimumLimit() < 1
+				|| concurrencyLimit.getMaximumLimit() < concurrencyLimit.getMinimumLimit())
+			throw new IllegalArgumentException("Limits must be positive and in order");
+		this.minimumLimit = concurrencyLimit.getMinimumLimit();
+		this.maximumLimit = concurrencyLimit.getMaximumLimit();
+		this.tolerance = Math.max(1, concurrencyLimit.getTolerance());
+		this.backoffRatio = Math.min(1, Math.max(0, concurrencyLimit.getBackoffRatio()));
+		this.estimatedLimit = clamp(concurrencyLimit.getInitialLimit());
+		this.limit = (int) estimatedLimit;
+	}
+
+	/**
+	 *
+	 * @return TRUE if the call can be made, in which case {@link #release()}
+	 *         must be called when it completes
+	 */
+	public boolean tryAcquire() {
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit) {
+				limitedCalls.increment();
+				return false;
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Releases the slot taken by {@link #tryAcquire()}
+	 */
+	public void release() {
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Adjusts the limit to the latency of a call which has completed. The
+	 * limit is not increased while less than half of it is used, as the
+	 * latency then tells nothing about a higher load.
+	 *
+	 * @param latencyNanos
+	 */
+	public void onSample(long latencyNanos) {
+		if (latencyNanos <= 0 || !lock.tryLock())
+			return;
+		try {
+			samples++;
+			if (samples == 1) {
+				longLatency = latencyNanos;
+				shortLatency = latencyNanos;
+			} else {
+				longLatency += (latencyNanos - longLatency) / Math.min(samples, LONG_WINDOW);
+				shortLatency += (latencyNanos - shortLatency) / Math.min(samples, SHORT_WINDOW);
+			}
+			// the external system got much faster, the long average catches up quicker
+			if (longLatency > 2 * shortLatency)
+				longLatency *= 0.95;
+			double gradient = Math.max(0.5, Math.min(1, tolerance * longLatency / shortLatency));
+			double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+			if (inFlight.get() < estimatedLimit / 2)
+				target = Math.min(target, estimatedLimit);
+			update(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Cuts the limit by the backoff ratio after a call has timed out.
+	 */
+	public void onDrop() {
+		lock.lock();
+		try {
+			update(estimatedLimit * backoffRatio);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void update(double estimate) {
+		estimatedLimit = clamp(estimate);
+		limit = (int) estimatedLimit;
+	}
+
+	private double clamp(double estimate) {
+		return Math.max(minimumLimit, Math.min(maximumLimit, estimate));
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInFlightCalls() {
+		return inFlight.get();
+	}
+
+	public long getLimitedCalls() {
+		return limitedCalls.sum();
+	}
+
+	public String toString() {
+		return "ConcurrencyLimitMetrics [limit=" + getLimit() + ", inFlight=" + getInFlightCalls() + ", limited="
+				+ getLimitedCalls() + "]";
+	}
+}
@@ -0,0 +1,52 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of 64 bit words, read and written atomically with volatile
+ * semantics. The buckets of a {@link SlidingTimeWindow} are kept in such
+ * words, on the heap in an {@link AtomicLongArray}, or in a memory-mapped file
+ * shared by the processes of a host through {@link MappedWords}.
+ *
+ * @see SlidingTimeWindow
+ * @author 576219
+ *
+ */
+interface AtomicWords {
+
+	/**
+	 *
+	 * @return The number of words
+	 */
+	int length();
+
+	long get(int index);
+
+	void set(int index, long value);
+
+	boolean compareAndSet(int index, long expected, long value);
+
+	/**
+	 * Creates words on the heap, all zeros.
+	 *
+	 * @param length
+	 *            The number of words
+	 * @return An AtomicWords instance
+	 */
+	static AtomicWords onHeap(int length) {
+		return new HeapWords(length);
+	}
+
+	/**
+	 * The words of an {@link AtomicLongArray}, whose methods are the ones of
+	 * the interface
+	 */
+	final class HeapWords extends AtomicLongArray implements AtomicWords {
+
+		private static final long serialVersionUID = 1L;
+
+		private HeapWords(int length) {
+			super(length);
+		}
+	}
+}
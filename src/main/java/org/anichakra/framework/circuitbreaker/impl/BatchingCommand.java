@@ -0,0 +1,194 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.anichakra.framework.circuitbreaker.api.BatchCommand;
+import org.anichakra.framework.circuitbreaker.api.BatchPolicy;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+
+/**
+ * A {@link Command} for single inputs that coalesces the concurrent calls into
+ * the batches of a {@link BatchCommand}. The batch Command is normally the one
+ * discovered from the {@link CommandRegistry} for a circuit whose Command is a
+ * BatchCommand, so that each batch is a single call protected by the circuit.
+ * <p>
+ * The first call of a batch leads it: it waits until the batch holds
+ * {@link BatchPolicy#getMaxBatchSize()} distinct inputs or until
+ * {@link BatchPolicy#getMaxDelay()} has elapsed, then executes the batch in
+ * its own thread while the other calls of the batch wait for the outcome. No
+ * other thread is involved, so the batches work the same in every
+ * {@link org.anichakra.framework.circuitbreaker.api.ExecutionMode}. The calls
+ * made for the same input in a batch share its result.
+ * <p>
+ * When the batch call fails every call of the batch fails with the failure,
+ * when the circuit is open every call gets its value from the result of the
+ * fallback for the batch. An input missing from the result of the batch
+ * fails only its own calls, and is not counted as a fault by the circuit.
+ *
+ * @see BatchCommand
+ * @author 576219
+ * @param <K>
+ * @param <V>
+ */
+public class BatchingCommand<K, V> implements Command<K, V> {
+
+	private final Command<List<K>, Map<K, V>> batchCommand;
+
+	private final int maxBatchSize;
+
+	private final long maxDelayNanos;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * The batch that is still open to new inputs, guarded by the lock
+	 */
+	private Batch<K, V> current;
+
+	/**
+	 *
+	 * @param batchCommand
+	 *            The Command executing the batches, usually the one discovered
+	 *            for a circuit of a {@link BatchCommand}
+	 */
+	public BatchingCommand(Command<List<K>, Map<K, V>> batchCommand) {
+		this(batchCommand, new DefaultBatchPolicy());
+	}
+
+	/**
+	 *
+	 * @param batchCommand
+	 *            The Command executing the batches, usually the one discovered
+	 *            for a circuit of a {@link BatchCommand}
+	 * @param batchPolicy
+	 */
+	public BatchingCommand(Command<List<K>, Map<K, V>> batchCommand, BatchPolicy batchPolicy) {
+		if (batchPolicy.getMaxBatchSize() <= 0)
+			throw new IllegalArgumentException("Max batch size must be positive");
+		this.batchCommand = batchCommand;
+		this.maxBatchSize = batchPolicy.getMaxBatchSize();
+		this.maxDelayNanos = Math.max(0, batchPolicy.getMaxDelay().toNanos());
+	}
+
+	/**
+	 * Adds the input to the open batch, or opens a new one, and waits for the
+	 * result of the batch.
+	 */
+
+	public V execute(K k) throws CommandExecutionFailureException {
+		Batch<K, V> batch;
+		boolean leader;
+		lock.lock();
+		try {
+			batch = current;
+			leader = batch == null;
+			if (leader) {
+				batch = new Batch<K, V>(lock.newCondition());
+				current = batch;
+			}
+			batch.keys.add(k);
+			if (batch.keys.size() >= maxBatchSize) {
+				seal(batch);
+				batch.full.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (leader) {
+			awaitBatch(batch);
+			execute(batch);
+		} else {
+			try {
+				batch.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CommandExecutionFailureException("Interrupted waiting for the batch of input:" + k, e);
+			}
+		}
+		return batch.result(k);
+	}
+
+	/**
+	 * Waits until the batch is full or its delay has elapsed, and closes it to
+	 * new inputs. An interrupt sends the batch right away as the other calls
+	 * wait for it.
+	 */
+	private void awaitBatch(Batch<K, V> batch) {
+		boolean interrupted = false;
+		lock.lock();
+		try {
+			long remaining = maxDelayNanos;
+			while (!batch.sealed && remaining > 0) {
+				try {
+					remaining = batch.full.awaitNanos(remaining);
+				} catch (InterruptedException e) {
+					interrupted = true;
+					break;
+				}
+			}
+			if (!batch.sealed)
+				seal(batch);
+		} finally {
+			lock.unlock();
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void seal(Batch<K, V> batch) {
+		batch.sealed = true;
+		if (current == batch)
+			current = null;
+	}
+
+	private void execute(Batch<K, V> batch) {
+		try {
+			batch.results = batchCommand.execute(new ArrayList<K>(batch.keys));
+		} catch (Exception e) {
+			batch.failure = e;
+		} finally {
+			batch.done.countDown();
+		}
+	}
+
+	/**
+	 * The inputs of a batch and its outcome, published to the waiting calls by
+	 * the latch.
+	 */
+	private static final class Batch<K, V> {
+
+		private final Set<K> keys = new LinkedHashSet<K>();
+
+		private final Condition full;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private boolean sealed;
+
+		private Map<K, V> results;
+
+		private Exception failure;
+
+		private Batch(Condition full) {
+			this.full = full;
+		}
+
+		private V result(K k) throws CommandExecutionFailureException {
+			if (failure != null)
+				throw new CommandExecutionFailureException("Exception calling batch execute method with input:" + k,
+						failure);
+			if (results == null || !results.containsKey(k))
+				throw new CommandExecutionFailureException("No result in the batch for input:" + k, null);
+			return results.get(k);
+		}
+	}
+}
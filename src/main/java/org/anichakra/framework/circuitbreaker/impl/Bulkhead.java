@@ -0,0 +1,105 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.anichakra.framework.circuitbreaker.api.BulkheadMetrics;
+import org.anichakra.framework.circuitbreaker.api.BulkheadType;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+
+/**
+ * The bulkhead of a circuit that bounds its concurrent calls as configured in
+ * the {@link ExecutorServiceFactory}. A {@link BulkheadType#SEMAPHORE}
+ * bulkhead hands out permits to the calls, a {@link BulkheadType#THREAD_POOL}
+ * bulkhead relies on the bounded thread pool to reject the calls and only
+ * counts the rejections.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class Bulkhead implements BulkheadMetrics {
+
+	private final Semaphore semaphore;
+
+	private final ThreadPoolExecutor threadPool;
+
+	private final int maxConcurrentCalls;
+
+	private final LongAdder rejectedCalls = new LongAdder();
+
+	/**
+	 *
+	 * @param executorServiceFactory
+	 *            The configuration of the bulkhead
+	 * @param executor
+	 *            The executor of the circuit, null when the calls are executed
+	 *            in the calling thread
+	 */
+	public Bulkhead(ExecutorServiceFactory executorServiceFactory, ExecutorService executor) {
+		BulkheadType type = executorServiceFactory == null ? BulkheadType.NONE
+				: executorServiceFactory.getBulkheadType();
+		if (type == BulkheadType.THREAD_POOL && executor instanceof ThreadPoolExecutor) {
+			threadPool = (ThreadPoolExecutor) executor;
+			semaphore = null;
+			maxConcurrentCalls = threadPool.getMaximumPoolSize();
+		} else if (type != BulkheadType.NONE) {
+			maxConcurrentCalls = executorServiceFactory.getConcurrencyLevel();
+			semaphore = new Semaphore(maxConcurrentCalls);
+			threadPool = null;
+		} else {
+			maxConcurrentCalls = Integer.MAX_VALUE;
+			semaphore = null;
+			threadPool = null;
+		}
+	}
+
+	/**
+	 *
+	 * @return TRUE if the call can go ahead, in which case {@link #release()}
+	 *         must be called when it completes
+	 */
+	public boolean tryAcquire() {
+		if (semaphore == null || semaphore.tryAcquire())
+			return true;
+		rejectedCalls.increment();
+		return false;
+	}
+
+	/**
+	 * Releases the permit acquired by {@link #tryAcquire()}
+	 */
+	public void release() {
+		if (semaphore != null)
+			semaphore.release();
+	}
+
+	/**
+	 * Counts a call rejected by the thread pool
+	 */
+	public void onRejected() {
+		rejectedCalls.increment();
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	public int getActiveCalls() {
+		if (semaphore != null)
+			return maxConcurrentCalls - semaphore.availablePermits();
+		if (threadPool != null)
+			return threadPool.getActiveCount();
+		return 0;
+	}
+
+	public int getQueueDepth() {
+		return threadPool == null ? 0 : threadPool.getQueue().size();
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.sum();
+	}
+}
@@ -0,0 +1,175 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+
+/**
+ * Enforces the timeout of a call executed in
+ * {@link ExecutionMode#CALLER_THREAD} mode. The deadline is watched by a
+ * timeout of the shared {@link HashedWheelTimer}, which interrupts the calling
+ * thread only when the deadline has passed, so no thread polls the deadlines
+ * of the calls. The calling thread disarms the deadline when the call
+ * completes, and the interrupt is cleared if the deadline has fired in the
+ * meantime.
+ * <p>
+ * Each thread has one deadline, re-armed for every call, so that arming and
+ * disarming allocate nothing. The timeout of the timer is not cancelled when
+ * a call completes. It is kept in the wheel while the thread makes calls, and
+ * when it expires before the deadline of the current call it is scheduled
+ * again at that deadline. A new timeout is only needed when a call has a
+ * shorter deadline than the pending one, or when the thread makes a call
+ * after a whole timeout without any.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+final class CallerThreadTimeout implements Runnable {
+
+	private static final int ARMED = 0;
+
+	private static final int FIRING = 1;
+
+	private static final int FIRED = 2;
+
+	private static final int DISARMED = 3;
+
+	/**
+	 * The state holds the number of the call above the phase bits, so that
+	 * the timer never fires a call armed after the one it has checked
+	 */
+	private static final int PHASE_BITS = 2;
+
+	private static final long PHASE_MASK = (1 << PHASE_BITS) - 1;
+
+	private static final ThreadLocal<CallerThreadTimeout> DEADLINES = ThreadLocal
+			.withInitial(() -> new CallerThreadTimeout(Thread.currentThread()));
+
+	private final Thread thread;
+
+	private final AtomicLong state = new AtomicLong(DISARMED);
+
+	private volatile long deadline;
+
+	private volatile long timeoutNanos;
+
+	/**
+	 * TRUE while a timeout is pending in {@link #timer}, which fires no later
+	 * than {@link #scheduledAt}
+	 */
+	private volatile boolean scheduled;
+
+	private volatile long scheduledAt;
+
+	private volatile HashedWheelTimer timer;
+
+	/**
+	 * Guarded by this
+	 */
+	private HashedWheelTimer.Timeout timeout;
+
+	/**
+	 * The call seen by the last expired timeout, only accessed by the timer
+	 */
+	private long lastCall;
+
+	private CallerThreadTimeout(Thread thread) {
+		this.thread = thread;
+	}
+
+	/**
+	 * Arms the deadline of the call about to be made by the calling thread.
+	 *
+	 * @param timeoutNanos
+	 *            The timeout of the call in nanoseconds
+	 * @return The armed deadline of the calling thread
+	 */
+	static CallerThreadTimeout arm(long timeoutNanos) {
+		CallerThreadTimeout d = DEADLINES.get();
+		long deadline = System.nanoTime() + timeoutNanos;
+		d.timeoutNanos = timeoutNanos;
+		d.deadline = deadline;
+		// only the calling thread starts a call, the previous one is over
+		long call = (d.state.get() >>> PHASE_BITS) + 1;
+		d.state.set(call << PHASE_BITS | ARMED);
+		// read after the state is set, so that the timer either sees the call
+		// or has not yet given up its timeout
+		HashedWheelTimer timer = SharedScheduler.timer();
+		if (!d.scheduled || d.timer != timer || deadline - d.scheduledAt < 0)
+			d.schedule(timer, deadline);
+		return d;
+	}
+
+	/**
+	 * Interrupts the calling thread if its deadline has passed, run by the
+	 * timer
+	 */
+	public void run() {
+		long s = state.get();
+		long d = deadline;
+		// the deadline belongs to the call of the state if the state has not
+		// changed in the meantime
+		if ((s & PHASE_MASK) == ARMED && s == state.get() && System.nanoTime() - d >= 0
+				&& state.compareAndSet(s, s | FIRING)) {
+			thread.interrupt();
+			state.set(s | FIRED);
+		}
+		reschedule();
+	}
+
+	/**
+	 * Disarms the deadline after the call has completed, in the calling
+	 * thread. If the deadline has already fired then its interrupt is cleared.
+	 *
+	 * @return TRUE if the deadline has passed before the call completed
+	 */
+	boolean disarm() {
+		long s = state.get();
+		if ((s & PHASE_MASK) == ARMED && state.compareAndSet(s, s | DISARMED))
+			return false;
+		while ((state.get() & PHASE_MASK) == FIRING)
+			Thread.yield();
+		Thread.interrupted();
+		return true;
+	}
+
+	/**
+	 * Schedules a timeout at the deadline of the call, in the calling thread,
+	 * unless the timer has done it in the meantime
+	 */
+	private synchronized void schedule(HashedWheelTimer timer, long deadline) {
+		if (scheduled && this.timer == timer && deadline - scheduledAt >= 0)
+			return;
+		if (timeout != null)
+			timeout.cancel();
+		scheduleAt(timer, deadline);
+	}
+
+	/**
+	 * Gives up the expired timeout, and schedules a new one if the thread is
+	 * in a call or has made calls since the previous timeout expired
+	 */
+	private synchronized void reschedule() {
+		if (timeout == null || !timeout.isExpired())
+			// run by a timeout that was replaced by an earlier one
+			return;
+		timeout = null;
+		scheduled = false;
+		long s = state.get();
+		long call = s >>> PHASE_BITS;
+		if ((s & PHASE_MASK) == ARMED)
+			scheduleAt(timer, deadline);
+		else if (call != lastCall)
+			scheduleAt(timer, System.nanoTime() + timeoutNanos);
+		lastCall = call;
+	}
+
+	private void scheduleAt(HashedWheelTimer timer, long deadline) {
+		this.timeout = timer.newTimeout(this, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		this.timer = timer;
+		this.scheduledAt = deadline;
+		this.scheduled = true;
+	}
+}
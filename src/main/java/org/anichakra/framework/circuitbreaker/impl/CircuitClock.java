@@ -0,0 +1,49 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The source of time and the scheduler of an {@link AbstractCircuitBreaker}.
+ * The circuit breaker never reads the system clock or starts a thread on its
+ * own, so it can be driven in real time by the {@link SystemClock} or in
+ * virtual time by a {@link VirtualClock}.
+ * 
+ * @see CircuitSimulation
+ * @author 576219
+ *
+ */
+public interface CircuitClock {
+
+	/**
+	 * 
+	 * @return The current time in milliseconds since the epoch
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * 
+	 * @return The current value of a monotonic clock in nanoseconds, only
+	 *         meaningful to measure elapsed time
+	 */
+	long nanoTime();
+
+	/**
+	 * Schedules a short task to be run once after a delay.
+	 * 
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return The future of the task, which can be cancelled
+	 */
+	Future<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+	/**
+	 * Runs a task that may block, like a health check, without blocking the
+	 * calling thread.
+	 * 
+	 * @param task
+	 * @return The future of the task, which can be cancelled
+	 */
+	Future<?> submit(Runnable task);
+}
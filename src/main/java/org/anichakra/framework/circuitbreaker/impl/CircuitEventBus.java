@@ -0,0 +1,287 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitEvent;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventListener;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventType;
+
+/**
+ * Delivers the {@link CircuitEvent}s of the circuits to the subscribed
+ * {@link CircuitEventListener}s. The events are written in a ring buffer of
+ * preallocated events, so publishing an event allocates nothing and takes a
+ * single CAS, and a single daemon thread hands them to the listeners. When
+ * the listeners fall behind and the ring is full the new events are dropped
+ * and counted, the publishing thread never waits. Nothing is published as
+ * long as there is no listener.
+ *
+ * @see DefaultCommandRegistry#subscribe(String, CircuitEventListener)
+ * @author 576219
+ *
+ */
+public class CircuitEventBus {
+
+	/**
+	 * The default number of events the ring can hold
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The number of times the dispatcher polls the ring before it parks
+	 */
+	private static final int SPINS = 100;
+
+	/**
+	 * The maximum time the idle dispatcher parks, it is unparked by the
+	 * publishers as soon as there is a new event
+	 */
+	private static final long PARK_NANOS = 100000000;
+
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+	private static volatile CircuitEventBus shared;
+
+	private final Event[] ring;
+
+	private final int mask;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	private final AtomicLong consumedSequence = new AtomicLong();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+	private volatile Thread dispatcher;
+
+	private volatile boolean waiting;
+
+	private volatile boolean closed;
+
+	/**
+	 *
+	 * @param capacity
+	 *            The number of events the ring can hold, rounded up to a power
+	 *            of two
+	 */
+	public CircuitEventBus(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.ring = new Event[size];
+		for (int i = 0; i < size; i++)
+			ring[i] = new Event();
+		this.mask = size - 1;
+	}
+
+	/**
+	 *
+	 * @return The bus shared by all the circuits, created lazily on first use
+	 */
+	public static CircuitEventBus get() {
+		CircuitEventBus bus = shared;
+		if (bus == null) {
+			synchronized (CircuitEventBus.class) {
+				bus = shared;
+				if (bus == null) {
+					bus = new CircuitEventBus(DEFAULT_CAPACITY);
+					shared = bus;
+				}
+			}
+		}
+		return bus;
+	}
+
+	/**
+	 * Subscribes a listener to the events of a circuit, or of all the circuits
+	 * if the name is null. The dispatcher thread is started by the first
+	 * subscription.
+	 *
+	 * @param name
+	 * @param listener
+	 */
+	public synchronized void subscribe(String name, CircuitEventListener listener) {
+		if (closed)
+			throw new IllegalStateException("Event bus has been closed");
+		Subscription[] current = subscriptions;
+		Subscription[] updated = new Subscription[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = new Subscription(name, listener);
+		subscriptions = updated;
+		if (dispatcher == null) {
+			Thread thread = new Thread(this::dispatch, "circuit-breaker-events");
+			thread.setDaemon(true);
+			dispatcher = thread;
+			thread.start();
+		}
+	}
+
+	/**
+	 * Unsubscribes a listener from all the events it was subscribed to.
+	 *
+	 * @param listener
+	 */
+	public synchronized void unsubscribe(CircuitEventListener listener) {
+		Subscription[] current = subscriptions;
+		int kept = 0;
+		Subscription[] updated = new Subscription[current.length];
+		for (Subscription subscription : current) {
+			if (subscription.listener != listener)
+				updated[kept++] = subscription;
+		}
+		Subscription[] trimmed = new Subscription[kept];
+		System.arraycopy(updated, 0, trimmed, 0, kept);
+		subscriptions = trimmed;
+	}
+
+	/**
+	 * Publishes an event without waiting for the listeners.
+	 *
+	 * @param name
+	 *            The name of the circuit
+	 * @param type
+	 *            The type of the event
+	 * @param failure
+	 *            The exception of the call, if any
+	 * @return TRUE if the event has been published, FALSE if there is no
+	 *         listener or the event has been dropped
+	 */
+	public boolean publish(String name, CircuitEventType type, Throwable failure) {
+		if (subscriptions.length == 0 || closed)
+			return false;
+		long sequence;
+		do {
+			sequence = nextSequence.get();
+			if (sequence - consumedSequence.get() >= ring.length) {
+				dropped.increment();
+				return false;
+			}
+		} while (!nextSequence.compareAndSet(sequence, sequence + 1));
+		Event event = ring[(int) (sequence & mask)];
+		event.circuitName = name;
+		event.type = type;
+		event.timestamp = System.currentTimeMillis();
+		event.failure = failure;
+		event.sequence = sequence;
+		if (waiting)
+			LockSupport.unpark(dispatcher);
+		return true;
+	}
+
+	/**
+	 *
+	 * @return The number of events dropped because the ring was full
+	 */
+	public long getDroppedEvents() {
+		return dropped.sum();
+	}
+
+	/**
+	 *
+	 * @return The number of events published and not yet delivered
+	 */
+	public long getPendingEvents() {
+		return nextSequence.get() - consumedSequence.get();
+	}
+
+	/**
+	 * Stops the dispatcher thread. The pending events are not delivered.
+	 */
+	public void close() {
+		closed = true;
+		Thread thread = dispatcher;
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+
+	private void dispatch() {
+		long sequence = consumedSequence.get();
+		int idle = 0;
+		while (!closed) {
+			Event event = ring[(int) (sequence & mask)];
+			if (event.sequence == sequence) {
+				deliver(event);
+				event.failure = null;
+				consumedSequence.lazySet(++sequence);
+				idle = 0;
+			} else if (++idle < SPINS) {
+				Thread.yield();
+			} else {
+				waiting = true;
+				if (event.sequence != sequence)
+					LockSupport.parkNanos(this, PARK_NANOS);
+				waiting = false;
+			}
+		}
+	}
+
+	private void deliver(Event event) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.name == null || subscription.name.equals(event.circuitName)) {
+				try {
+					subscription.listener.onEvent(event);
+				} catch (Throwable t) {
+					// a failing listener must not stop the delivery to the others
+				}
+			}
+		}
+	}
+
+	/**
+	 * A listener and the name of the circuit it listens to
+	 */
+	private static final class Subscription {
+
+		private final String name;
+
+		private final CircuitEventListener listener;
+
+		private Subscription(String name, CircuitEventListener listener) {
+			this.name = name;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * A slot of the ring, reused for every event written at its position
+	 */
+	private static final class Event implements CircuitEvent {
+
+		/**
+		 * The sequence of the event in the slot, written last to publish it
+		 */
+		private volatile long sequence = -1;
+
+		private String circuitName;
+
+		private CircuitEventType type;
+
+		private long timestamp;
+
+		private Throwable failure;
+
+		public String getCircuitName() {
+			return circuitName;
+		}
+
+		public CircuitEventType getType() {
+			return type;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		public String toString() {
+			return "CircuitEvent [circuitName=" + circuitName + ", type=" + type + ", timestamp=" + timestamp
+					+ ", failure=" + failure + "]";
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
+
+/**
+ * Records the outcomes and the latencies of the calls of a circuit over a
+ * rolling window and takes {@link CircuitMetrics} snapshots of them. The
+ * outcomes are counted in {@link LongAdder}s and the latencies in a
+ * {@link LatencyHistogram}, so recording a call never blocks and costs a few
+ * nanoseconds even when many threads call the same circuit.
+ * <p>
+ * The window is split in slots like the one of the LatencyHistogram. The
+ * counters of a slot are reset when it is reused, and an outcome recorded
+ * while its slot is being reset may be lost.
+ * 
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class CircuitMetricsRecorder {
+
+	/**
+	 * The outcomes of a call which are counted
+	 */
+	enum Outcome {
+		SUCCESS, FAILURE, TIMEOUT, SHORT_CIRCUIT, REJECTED, FALLBACK, COLLAPSED, LIMITED, THROTTLED, RETRY, HEDGED
+	}
+
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	private final Duration window;
+
+	private final long slotNanos;
+
+	private final int slots;
+
+	private final LongAdder[][] counters;
+
+	private final AtomicLongArray epochs;
+
+	private final LatencyHistogram latencies;
+
+	/**
+	 * 
+	 * @param windowSize
+	 *            The span of the rolling window in seconds
+	 */
+	public CircuitMetricsRecorder(int windowSize) {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("Window size must be positive");
+		this.window = Duration.ofSeconds(windowSize);
+		this.slots = LatencyHistogram.DEFAULT_SLOTS;
+		this.slotNanos = Math.max(1, window.toNanos() / slots);
+		this.counters = new LongAdder[slots][OUTCOMES.length];
+		for (int slot = 0; slot < slots; slot++)
+			for (int i = 0; i < OUTCOMES.length; i++)
+				counters[slot][i] = new LongAdder();
+		this.epochs = new AtomicLongArray(slots);
+		for (int slot = 0; slot < slots; slot++)
+			epochs.set(slot, Long.MIN_VALUE);
+		this.latencies = new LatencyHistogram(windowSize, TimeUnit.SECONDS, slots);
+	}
+
+	/**
+	 * Counts an outcome.
+	 * 
+	 * @param outcome
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 */
+	void record(Outcome outcome, long nowNanos) {
+		LongAdder[] slot = slot(nowNanos);
+		if (slot != null)
+			slot[outcome.ordinal()].increment();
+	}
+
+	/**
+	 * Counts an outcome of a call which has completed and records its
+	 * latency.
+	 * 
+	 * @param outcome
+	 * @param startNanos
+	 *            The time the call was made as given by
+	 *            {@link System#nanoTime()}
+	 */
+	void record(Outcome outcome, long startNanos, long nowNanos) {
+		record(outcome, nowNanos);
+		latencies.record(nowNanos - startNanos, nowNanos);
+	}
+
+	/**
+	 * 
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return A snapshot of the outcomes and the latencies in the window
+	 */
+	public CircuitMetrics snapshot(long nowNanos) {
+		long epoch = Math.floorDiv(nowNanos, slotNanos);
+		long[] counts = new long[OUTCOMES.length];
+		for (int slot = 0; slot < slots; slot++) {
+			long slotEpoch = epochs.get(slot);
+			if (slotEpoch != Long.MIN_VALUE && slotEpoch <= epoch && epoch - slotEpoch < slots) {
+				for (int i = 0; i < OUTCOMES.length; i++)
+					counts[i] += counters[slot][i].sum();
+			}
+		}
+		return new CircuitMetricsSnapshot(window, counts, latencies.getCounts(nowNanos));
+	}
+
+	/**
+	 * 
+	 * @return The counters of the slot of the current time, reset first if
+	 *         the slot is reused, or null if the time is behind the slot
+	 */
+	private LongAdder[] slot(long nowNanos) {
+		long epoch = Math.floorDiv(nowNanos, slotNanos);
+		int slot = (int) Math.floorMod(epoch, (long) slots);
+		long current = epochs.get(slot);
+		if (current != epoch) {
+			if (current > epoch)
+				return null;
+			if (epochs.compareAndSet(slot, current, epoch)) {
+				for (LongAdder counter : counters[slot])
+					counter.reset();
+			}
+		}
+		return counters[slot];
+	}
+
+	/**
+	 * An immutable snapshot of the metrics
+	 */
+	private static final class CircuitMetricsSnapshot implements CircuitMetrics {
+
+		private final Duration window;
+
+		private final long[] counts;
+
+		private final long[] latencies;
+
+		private CircuitMetricsSnapshot(Duration window, long[] counts, long[] latencies) {
+			this.window = window;
+			this.counts = counts;
+			this.latencies = latencies;
+		}
+
+		public Duration getWindow() {
+			return window;
+		}
+
+		public long getNumberOfSuccessfulCalls() {
+			return counts[Outcome.SUCCESS.ordinal()];
+		}
+
+		public long getNumberOfFailedCalls() {
+			return counts[Outcome.FAILURE.ordinal()];
+		}
+
+		public long getNumberOfTimedOutCalls() {
+			return counts[Outcome.TIMEOUT.ordinal()];
+		}
+
+		public long getNumberOfShortCircuitedCalls() {
+			return counts[Outcome.SHORT_CIRCUIT.ordinal()];
+		}
+
+		public long getNumberOfRejectedCalls() {
+			return counts[Outcome.REJECTED.ordinal()];
+		}
+
+		public long getNumberOfFallbackCalls() {
+			return counts[Outcome.FALLBACK.ordinal()];
+		}
+
+		public long getNumberOfCollapsedCalls() {
+			return counts[Outcome.COLLAPSED.ordinal()];
+		}
+
+		public long getNumberOfLimitedCalls() {
+			return counts[Outcome.LIMITED.ordinal()];
+		}
+
+		public long getNumberOfThrottledCalls() {
+			return counts[Outcome.THROTTLED.ordinal()];
+		}
+
+		public long getNumberOfRetries() {
+			return counts[Outcome.RETRY.ordinal()];
+		}
+
+		public long getNumberOfHedgedCalls() {
+			return counts[Outcome.HEDGED.ordinal()];
+		}
+
+		public Duration getLatency(double percentile) {
+			return Duration.ofNanos(LatencyHistogram.valueAtPercentile(latencies, percentile));
+		}
+
+		public String toString() {
+			return "CircuitMetrics [window=" + window + ", successful=" + getNumberOfSuccessfulCalls() + ", failed="
+					+ getNumberOfFailedCalls() + ", timedOut=" + getNumberOfTimedOutCalls() + ", shortCircuited="
+					+ getNumberOfShortCircuitedCalls() + ", rejected=" + getNumberOfRejectedCalls() + ", fallback="
+					+ getNumberOfFallbackCalls() + ", collapsed=" + getNumberOfCollapsedCalls() + ", limited="
+					+ getNumberOfLimitedCalls() + ", throttled=" + getNumberOfThrottledCalls() + ", retries="
+					+ getNumberOfRetries() + ", hedged=" + getNumberOfHedgedCalls() + ", p50=" + getLatency(50) + ", p99="
+					+ getLatency(99) + "]";
+		}
+	}
+}
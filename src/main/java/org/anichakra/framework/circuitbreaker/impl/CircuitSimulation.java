@@ -0,0 +1,329 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.FaultThreshold;
+import org.anichakra.framework.circuitbreaker.api.HealthThreshold;
+
+/**
+ * Replays traffic against a circuit breaker in virtual time, so the behavior
+ * of a {@link FaultThreshold} and a {@link HealthThreshold} against a failure
+ * scenario can be checked, or different settings compared, in milliseconds
+ * instead of hours. The circuit breaker runs on a {@link VirtualClock}. The
+ * requests arrive at a fixed interval and are handled the way
+ * {@link CommandProxy} handles them: a request is short circuited when the
+ * circuit breaker does not permit it, otherwise the {@link Scenario} decides
+ * the latency or the failure of the call and the outcome is recorded when the
+ * call completes, or when it times out.
+ * <p>
+ * The health checks take no virtual time, a health check fails when the call
+ * made at that time would fail or time out. A simulation with the same seed
+ * always gives the same result.
+ *
+ * @author 576219
+ *
+ */
+public class CircuitSimulation {
+
+	/**
+	 * The behavior of the external system over time
+	 */
+	@FunctionalInterface
+	public interface Scenario {
+
+		/**
+		 *
+		 * @param elapsedMillis
+		 *            The time of the call since the start of the simulation
+		 * @param random
+		 *            The seeded source of randomness of the simulation
+		 * @return The latency of the call in milliseconds, or a negative value
+		 *         if the call fails right away
+		 */
+		long call(long elapsedMillis, Random random);
+	}
+
+	private final FaultThreshold faultThreshold;
+
+	private final HealthThreshold healthThreshold;
+
+	private final Duration invocationTimeout;
+
+	private final Scenario scenario;
+
+	private final long seed;
+
+	/**
+	 *
+	 * @param faultThreshold
+	 * @param healthThreshold
+	 * @param invocationTimeout
+	 *            The timeout of the calls
+	 * @param scenario
+	 *            The behavior of the external system
+	 * @param seed
+	 *            The seed of the randomness of the scenario
+	 */
+	public CircuitSimulation(FaultThreshold faultThreshold, HealthThreshold healthThreshold,
+			Duration invocationTimeout, Scenario scenario, long seed) {
+		this.faultThreshold = faultThreshold;
+		this.healthThreshold = healthThreshold;
+		this.invocationTimeout = invocationTimeout;
+		this.scenario = scenario;
+		this.seed = seed;
+	}
+
+	/**
+	 * Runs the simulation.
+	 *
+	 * @param duration
+	 *            The virtual duration of the traffic
+	 * @param requestInterval
+	 *            The virtual time between two requests
+	 * @return The outcome of the simulation
+	 */
+	public Result run(Duration duration, Duration requestInterval) {
+		VirtualClock clock = new VirtualClock();
+		Random random = new Random(seed);
+		Result result = new Result();
+		SimulatedCircuitBreaker breaker = new SimulatedCircuitBreaker(clock, random);
+		breaker.addStateTransitionListener(
+				(from, to) -> result.transitions.add(new Transition(clock.getElapsedMillis(), from, to)));
+		Traffic traffic = new Traffic(clock, random, breaker, result, Math.max(1, requestInterval.toNanos()),
+				duration.toNanos());
+		clock.schedule(traffic, 0, TimeUnit.NANOSECONDS);
+		clock.advance(duration.toNanos(), TimeUnit.NANOSECONDS);
+		result.finalState = breaker.getState();
+		return result;
+	}
+
+	/**
+	 * Makes one request and schedules the next one before the end of the
+	 * traffic, so that only one request is pending in the clock whatever the
+	 * duration of the simulation
+	 */
+	private final class Traffic implements Runnable {
+
+		private final VirtualClock clock;
+
+		private final Random random;
+
+		private final SimulatedCircuitBreaker breaker;
+
+		private final Result result;
+
+		private final long intervalNanos;
+
+		private final long endNanos;
+
+		private Traffic(VirtualClock clock, Random random, SimulatedCircuitBreaker breaker, Result result,
+				long intervalNanos, long endNanos) {
+			this.clock = clock;
+			this.random = random;
+			this.breaker = breaker;
+			this.result = result;
+			this.intervalNanos = intervalNanos;
+			this.endNanos = endNanos;
+		}
+
+		public void run() {
+			if (clock.nanoTime() + intervalNanos < endNanos)
+				clock.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+			result.requests++;
+			final long permission = breaker.acquirePermission();
+			if (permission < 0) {
+				result.shortCircuited++;
+				return;
+			}
+			long timeoutMillis = invocationTimeout.toMillis();
+			long latency = scenario.call(clock.getElapsedMillis(), random);
+			if (latency < 0) {
+				result.failures++;
+				fault(breaker, new CommandExecutionFailureException("Simulated fault", null), permission);
+			} else if (latency > timeoutMillis) {
+				clock.schedule(() -> {
+					result.timeouts++;
+					fault(breaker, new CommandExecutionFailureException("Simulated timeout", new TimeoutException()),
+							permission);
+				}, timeoutMillis, TimeUnit.MILLISECONDS);
+			} else {
+				clock.schedule(() -> {
+					result.successes++;
+					breaker.recordSuccess(permission);
+				}, latency, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private static void fault(SimulatedCircuitBreaker breaker, Exception e, long permission) {
+		if (breaker.checkFault(e, permission))
+			breaker.trip(permission);
+	}
+
+	/**
+	 * The circuit breaker under simulation, whose health checks call the
+	 * scenario
+	 */
+	private final class SimulatedCircuitBreaker extends AbstractCircuitBreaker<Long, Long> {
+
+		private final VirtualClock clock;
+
+		private final Random random;
+
+		private SimulatedCircuitBreaker(VirtualClock clock, Random random) {
+			super(faultThreshold, healthThreshold, clock);
+			this.clock = clock;
+			this.random = random;
+		}
+
+		public Long executeFallback(Long k) {
+			return k;
+		}
+
+		public Duration getInvocationTimeout() {
+			return invocationTimeout;
+		}
+
+		protected void executeHealthCheck(int counter) {
+			long latency = scenario.call(clock.getElapsedMillis(), random);
+			if (latency < 0 || latency > invocationTimeout.toMillis())
+				throw new IllegalStateException("Simulated health check failure " + counter);
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return IllegalStateException.class;
+		}
+	}
+
+	/**
+	 * A change of the state of the circuit during the simulation
+	 */
+	public static final class Transition {
+
+		private final long elapsedMillis;
+
+		private final CircuitState from;
+
+		private final CircuitState to;
+
+		private Transition(long elapsedMillis, CircuitState from, CircuitState to) {
+			this.elapsedMillis = elapsedMillis;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 *
+		 * @return The time of the change since the start of the simulation
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public CircuitState getFrom() {
+			return from;
+		}
+
+		public CircuitState getTo() {
+			return to;
+		}
+
+		public String toString() {
+			return elapsedMillis + "ms " + from + "->" + to;
+		}
+	}
+
+	/**
+	 * The outcome of a simulation
+	 */
+	public static final class Result {
+
+		private long requests;
+
+		private long successes;
+
+		private long failures;
+
+		private long timeouts;
+
+		private long shortCircuited;
+
+		private CircuitState finalState;
+
+		private final List<Transition> transitions = new ArrayList<Transition>();
+
+		private Result() {
+		}
+
+		/**
+		 *
+		 * @return The number of requests
+		 */
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 *
+		 * @return The number of calls which succeeded
+		 */
+		public long getSuccesses() {
+			return successes;
+		}
+
+		/**
+		 *
+		 * @return The number of calls which failed right away
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 *
+		 * @return The number of calls which timed out
+		 */
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		/**
+		 *
+		 * @return The number of requests answered by the fallback because the
+		 *         circuit was open
+		 */
+		public long getShortCircuited() {
+			return shortCircuited;
+		}
+
+		/**
+		 *
+		 * @return The state of the circuit at the end of the simulation
+		 */
+		public CircuitState getFinalState() {
+			return finalState;
+		}
+
+		/**
+		 *
+		 * @return The changes of the state of the circuit in order
+		 */
+		public List<Transition> getTransitions() {
+			return Collections.unmodifiableList(transitions);
+		}
+
+		public String toString() {
+			return "Result [requests=" + requests + ", successes=" + successes + ", failures=" + failures
+					+ ", timeouts=" + timeouts + ", shortCircuited=" + shortCircuited + ", finalState=" + finalState
+					+ ", transitions=" + transitions + "]";
+		}
+	}
+}
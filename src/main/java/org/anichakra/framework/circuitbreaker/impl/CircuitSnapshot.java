@@ -0,0 +1,64 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.SnapshotPolicy;
+
+/**
+ * The state of a circuit at a point in time as taken by
+ * {@link AbstractCircuitBreaker#snapshot()}, to be restored into the circuit
+ * breaker of a restarted process.
+ *
+ * @see SnapshotPolicy
+ * @author 576219
+ *
+ */
+public final class CircuitSnapshot {
+
+	private final long takenAtMillis;
+
+	private final CircuitState state;
+
+	private final long openSinceMillis;
+
+	private final long[] faults;
+
+	/**
+	 *
+	 * @param takenAtMillis
+	 *            The time the snapshot was taken in milliseconds since the
+	 *            epoch
+	 * @param state
+	 * @param openSinceMillis
+	 *            The time the circuit was opened, or 0 if it is closed
+	 * @param faults
+	 *            The start time in milliseconds and the number of faults of
+	 *            the buckets of the fault window, in pairs
+	 */
+	public CircuitSnapshot(long takenAtMillis, CircuitState state, long openSinceMillis, long[] faults) {
+		this.takenAtMillis = takenAtMillis;
+		this.state = state;
+		this.openSinceMillis = openSinceMillis;
+		this.faults = faults.clone();
+	}
+
+	public long getTakenAtMillis() {
+		return takenAtMillis;
+	}
+
+	public CircuitState getState() {
+		return state;
+	}
+
+	public long getOpenSinceMillis() {
+		return openSinceMillis;
+	}
+
+	public long[] getFaults() {
+		return faults.clone();
+	}
+
+	public String toString() {
+		return "CircuitSnapshot [takenAt=" + takenAtMillis + ", state=" + state + ", openSince=" + openSinceMillis
+				+ ", faultBuckets=" + faults.length / 2 + "]";
+	}
+}
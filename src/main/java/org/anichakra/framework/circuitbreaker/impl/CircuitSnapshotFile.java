@@ -0,0 +1,118 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+
+/**
+ * Reads and writes the {@link CircuitSnapshot}s of the circuits of a registry
+ * in a compact binary file: a magic number and a version, then for every
+ * circuit its name, the time of the snapshot, the state, the time it was
+ * opened and the buckets of its fault window which hold faults. The file is
+ * written to a temporary file first and moved over the previous one, so a
+ * process stopped while writing leaves the previous snapshots in place.
+ *
+ * @see DefaultCommandRegistry
+ * @author 576219
+ *
+ */
+final class CircuitSnapshotFile {
+
+	/**
+	 * "CBSN" in ASCII
+	 */
+	private static final int MAGIC = 0x4342534E;
+
+	private static final int VERSION = 1;
+
+	private static final CircuitState[] STATES = CircuitState.values();
+
+	private CircuitSnapshotFile() {
+	}
+
+	/**
+	 * Reads the snapshots which are not older than the maximum age. A missing
+	 * file, or one which cannot be read, has no snapshot.
+	 *
+	 * @param file
+	 * @param nowMillis
+	 * @param maximumAgeMillis
+	 * @return The snapshots by name of the circuit
+	 */
+	static Map<String, CircuitSnapshot> read(File file, long nowMillis, long maximumAgeMillis) {
+		Map<String, CircuitSnapshot> snapshots = new HashMap<String, CircuitSnapshot>();
+		if (!file.isFile())
+			return snapshots;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION)
+				return snapshots;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				long takenAt = in.readLong();
+				CircuitState state = STATES[in.readByte()];
+				long openSince = in.readLong();
+				long[] faults = new long[2 * in.readUnsignedShort()];
+				for (int j = 0; j < faults.length; j += 2) {
+					faults[j] = in.readLong();
+					faults[j + 1] = in.readInt();
+				}
+				if (nowMillis - takenAt <= maximumAgeMillis)
+					snapshots.put(name, new CircuitSnapshot(takenAt, state, openSince, faults));
+			}
+		} catch (IOException | RuntimeException e) {
+			// a truncated or foreign file is ignored as a whole
+			snapshots.clear();
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Replaces the file with the snapshots.
+	 *
+	 * @param file
+	 * @param snapshots
+	 *            The snapshots by name of the circuit
+	 * @throws IOException
+	 */
+	static void write(File file, Map<String, CircuitSnapshot> snapshots) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		File temporary = File.createTempFile(file.getName(), ".tmp", parent);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				out.writeInt(snapshots.size());
+				for (Map.Entry<String, CircuitSnapshot> entry : snapshots.entrySet()) {
+					CircuitSnapshot snapshot = entry.getValue();
+					long[] faults = snapshot.getFaults();
+					out.writeUTF(entry.getKey());
+					out.writeLong(snapshot.getTakenAtMillis());
+					out.writeByte(snapshot.getState().ordinal());
+					out.writeLong(snapshot.getOpenSinceMillis());
+					out.writeShort(faults.length / 2);
+					for (int j = 0; j < faults.length; j += 2) {
+						out.writeLong(faults[j]);
+						out.writeInt((int) faults[j + 1]);
+					}
+				}
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+}
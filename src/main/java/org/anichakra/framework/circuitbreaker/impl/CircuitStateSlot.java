@@ -0,0 +1,83 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+/**
+ * The state of one circuit as kept by a {@link CircuitStateStore}: the word in
+ * which the {@link AbstractCircuitBreaker} packs the state, its generation and
+ * the time the circuit left the closed state, and the time bucketed window in
+ * which the faults of the circuit are counted. The circuit breakers which
+ * share a slot trip and recover together.
+ * 
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public interface CircuitStateSlot {
+
+	/**
+	 * 
+	 * @return The time in milliseconds since the epoch from which the times
+	 *         packed in the word are counted
+	 */
+	long getCreatedMillis();
+
+	/**
+	 * 
+	 * @return The current word, read with volatile semantics
+	 */
+	long getWord();
+
+	/**
+	 * Sets the word atomically if it is the expected one.
+	 * 
+	 * @param expected
+	 * @param word
+	 * @return TRUE if the word has been set
+	 */
+	boolean compareAndSetWord(long expected, long word);
+
+	/**
+	 * Records one fault at the given time.
+	 * 
+	 * @param nowMillis
+	 */
+	void recordFault(long nowMillis);
+
+	/**
+	 * 
+	 * @param nowMillis
+	 * @return The number of faults recorded within the window ending at the
+	 *         given time
+	 */
+	int countFaults(long nowMillis);
+
+	/**
+	 * Adds faults recorded at an earlier time, to restore them.
+	 * 
+	 * @param atMillis
+	 *            The time the faults were recorded, within the window
+	 * @param count
+	 */
+	void addFaults(long atMillis, int count);
+
+	/**
+	 * 
+	 * @param nowMillis
+	 * @return The start time in milliseconds and the number of faults of
+	 *         every bucket of the window ending at the given time which holds
+	 *         faults, in pairs
+	 */
+	long[] getFaults(long nowMillis);
+
+	/**
+	 * Removes all the faults from the window.
+	 */
+	void clearFaults();
+
+	/**
+	 * 
+	 * @return TRUE if the slot can be changed by another process, in which
+	 *         case the circuit breaker watches for the transitions it has not
+	 *         made itself
+	 */
+	boolean isShared();
+}
@@ -0,0 +1,32 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+/**
+ * The store of the state of the circuits, which an
+ * {@link AbstractCircuitBreaker} can be created with instead of keeping its
+ * state on its own. The circuit breakers created with the same store and the
+ * same name share one {@link CircuitStateSlot}, so a store that outlives a
+ * process or is shared between processes, like the
+ * {@link MappedCircuitStateStore}, lets the circuit breakers of these
+ * processes trip and recover together.
+ * 
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public interface CircuitStateStore {
+
+	/**
+	 * Finds the slot of a circuit, or creates it if there is none yet. The
+	 * window of the faults and the time from which the word counts are set by
+	 * the creator of the slot.
+	 * 
+	 * @param name
+	 *            The name of the circuit
+	 * @param faultWindowMillis
+	 *            The span of the window of the faults in milliseconds
+	 * @param nowMillis
+	 *            The current time in milliseconds since the epoch
+	 * @return The slot of the circuit
+	 */
+	CircuitStateSlot getSlot(String name, long faultWindowMillis, long nowMillis);
+}
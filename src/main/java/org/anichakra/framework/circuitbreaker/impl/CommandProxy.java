@@ -1,33 +1,190 @@
 package org.anichakra.framework.circuitbreaker.impl;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import org.anichakra.framework.circuitbreaker.api.AdaptiveTimeout;
+import org.anichakra.framework.circuitbreaker.api.AsyncCommand;
+import org.anichakra.framework.circuitbreaker.api.BulkheadMetrics;
+import org.anichakra.framework.circuitbreaker.api.CacheMetrics;
+import org.anichakra.framework.circuitbreaker.api.CachePolicy;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
 import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventType;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
 import org.anichakra.framework.circuitbreaker.api.Command;
 import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimit;
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimitMetrics;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
 import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.HedgePolicy;
+import org.anichakra.framework.circuitbreaker.api.RateLimit;
+import org.anichakra.framework.circuitbreaker.api.RateLimiter;
+import org.anichakra.framework.circuitbreaker.api.RetryPolicy;
+import org.anichakra.framework.circuitbreaker.api.StateTransitionListener;
+import org.anichakra.framework.circuitbreaker.impl.CircuitMetricsRecorder.Outcome;
 
 /**
  * The proxy class of the {@link Command} that encapsulates the command instance
  * and the {@link CircuitBreaker}. It proxies the
  * {@link Command#execute(Object)} method by executing it and then checking for
  * failure to trip the CircuitBreaker associated with the circuit to which this
- * Command instance belongs to.
+ * Command instance belongs to. It also provides the same protection
+ * asynchronously through {@link AsyncCommand#executeAsync(Object)}.
+ * <p>
+ * When the circuit has an {@link AdaptiveTimeout} the proxy keeps a rolling
+ * histogram of the latencies of the successful calls and times the calls out
+ * at a percentile of these latencies multiplied by a factor, recalculated at
+ * most every {@value #ADAPTIVE_TIMEOUT_UPDATE_MILLIS} milliseconds.
+ * <p>
+ * The outcome and the latency of every call are recorded in a
+ * {@link CircuitMetricsRecorder}, see {@link #getMetrics()}. The proxy of a
+ * registered circuit also publishes the state transitions of the circuit and
+ * the calls which did not succeed to the {@link CircuitEventBus}.
+ * <p>
+ * When {@link Circuit#isRequestCollapsingEnabled()} is set the calls in flight
+ * are kept in a {@link ConcurrentHashMap} by input, and a call with an input
+ * equal to the one of a call in flight shares its outcome instead of calling
+ * the Command. The timeout, the fault accounting and the fallback apply to the
+ * call in flight only, so N collapsed calls that fail are one fault.
+ * <p>
+ * When the circuit has a {@link CachePolicy} the results of the successful
+ * calls are kept in a {@link ResultCache}. A call with a fresh result in the
+ * cache is answered without going through the circuit at all, and a call
+ * which would be answered by the fallback because the circuit is open is
+ * answered with the last result for its input instead, as long as it is not
+ * older than the maximum staleness. The calls turned away by the rate
+ * limiter, the concurrency limiter or the bulkhead get the fallback.
+ * <p>
+ * When the circuit has a {@link ConcurrencyLimit} the calls go through an
+ * {@link AdaptiveConcurrencyLimiter} ahead of the CircuitBreaker. The latency
+ * of each successful call and each timeout adjust the limit, and a call above
+ * the limit is answered by the fallback without counting as a fault, so the
+ * calls queued up on a slow external system are shed before it fails.
+ * <p>
+ * When the circuit has a {@link RateLimit} every call takes a permit from a
+ * {@link TokenBucketRateLimiter} first. A call waits for its permit as long as
+ * the RateLimit allows, a synchronous call in the calling thread and an
+ * asynchronous call on the shared timer, and is answered by the fallback when
+ * it would have to wait longer. A throttled call is never checked as a fault.
+ * <p>
+ * When the circuit has a {@link RetryPolicy} a call that failed with a
+ * {@link CommandExecutionFailureException} is made again through the whole
+ * pipeline after a backoff, as long as the circuit is closed and the
+ * {@link RetryBudget} allows it. A synchronous call waits for the backoff in
+ * the calling thread, an asynchronous call on the shared timer.
+ * <p>
+ * When the circuit has a {@link HedgePolicy} and runs in
+ * {@link ExecutionMode#THREAD_POOL} mode a call still running after the delay
+ * calculated by the {@link Hedger} is hedged: a second attempt is submitted to
+ * the ExecutorService from the shared timer, the first attempt to succeed
+ * completes the call and the other one is cancelled. The timeout, the fault
+ * accounting and the fallback apply to the hedged call as a whole, so a slow
+ * attempt is not a fault when the other one succeeds.
+ * <p>
+ * The proxy of a registered circuit is its {@link CircuitHandle}. Closing it
+ * shuts down the ExecutorService created for the circuit and the scheduled
+ * health checks of its CircuitBreaker, unless another circuit of the registry
+ * still uses the CircuitBreaker. The calls made after are rejected with an
+ * {@link IllegalStateException}.
  * 
  * @author 576219
  * @param <K>
  * @param <V>
  */
-public class CommandProxy<K, V> implements Command<K, V> {
+public class CommandProxy<K, V> implements CircuitHandle<K, V> {
 
 	private Command<K, V> command;
 	private CircuitBreaker<K, V> circuitBreaker;
 	private ExecutorService executor;
+	private ExecutionMode executionMode;
+	private Bulkhead bulkhead;
+	private boolean rejectionCountedAsFault;
+	private AdaptiveTimeout adaptiveTimeout;
+	private LatencyHistogram latencies;
+	private volatile long adaptiveTimeoutNanos;
+	private final AtomicLong nextAdaptiveTimeoutUpdate = new AtomicLong(System.nanoTime());
+	private CircuitMetricsRecorder metrics;
+	private StateTransitionListener stateTransitionListener;
+	private String name;
+	private CircuitEventBus eventBus;
+	private ConcurrentHashMap<K, CompletableFuture<V>> inFlight;
+	private ResultCache<K, V> cache;
+	private AdaptiveConcurrencyLimiter limiter;
+	private TokenBucketRateLimiter rateLimiter;
+	private RetryPolicy retryPolicy;
+	private RetryBudget retryBudget;
+	private Hedger hedger;
+	private volatile boolean closed;
+	private Runnable closeCallback;
+	private Predicate<CircuitBreaker<?, ?>> breakerInUse;
+
+	/**
+	 * The span of the window of the metrics in seconds when the proxy is not
+	 * created from a {@link Circuit}
+	 */
+	private static final int METRICS_WINDOW_SIZE = 60;
+
+	/**
+	 * The interval between two calculations of the adaptive timeout
+	 */
+	public static final long ADAPTIVE_TIMEOUT_UPDATE_MILLIS = 100;
+
+	/**
+	 * Creates the proxy of the Command of a registered circuit, configured as
+	 * per the circuit.
+	 * 
+	 * @param name
+	 *            The name under which the circuit is registered
+	 * @param circuit
+	 */
+	public CommandProxy(String name, Circuit<K, V> circuit) {
+		this(circuit.getCommand(), circuit.getCircuitBreaker(), circuit.getExecutorServiceFactory(),
+				circuit.getExecutionMode(), circuit.getMetricsWindowSize());
+		this.name = name;
+		this.eventBus = CircuitEventBus.get();
+		this.stateTransitionListener = this::onStateTransition;
+		circuitBreaker.addStateTransitionListener(stateTransitionListener);
+		this.adaptiveTimeout = circuit.getAdaptiveTimeout();
+		if (adaptiveTimeout != null)
+			this.latencies = new LatencyHistogram(adaptiveTimeout.getWindowSize(), TimeUnit.SECONDS);
+		if (circuit.isRequestCollapsingEnabled())
+			this.inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+		CachePolicy cachePolicy = circuit.getCachePolicy();
+		if (cachePolicy != null)
+			this.cache = new ResultCache<K, V>(cachePolicy);
+		ConcurrencyLimit concurrencyLimit = circuit.getConcurrencyLimit();
+		if (concurrencyLimit != null)
+			this.limiter = new AdaptiveConcurrencyLimiter(concurrencyLimit);
+		RateLimit rateLimit = circuit.getRateLimit();
+		if (rateLimit != null)
+			this.rateLimiter = new TokenBucketRateLimiter(rateLimit);
+		this.retryPolicy = circuit.getRetryPolicy();
+		if (retryPolicy != null)
+			this.retryBudget = new RetryBudget(retryPolicy);
+		HedgePolicy hedgePolicy = circuit.getHedgePolicy();
+		if (hedgePolicy != null && executor != null)
+			this.hedger = new Hedger(hedgePolicy);
+	}
 
 	/**
 	 * 
@@ -37,69 +194,990 @@ public class CommandProxy<K, V> implements Command<K, V> {
 	 */
 	public CommandProxy(Command<K, V> command, CircuitBreaker<K, V> circuitBreaker,
 			ExecutorServiceFactory executorServiceFactory) {
+		this(command, circuitBreaker, executorServiceFactory, ExecutionMode.THREAD_POOL);
+	}
+
+	/**
+	 * 
+	 * @param command
+	 * @param circuitBreaker
+	 * @param executorServiceFactory
+	 *            Only the bulkhead configuration is used in
+	 *            {@link ExecutionMode#CALLER_THREAD} mode
+	 * @param executionMode
+	 */
+	public CommandProxy(Command<K, V> command, CircuitBreaker<K, V> circuitBreaker,
+			ExecutorServiceFactory executorServiceFactory, ExecutionMode executionMode) {
+		this(command, circuitBreaker, executorServiceFactory, executionMode, METRICS_WINDOW_SIZE);
+	}
+
+	private CommandProxy(Command<K, V> command, CircuitBreaker<K, V> circuitBreaker,
+			ExecutorServiceFactory executorServiceFactory, ExecutionMode executionMode, int metricsWindowSize) {
 		this.command = command;
 		this.circuitBreaker = circuitBreaker;
-		executor = executorServiceFactory.getExecutorService();
+		this.executionMode = executionMode;
+		if (executionMode == ExecutionMode.THREAD_POOL)
+			executor = executorServiceFactory.getExecutorService();
+		this.bulkhead = new Bulkhead(executorServiceFactory, executor);
+		this.rejectionCountedAsFault = executorServiceFactory != null
+				&& executorServiceFactory.isRejectionCountedAsFault();
+		this.metrics = new CircuitMetricsRecorder(metricsWindowSize);
 	}
 
 	/**
-	 * All executes calls to the actual command instance is made from here, but
-	 * each call is wrapped in a new thread with a timeout as defined in
-	 * {@link CircuitBreaker#invocationTimeout()}. It checks whether the circuit
-	 * is tripped or not. If not then it keeps on calling the
-	 * {@link Command#execute()} method of the command. If the circuit is
-	 * already tripped then the {@link CircuitBreaker#executeFallback(Object)}
-	 * method is called.
+	 * All executes calls to the actual command instance is made from here, with
+	 * a timeout as defined in {@link CircuitBreaker#getInvocationTimeout()}, or
+	 * calculated from the latencies of the Command with an
+	 * {@link AdaptiveTimeout}. In
+	 * {@link ExecutionMode#THREAD_POOL} mode each call is wrapped in a new
+	 * thread, in {@link ExecutionMode#CALLER_THREAD} mode it is executed in the
+	 * calling thread. It checks whether the circuit breaker permits the call or
+	 * not. If yes then it keeps on calling the {@link Command#execute()} method
+	 * of the command. If the circuit is already tripped then the
+	 * {@link CircuitBreaker#executeFallback(Object)} method is called, unless
+	 * the call is let through as a trial request in half open state.
 	 * <p>
 	 * This method also checks for any exception in execute() method and if
 	 * there is one then it checks whether its time to trip the circuit breaker.
+	 * A call that finds the bulkhead of the circuit full is rejected right away
+	 * and the fallback method is called.
+	 * <p>
+	 * With request collapsing a call with the same input as a call in flight
+	 * waits for the outcome of that call. With a cache a fresh result is
+	 * returned right away.
 	 */
 
 	public V execute(final K k) throws CommandExecutionFailureException {
-		V v = null;
-		if (circuitBreaker.hasTripped()) {
-			v = circuitBreaker.executeFallback(k);
-		} else {
-			Callable<V> c = () -> {
-				V returnVal = null;
+		checkOpen();
+		ResultCache.Result<V> cached = getFresh(k);
+		if (cached != null)
+			return cached.getValue();
+		if (inFlight == null || k == null)
+			return executeRetrying(k);
+		final CompletableFuture<V> call = new CompletableFuture<V>();
+		CompletableFuture<V> shared = inFlight.putIfAbsent(k, call);
+		if (shared != null)
+			return awaitCollapsed(k, shared);
+		try {
+			V v = executeRetrying(k);
+			call.complete(v);
+			return v;
+		} catch (CommandExecutionFailureException | RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(k, call);
+		}
+	}
+
+	/**
+	 * Makes the call again after a backoff while it fails and the retries are
+	 * allowed.
+	 */
+	private V executeRetrying(final K k) throws CommandExecutionFailureException {
+		if (retryBudget == null)
+			return executeOnce(k);
+		for (int attempt = 1;; attempt++) {
+			try {
+				return executeOnce(k);
+			} catch (CommandExecutionFailureException e) {
+				if (!retry(e, attempt))
+					throw e;
 				try {
-					returnVal = command.execute(k);
-				} catch (Exception e) {
-					if (circuitBreaker.checkFault(e)) {
-						circuitBreaker.trip();
-						returnVal = circuitBreaker.executeFallback(k);
-					} else {
-						throw e;
-					}
+					TimeUnit.NANOSECONDS.sleep(retryBudget.backoffNanos(attempt));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
 				}
-				return returnVal;
-			};
-			
-			Future<V> future = executor.submit(c);
+			}
+		}
+	}
+
+	private V executeOnce(final K k) throws CommandExecutionFailureException {
+		if (rateLimiter != null) {
+			long wait = rateLimiter.reserve();
+			if (wait < 0)
+				return throttle(k);
+			if (wait > 0)
+				awaitPermit(k, wait);
+		}
+		if (limiter == null)
+			return executeLimited(k);
+		if (!limiter.tryAcquire())
+			return shed(k);
+		try {
+			return executeLimited(k);
+		} finally {
+			limiter.release();
+		}
+	}
+
+	private V executeLimited(final K k) throws CommandExecutionFailureException {
+		final long permission = circuitBreaker.acquirePermission();
+		if (permission < 0) {
+			shortCircuit();
+			return openCircuitFallback(k);
+		}
+		if (!bulkhead.tryAcquire())
+			return reject(k, permission);
+		try {
+			if (executionMode == ExecutionMode.CALLER_THREAD)
+				return executeInCallerThread(k, permission);
+			if (hedger != null)
+				return executeHedged(k, permission);
+			return executeInExecutor(k, permission);
+		} finally {
+			bulkhead.release();
+		}
+	}
+
+	private V executeInExecutor(final K k, final long permission) throws CommandExecutionFailureException {
+		V v = null;
+		final long timeoutNanos = timeoutNanos();
+		final long start = System.nanoTime();
+		Callable<V> c = () -> {
+			V returnVal = null;
 			try {
-				v = future.get(circuitBreaker.invocationTimeout(), TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				future.cancel(true);
-				throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
-			} catch (ExecutionException e) {
-				future.cancel(true);
-				throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
-			} catch (TimeoutException e) {
-				future.cancel(true);
-				CommandExecutionFailureException ce = new CommandExecutionFailureException(
-						"Time taken by the command is more than " + circuitBreaker.invocationTimeout() + "sec for input "
-								+ k,
-						e);
-				if (circuitBreaker.checkFault(ce)) {
-					circuitBreaker.trip();
-					v = circuitBreaker.executeFallback(k);
+				returnVal = command.execute(k);
+				recordSuccess(k, returnVal, start, permission);
+			} catch (Exception e) {
+				recordFailure(start, e);
+				if (circuitBreaker.checkFault(e, permission)) {
+					circuitBreaker.trip(permission);
+					returnVal = openCircuitFallback(k);
 				} else {
-					throw ce;
+					throw e;
 				}
 			}
+			return returnVal;
+		};
+
+		final Future<V> future;
+		try {
+			future = executor.submit(c);
+		} catch (RejectedExecutionException e) {
+			bulkhead.onRejected();
+			return reject(k, permission);
+		}
+		// the shared timer cancels the call at the deadline, the caller only waits for the outcome
+		HashedWheelTimer timer = SharedScheduler.timer();
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> future.cancel(true), timeoutNanos,
+				TimeUnit.NANOSECONDS);
+		try {
+			// bounded as well, in case the timer is stopped or its thread has died
+			v = future.get(timeoutNanos + timer.getTickNanos(), TimeUnit.NANOSECONDS);
+		} catch (CancellationException e) {
+			v = handleTimeout(k, new TimeoutException(), timeoutNanos, permission);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			v = handleTimeout(k, e, timeoutNanos, permission);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
+		} catch (ExecutionException e) {
+			future.cancel(true);
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
+		} finally {
+			timeout.cancel();
+		}
+		return v;
+	}
+
+	/**
+	 * Waits for the outcome of a {@link HedgedCall}. Its failure is the one of
+	 * the last attempt to fail, checked as a single fault.
+	 */
+	private V executeHedged(final K k, final long permission) throws CommandExecutionFailureException {
+		final long timeoutNanos = timeoutNanos();
+		final long start = System.nanoTime();
+		final CompletableFuture<V> call;
+		try {
+			call = new HedgedCall(k).start();
+		} catch (RejectedExecutionException e) {
+			bulkhead.onRejected();
+			return reject(k, permission);
+		}
+		HashedWheelTimer timer = SharedScheduler.timer();
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> call.completeExceptionally(new TimeoutException()),
+				timeoutNanos, TimeUnit.NANOSECONDS);
+		V v;
+		try {
+			v = call.get(timeoutNanos + timer.getTickNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// the timer is stopped or its thread has died
+			call.completeExceptionally(e);
+			return handleTimeout(k, e, timeoutNanos, permission);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			call.cancel(true);
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			Exception fault = (Exception) e.getCause();
+			if (fault instanceof TimeoutException)
+				return handleTimeout(k, (TimeoutException) fault, timeoutNanos, permission);
+			recordFailure(start, fault);
+			if (circuitBreaker.checkFault(fault, permission)) {
+				circuitBreaker.trip(permission);
+				return openCircuitFallback(k);
+			}
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, fault);
+		} finally {
+			timeout.cancel();
 		}
+		recordSuccess(k, v, start, permission);
 		return v;
 	}
 
+	/**
+	 * Waits for the outcome of the call in flight for an equal input. The
+	 * exception of that call is thrown again with the same message and cause.
+	 */
+	private V awaitCollapsed(K k, CompletableFuture<V> shared) throws CommandExecutionFailureException {
+		metrics.record(Outcome.COLLAPSED, System.nanoTime());
+		try {
+			return shared.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CommandExecutionFailureException)
+				throw new CommandExecutionFailureException(cause.getMessage(), (Exception) cause.getCause());
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k,
+					(Exception) cause);
+		}
+	}
+
+	/**
+	 * Executes the command in the calling thread while the shared timer
+	 * watches its deadline, see {@link CallerThreadTimeout}.
+	 */
+	private V executeInCallerThread(final K k, final long permission) throws CommandExecutionFailureException {
+		long timeoutNanos = timeoutNanos();
+		long start = System.nanoTime();
+		CallerThreadTimeout deadline = CallerThreadTimeout.arm(timeoutNanos);
+		V v;
+		try {
+			v = command.execute(k);
+		} catch (Exception e) {
+			if (deadline.disarm()) {
+				TimeoutException timeout = new TimeoutException();
+				timeout.initCause(e);
+				return handleTimeout(k, timeout, timeoutNanos, permission);
+			}
+			recordFailure(start, e);
+			if (circuitBreaker.checkFault(e, permission)) {
+				circuitBreaker.trip(permission);
+				return openCircuitFallback(k);
+			}
+			throw new CommandExecutionFailureException("Exception calling execute method with input:" + k, e);
+		} catch (Error e) {
+			// the deadline must not fire once the call has returned
+			deadline.disarm();
+			throw e;
+		}
+		if (deadline.disarm())
+			return handleTimeout(k, new TimeoutException(), timeoutNanos, permission);
+		recordSuccess(k, v, start, permission);
+		return v;
+	}
+
+	/**
+	 * The asynchronous counterpart of {@link #execute(Object)}. If the command is
+	 * an {@link AsyncCommand} then it is called directly, otherwise it is
+	 * executed in a thread of the ExecutorService, or in the calling thread in
+	 * {@link ExecutionMode#CALLER_THREAD} mode. The timeout, the fault check,
+	 * the trip and the fallback are all applied by composing the returned
+	 * future, no thread waits for the call to complete. With request
+	 * collapsing a call with the same input as a call in flight gets a future
+	 * of the outcome of that call. With a cache a fresh result is returned as
+	 * a completed future.
+	 */
+
+	public CompletableFuture<V> executeAsync(final K k) {
+		checkOpen();
+		ResultCache.Result<V> cached = getFresh(k);
+		if (cached != null)
+			return CompletableFuture.completedFuture(cached.getValue());
+		if (inFlight == null || k == null)
+			return executeAsyncRetrying(k, 1);
+		final CompletableFuture<V> call = new CompletableFuture<V>();
+		CompletableFuture<V> shared = inFlight.putIfAbsent(k, call);
+		if (shared != null) {
+			metrics.record(Outcome.COLLAPSED, System.nanoTime());
+			return shared.thenApply(Function.identity());
+		}
+		CompletableFuture<V> result;
+		try {
+			result = executeAsyncRetrying(k, 1);
+		} catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			inFlight.remove(k, call);
+			throw e;
+		}
+		result.whenComplete((v, t) -> {
+			if (t == null)
+				call.complete(v);
+			else
+				call.completeExceptionally(t);
+			inFlight.remove(k, call);
+		});
+		return result;
+	}
+
+	/**
+	 * The asynchronous counterpart of {@link #executeRetrying(Object)}, the
+	 * next attempt is scheduled on the shared timer and made off the timer
+	 * thread.
+	 */
+	private CompletableFuture<V> executeAsyncRetrying(final K k, final int attempt) {
+		CompletableFuture<V> call = executeAsyncOnce(k);
+		if (retryBudget == null)
+			return call;
+		return call.handle((v, t) -> {
+			if (t == null)
+				return CompletableFuture.completedFuture(v);
+			Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+			if (cause instanceof CommandExecutionFailureException
+					&& retry((CommandExecutionFailureException) cause, attempt)) {
+				CompletableFuture<Void> backoff = new CompletableFuture<Void>();
+				SharedScheduler.timer().newTimeout(() -> backoff.complete(null), retryBudget.backoffNanos(attempt),
+						TimeUnit.NANOSECONDS);
+				return backoff.thenComposeAsync((x) -> executeAsyncRetrying(k, attempt + 1), ForkJoinPool.commonPool());
+			}
+			CompletableFuture<V> failed = new CompletableFuture<V>();
+			failed.completeExceptionally(cause);
+			return failed;
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * A failed call is retried only while the circuit is closed, the failure
+	 * is retryable as per the {@link RetryPolicy} and the {@link RetryBudget}
+	 * has a retry left.
+	 */
+	private boolean retry(CommandExecutionFailureException e, int attempt) {
+		if (attempt >= retryPolicy.getMaxAttempts() || closed || circuitBreaker.getState() != CircuitState.CLOSED)
+			return false;
+		Throwable cause = e.getCause();
+		if (cause instanceof ExecutionException && cause.getCause() != null)
+			cause = cause.getCause();
+		if (!(cause instanceof Exception) || !retryPolicy.isRetryable((Exception) cause))
+			return false;
+		if (!retryBudget.tryRetry(TimeUnit.NANOSECONDS.toMillis(System.nanoTime())))
+			return false;
+		metrics.record(Outcome.RETRY, System.nanoTime());
+		publish(CircuitEventType.RETRIED, e);
+		return true;
+	}
+
+	private CompletableFuture<V> executeAsyncOnce(final K k) {
+		if (rateLimiter != null) {
+			long wait = rateLimiter.reserve();
+			if (wait < 0)
+				return throttleAsync(k);
+			if (wait > 0) {
+				// the permit is awaited on the shared timer, the call is then made off the timer thread
+				CompletableFuture<Void> permit = new CompletableFuture<Void>();
+				SharedScheduler.timer().newTimeout(() -> permit.complete(null), wait, TimeUnit.NANOSECONDS);
+				return permit.thenComposeAsync((v) -> executeAsyncAdmitted(k), ForkJoinPool.commonPool());
+			}
+		}
+		return executeAsyncAdmitted(k);
+	}
+
+	private CompletableFuture<V> executeAsyncAdmitted(final K k) {
+		if (limiter == null)
+			return executeAsyncLimited(k);
+		if (!limiter.tryAcquire())
+			return shedAsync(k);
+		CompletableFuture<V> result;
+		try {
+			result = executeAsyncLimited(k);
+		} catch (RuntimeException | Error e) {
+			limiter.release();
+			throw e;
+		}
+		result.whenComplete((v, t) -> limiter.release());
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<V> executeAsyncLimited(final K k) {
+		final long permission = circuitBreaker.acquirePermission();
+		if (permission < 0) {
+			shortCircuit();
+			return executeFallbackAsync(k);
+		}
+		if (!bulkhead.tryAcquire())
+			return rejectAsync(k, permission);
+		final long timeoutNanos = timeoutNanos();
+		final long start = System.nanoTime();
+		CompletableFuture<V> call;
+		Future<?> task = null;
+		if (command instanceof AsyncCommand) {
+			try {
+				call = ((AsyncCommand<K, V>) command).executeAsync(k);
+			} catch (Exception e) {
+				call = new CompletableFuture<V>();
+				call.completeExceptionally(e);
+			}
+		} else if (executionMode == ExecutionMode.CALLER_THREAD) {
+			call = new CompletableFuture<V>();
+			try {
+				call.complete(executeInCallerThread(k, permission));
+			} catch (CommandExecutionFailureException e) {
+				call.completeExceptionally(e);
+			} finally {
+				bulkhead.release();
+			}
+			return call;
+		} else if (hedger != null) {
+			try {
+				call = new HedgedCall(k).start();
+			} catch (RejectedExecutionException e) {
+				bulkhead.onRejected();
+				bulkhead.release();
+				return rejectAsync(k, permission);
+			}
+		} else {
+			final CompletableFuture<V> result = new CompletableFuture<V>();
+			try {
+				task = executor.submit(() -> {
+					try {
+						result.complete(command.execute(k));
+					} catch (Exception e) {
+						result.completeExceptionally(e);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				bulkhead.onRejected();
+				bulkhead.release();
+				return rejectAsync(k, permission);
+			}
+			call = result;
+		}
+		call.whenComplete((v, t) -> bulkhead.release());
+		return withTimeout(call, task, timeoutNanos).handle((v, t) -> {
+			if (t == null) {
+				recordSuccess(k, v, start, permission);
+				return CompletableFuture.completedFuture(v);
+			}
+			return handleFailureAsync(k, t, start, timeoutNanos, permission);
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * Completes the call exceptionally with a {@link TimeoutException} when it
+	 * has not completed within the timeout, and cancels the task executing it,
+	 * if any. The timeout is fired by the shared {@link HashedWheelTimer}, and
+	 * the call is completed off the timer thread so that neither the fault
+	 * check nor the continuations of the caller delay the other timeouts.
+	 */
+	private CompletableFuture<V> withTimeout(final CompletableFuture<V> call, final Future<?> task,
+			long timeoutNanos) {
+		if (call.isDone())
+			return call;
+		final HashedWheelTimer.Timeout timeout = SharedScheduler.timer().newTimeout(
+				() -> ForkJoinPool.commonPool().execute(() -> {
+					if (call.completeExceptionally(new TimeoutException()) && task != null)
+						task.cancel(true);
+				}), timeoutNanos, TimeUnit.NANOSECONDS);
+		call.whenComplete((v, t) -> timeout.cancel());
+		return call;
+	}
+
+	private CompletableFuture<V> handleFailureAsync(K k, Throwable t, long start, long timeoutNanos,
+			long permission) {
+		Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+		CompletableFuture<V> failed = new CompletableFuture<V>();
+		if (!(cause instanceof Exception)) {
+			failed.completeExceptionally(cause);
+			return failed;
+		}
+		Exception fault;
+		CommandExecutionFailureException ce;
+		if (cause instanceof TimeoutException) {
+			ce = new CommandExecutionFailureException(timeoutMessage(k, timeoutNanos), (Exception) cause);
+			recordTimeout(ce);
+			fault = ce;
+		} else {
+			fault = (Exception) cause;
+			recordFailure(start, fault);
+			ce = new CommandExecutionFailureException("Exception calling execute method with input:" + k, fault);
+		}
+		if (circuitBreaker.checkFault(fault, permission)) {
+			circuitBreaker.trip(permission);
+			return executeFallbackAfterFailure(k);
+		}
+		failed.completeExceptionally(ce);
+		return failed;
+	}
+
+	/**
+	 * Calls the fallback in a thread of the ExecutorService, or in the calling
+	 * thread in {@link ExecutionMode#CALLER_THREAD} mode or when the
+	 * ExecutorService is full.
+	 */
+	private CompletableFuture<V> executeFallbackAsync(final K k) {
+		if (executor != null) {
+			try {
+				return CompletableFuture.supplyAsync(() -> openCircuitFallback(k), executor);
+			} catch (RejectedExecutionException e) {
+				// fall through to the calling thread
+			}
+		}
+		CompletableFuture<V> fallback = new CompletableFuture<V>();
+		try {
+			fallback.complete(openCircuitFallback(k));
+		} catch (RuntimeException e) {
+			fallback.completeExceptionally(e);
+		}
+		return fallback;
+	}
+
+	/**
+	 * Calls the fallback after a failure in a thread of the ExecutorService, or
+	 * of the common pool when there is none or it is full. The failure can be
+	 * detected by the thread of the shared timer which must not be blocked.
+	 */
+	private CompletableFuture<V> executeFallbackAfterFailure(final K k) {
+		Supplier<V> fallback = () -> openCircuitFallback(k);
+		if (executor != null) {
+			try {
+				return CompletableFuture.supplyAsync(fallback, executor);
+			} catch (RejectedExecutionException e) {
+				// fall through to the common pool
+			}
+		}
+		return CompletableFuture.supplyAsync(fallback, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Handles a call rejected by the bulkhead by calling the fallback, after
+	 * checking it as a fault if so configured. Otherwise the permission of the
+	 * call is given back, the external system was not called.
+	 */
+	private V reject(K k, long permission) {
+		metrics.record(Outcome.REJECTED, System.nanoTime());
+		publish(CircuitEventType.REJECTED, null);
+		if (!rejectionCountedAsFault) {
+			circuitBreaker.releasePermission(permission);
+		} else if (circuitBreaker.checkFault(new CommandExecutionFailureException(
+				"Bulkhead of the circuit is full for input " + k, new RejectedExecutionException()), permission)) {
+			circuitBreaker.trip(permission);
+			return openCircuitFallback(k);
+		}
+		return fallback(k);
+	}
+
+	/**
+	 * Waits in the calling thread for the permit reserved from the rate
+	 * limiter.
+	 */
+	private void awaitPermit(K k, long waitNanos) throws CommandExecutionFailureException {
+		try {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CommandExecutionFailureException("Interrupted waiting for a permit for input:" + k, e);
+		}
+	}
+
+	/**
+	 * Answers a call for which no permit was available in time with the
+	 * fallback. It is not checked as a fault, the external system was not
+	 * called.
+	 */
+	private V throttle(K k) {
+		metrics.record(Outcome.THROTTLED, System.nanoTime());
+		publish(CircuitEventType.THROTTLED, null);
+		return fallback(k);
+	}
+
+	private CompletableFuture<V> throttleAsync(K k) {
+		CompletableFuture<V> fallback = new CompletableFuture<V>();
+		try {
+			fallback.complete(throttle(k));
+		} catch (RuntimeException e) {
+			fallback.completeExceptionally(e);
+		}
+		return fallback;
+	}
+
+	/**
+	 * Answers a call above the concurrency limit with the fallback. It is not
+	 * checked as a fault, the circuit is not to blame for its own limit.
+	 */
+	private V shed(K k) {
+		metrics.record(Outcome.LIMITED, System.nanoTime());
+		publish(CircuitEventType.LIMITED, null);
+		return fallback(k);
+	}
+
+	private CompletableFuture<V> shedAsync(K k) {
+		CompletableFuture<V> fallback = new CompletableFuture<V>();
+		try {
+			fallback.complete(shed(k));
+		} catch (RuntimeException e) {
+			fallback.completeExceptionally(e);
+		}
+		return fallback;
+	}
+
+	private CompletableFuture<V> rejectAsync(K k, long permission) {
+		CompletableFuture<V> fallback = new CompletableFuture<V>();
+		try {
+			fallback.complete(reject(k, permission));
+		} catch (RuntimeException e) {
+			fallback.completeExceptionally(e);
+		}
+		return fallback;
+	}
+
+	/**
+	 * 
+	 * @return The name under which the circuit is registered, or null if the
+	 *         proxy is not created from a {@link Circuit}
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 
+	 * @return The current state of the CircuitBreaker
+	 */
+	public CircuitState getState() {
+		return circuitBreaker.getState();
+	}
+
+	/**
+	 * Shuts down the ExecutorService and the CircuitBreaker, and removes the
+	 * circuit from the registry it was registered in. The CircuitBreaker is
+	 * not shut down while another circuit of the registry still uses it. The
+	 * calls in flight complete, they are not interrupted.
+	 */
+
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		if (executor != null)
+			executor.shutdown();
+		if (stateTransitionListener != null)
+			circuitBreaker.removeStateTransitionListener(stateTransitionListener);
+		if (closeCallback != null)
+			closeCallback.run();
+		if (breakerInUse == null || !breakerInUse.test(circuitBreaker))
+			circuitBreaker.shutdown();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 
+	 * @return The CircuitBreaker of the circuit, used by the registry to save
+	 *         and restore its state
+	 */
+	CircuitBreaker<K, V> getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Sets the action run once the proxy is closed, used by the registry to
+	 * forget the circuit, and the check made after it of whether the
+	 * CircuitBreaker is still used by another circuit
+	 */
+	void onClose(Runnable callback, Predicate<CircuitBreaker<?, ?>> breakerInUse) {
+		this.closeCallback = callback;
+		this.breakerInUse = breakerInUse;
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Circuit " + name + " has been closed");
+	}
+
+	/**
+	 * 
+	 * @return The current usage of the bulkhead of the circuit
+	 */
+	public BulkheadMetrics getBulkheadMetrics() {
+		return bulkhead;
+	}
+
+	/**
+	 * 
+	 * @return The usage of the cache of the results, or null if the circuit
+	 *         has no {@link CachePolicy}
+	 */
+	public CacheMetrics getCacheMetrics() {
+		return cache;
+	}
+
+	/**
+	 * 
+	 * @return The current limit of the concurrent calls, or null if the
+	 *         circuit has no {@link ConcurrencyLimit}
+	 */
+	public ConcurrencyLimitMetrics getConcurrencyLimitMetrics() {
+		return limiter;
+	}
+
+	/**
+	 * 
+	 * @return The rate limiter of the circuit, or null if the circuit has no
+	 *         {@link RateLimit}
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * 
+	 * @return A snapshot of the outcomes and the latencies of the calls in the
+	 *         window of the metrics
+	 */
+	public CircuitMetrics getMetrics() {
+		return metrics.snapshot(System.nanoTime());
+	}
+
+	/**
+	 * 
+	 * @return The timeout of the next call
+	 */
+	public Duration getCurrentTimeout() {
+		return Duration.ofNanos(timeoutNanos());
+	}
+
+	/**
+	 * The timeout of the CircuitBreaker, or the adaptive timeout once enough
+	 * latencies have been recorded. The adaptive timeout is recalculated by
+	 * only one of the calling threads at a time.
+	 */
+	private long timeoutNanos() {
+		long maxNanos = circuitBreaker.getInvocationTimeout().toNanos();
+		if (latencies == null)
+			return maxNanos;
+		long now = System.nanoTime();
+		long next = nextAdaptiveTimeoutUpdate.get();
+		if (now - next >= 0 && nextAdaptiveTimeoutUpdate.compareAndSet(next,
+				now + TimeUnit.MILLISECONDS.toNanos(ADAPTIVE_TIMEOUT_UPDATE_MILLIS))) {
+			updateAdaptiveTimeout(now);
+		}
+		long adaptive = adaptiveTimeoutNanos;
+		return adaptive > 0 ? Math.min(adaptive, maxNanos) : maxNanos;
+	}
+
+	private void updateAdaptiveTimeout(long now) {
+		if (latencies.getCount(now) < adaptiveTimeout.getMinimumNumberOfCalls()) {
+			adaptiveTimeoutNanos = 0;
+			return;
+		}
+		double timeout = latencies.getValueAtPercentile(adaptiveTimeout.getPercentile(), now)
+				* adaptiveTimeout.getMultiplier();
+		adaptiveTimeoutNanos = Math.max((long) Math.min(timeout, Long.MAX_VALUE),
+				Math.max(1, adaptiveTimeout.getMinimumTimeout().toNanos()));
+	}
+
+	private void recordSuccess(K k, V v, long start, long permission) {
+		long now = System.nanoTime();
+		if (cache != null && k != null)
+			cache.put(k, v, now);
+		metrics.record(Outcome.SUCCESS, start, now);
+		if (latencies != null)
+			latencies.record(now - start, now);
+		if (limiter != null)
+			limiter.onSample(now - start);
+		if (retryBudget != null)
+			retryBudget.onSuccess(TimeUnit.NANOSECONDS.toMillis(now));
+		if (hedger != null)
+			hedger.onSuccess(now - start, now);
+		circuitBreaker.recordSuccess(permission);
+	}
+
+	private void recordFailure(long start, Exception e) {
+		metrics.record(Outcome.FAILURE, start, System.nanoTime());
+		publish(CircuitEventType.FAILED, e);
+	}
+
+	private void recordTimeout(CommandExecutionFailureException e) {
+		metrics.record(Outcome.TIMEOUT, System.nanoTime());
+		if (limiter != null)
+			limiter.onDrop();
+		publish(CircuitEventType.TIMED_OUT, e);
+	}
+
+	private void shortCircuit() {
+		metrics.record(Outcome.SHORT_CIRCUIT, System.nanoTime());
+		publish(CircuitEventType.SHORT_CIRCUITED, null);
+	}
+
+	private void onStateTransition(CircuitState from, CircuitState to) {
+		switch (to) {
+		case OPEN:
+			publish(CircuitEventType.TRIPPED, null);
+			break;
+		case HALF_OPEN:
+			publish(CircuitEventType.HALF_OPENED, null);
+			break;
+		default:
+			publish(CircuitEventType.RECOVERED, null);
+		}
+	}
+
+	private void publish(CircuitEventType type, Throwable failure) {
+		if (eventBus != null)
+			eventBus.publish(name, type, failure);
+	}
+
+	private ResultCache.Result<V> getFresh(K k) {
+		return cache == null || k == null ? null : cache.getFresh(k, System.nanoTime());
+	}
+
+	/**
+	 * Answers a call that cannot be made because the circuit is open, or has
+	 * just been tripped by the call, with the stale result of the input if
+	 * the cache has one, otherwise with
+	 * {@link CircuitBreaker#executeFallback(Object)}.
+	 */
+	private V openCircuitFallback(K k) {
+		if (cache != null && k != null) {
+			ResultCache.Result<V> stale = cache.getStale(k, System.nanoTime());
+			if (stale != null)
+				return stale.getValue();
+		}
+		return fallback(k);
+	}
+
+	/**
+	 * Answers a call turned away while the circuit is healthy, by the rate
+	 * limiter, the concurrency limiter or the bulkhead, with
+	 * {@link CircuitBreaker#executeFallback(Object)}. A stale result is not
+	 * served in its place, the external system is not known to be failing.
+	 */
+	private V fallback(K k) {
+		metrics.record(Outcome.FALLBACK, System.nanoTime());
+		return circuitBreaker.executeFallback(k);
+	}
+
+	private String timeoutMessage(K k, long timeoutNanos) {
+		return "Time taken by the command is more than " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+				+ "ms for input " + k;
+	}
+
+	private V handleTimeout(K k, TimeoutException e, long timeoutNanos, long permission)
+			throws CommandExecutionFailureException {
+		CommandExecutionFailureException ce = new CommandExecutionFailureException(timeoutMessage(k, timeoutNanos),
+				e);
+		recordTimeout(ce);
+		if (circuitBreaker.checkFault(ce, permission)) {
+			circuitBreaker.trip(permission);
+			return openCircuitFallback(k);
+		}
+		throw ce;
+	}
+
+	/**
+	 * A call made in a thread of the ExecutorService and hedged with a second
+	 * attempt from the shared timer once the delay of the {@link Hedger} has
+	 * passed, if its budget allows it. The call completes with the first
+	 * attempt that succeeds, which cancels the other one, or with the failure
+	 * of the last attempt to fail. When the call is completed otherwise, by a
+	 * timeout or a cancellation, the attempts still running are cancelled.
+	 */
+	private final class HedgedCall {
+
+		private final K k;
+		private final CompletableFuture<V> result = new CompletableFuture<V>();
+		private final AtomicInteger running = new AtomicInteger(1);
+		private volatile Throwable lastFailure;
+		private volatile boolean primarySucceeded;
+		private volatile Future<?> primary;
+		private volatile Future<?> hedge;
+		private volatile HashedWheelTimer.Timeout hedgeTimeout;
+
+		HedgedCall(K k) {
+			this.k = k;
+		}
+
+		/**
+		 * Submits the first attempt and schedules the hedge.
+		 * 
+		 * @return The future of the outcome of the call
+		 * @throws RejectedExecutionException
+		 *             If the first attempt cannot be submitted
+		 */
+		CompletableFuture<V> start() {
+			long now = System.nanoTime();
+			primary = executor.submit(() -> attempt(true));
+			hedger.onCall(now);
+			long delay = hedger.delayNanos(now);
+			if (delay >= 0)
+				hedgeTimeout = SharedScheduler.timer().newTimeout(this::hedge, delay, TimeUnit.NANOSECONDS);
+			result.whenComplete((v, t) -> {
+				HashedWheelTimer.Timeout pending = hedgeTimeout;
+				if (pending != null)
+					pending.cancel();
+				if (t != null) {
+					cancel(primary);
+					cancel(hedge);
+				}
+			});
+			return result;
+		}
+
+		private void hedge() {
+			if (result.isDone() || closed || !hedger.tryHedge(System.nanoTime()))
+				return;
+			running.incrementAndGet();
+			try {
+				hedge = executor.submit(() -> attempt(false));
+			} catch (RejectedExecutionException e) {
+				if (running.decrementAndGet() == 0)
+					result.completeExceptionally(lastFailure);
+				return;
+			}
+			metrics.record(Outcome.HEDGED, System.nanoTime());
+			publish(CircuitEventType.HEDGED, null);
+			// the first attempt may have succeeded while the hedge was submitted
+			if (primarySucceeded)
+				cancel(hedge);
+		}
+
+		private void attempt(boolean isPrimary) {
+			V v;
+			try {
+				v = command.execute(k);
+			} catch (Throwable e) {
+				// an Error completes the call too, so that the caller does not wait for it forever
+				lastFailure = e;
+				if (running.decrementAndGet() == 0)
+					result.completeExceptionally(e);
+				return;
+			}
+			if (isPrimary)
+				primarySucceeded = true;
+			if (result.complete(v))
+				cancel(isPrimary ? hedge : primary);
+		}
+
+		private void cancel(Future<?> attempt) {
+			if (attempt != null)
+				attempt.cancel(true);
+		}
+	}
+
 }
@@ -0,0 +1,74 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link OutcomeWindow} holding the outcomes of the last N calls in a ring.
+ * Each call claims the next slot of the ring, replaces the outcome of the call
+ * made N calls earlier and adjusts the running totals, so recording and
+ * querying are constant time and lock-free.
+ * 
+ * @author 576219
+ *
+ */
+public class CountBasedOutcomeWindow implements OutcomeWindow {
+
+	private static final int NONE = 0;
+
+	private static final int SUCCESS = 1;
+
+	private static final int FAILURE = 2;
+
+	private final AtomicIntegerArray outcomes;
+
+	private final AtomicLong cursor = new AtomicLong();
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * 
+	 * @param size
+	 *            The number of calls in the window
+	 */
+	public CountBasedOutcomeWindow(int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Size of the window must be positive");
+		this.outcomes = new AtomicIntegerArray(size);
+	}
+
+	public void record(boolean failure, long now) {
+		int outcome = failure ? FAILURE : SUCCESS;
+		int index = (int) (cursor.getAndIncrement() % outcomes.length());
+		int previous = outcomes.getAndSet(index, outcome);
+		if (previous == NONE)
+			calls.incrementAndGet();
+		if (previous != outcome) {
+			if (outcome == FAILURE)
+				failures.incrementAndGet();
+			else if (previous == FAILURE)
+				failures.decrementAndGet();
+		}
+	}
+
+	public int getNumberOfCalls(long now) {
+		return calls.get();
+	}
+
+	public int getNumberOfFailedCalls(long now) {
+		return failures.get();
+	}
+
+	public void clear() {
+		for (int i = 0; i < outcomes.length(); i++) {
+			int previous = outcomes.getAndSet(i, NONE);
+			if (previous != NONE)
+				calls.decrementAndGet();
+			if (previous == FAILURE)
+				failures.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.AdaptiveTimeout;
+
+/**
+ * Default AdaptiveTimeout with the following properties:
+ * <p>
+ * <ul>
+ * <li>percentile=99</li>
+ * <li>multiplier=2</li>
+ * <li>minimumTimeout=10ms</li>
+ * <li>minimumNumberOfCalls=100</li>
+ * <li>windowSize=60</li>
+ * </ul>
+ * 
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class DefaultAdaptiveTimeout implements AdaptiveTimeout {
+
+	/**
+	 * 
+	 */
+
+	public double getPercentile() {
+		return 99;
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getMultiplier() {
+		return 2;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMinimumTimeout() {
+		return Duration.ofMillis(10);
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMinimumNumberOfCalls() {
+		return 100;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getWindowSize() {
+		return 60;
+	}
+
+}
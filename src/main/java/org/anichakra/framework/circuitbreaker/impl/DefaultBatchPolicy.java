@@ -0,0 +1,37 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.BatchPolicy;
+
+/**
+ * Default BatchPolicy with the following properties:
+ * <p>
+ * <ul>
+ * <li>maxBatchSize=100</li>
+ * <li>maxDelay=10ms</li>
+ * </ul>
+ * 
+ * @see BatchingCommand
+ * @author 576219
+ *
+ */
+public class DefaultBatchPolicy implements BatchPolicy {
+
+	/**
+	 * 
+	 */
+
+	public int getMaxBatchSize() {
+		return 100;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMaxDelay() {
+		return Duration.ofMillis(10);
+	}
+
+}
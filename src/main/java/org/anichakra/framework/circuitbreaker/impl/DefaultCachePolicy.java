@@ -0,0 +1,46 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.CachePolicy;
+
+/**
+ * Default CachePolicy with the following properties:
+ * <p>
+ * <ul>
+ * <li>maximumSize=10000</li>
+ * <li>timeToLive=60s</li>
+ * <li>maximumStaleness=1h</li>
+ * </ul>
+ * 
+ * @see ResultCache
+ * @author 576219
+ *
+ */
+public class DefaultCachePolicy implements CachePolicy {
+
+	/**
+	 * 
+	 */
+
+	public int getMaximumSize() {
+		return 10000;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getTimeToLive() {
+		return Duration.ofSeconds(60);
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMaximumStaleness() {
+		return Duration.ofHours(1);
+	}
+
+}
@@ -1,24 +1,89 @@
 package org.anichakra.framework.circuitbreaker.impl;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.anichakra.framework.circuitbreaker.api.AsyncCommand;
 import org.anichakra.framework.circuitbreaker.api.Circuit;
 import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventListener;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
 import org.anichakra.framework.circuitbreaker.api.Command;
 import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.SnapshotPolicy;
 
 /**
  * The default implementation of {@link CommandRegistry} where all the
  * {@link Command} and {@link CircuitBreaker} instances as part of the
  * {@link Circuit}s are wrapped in a {@link CommandProxy} are registered and
- * cached in a {@link ConcurrentHashMap} instance.
- * 
+ * cached in a {@link ConcurrentHashMap} instance. Each registry has its own
+ * circuits, and the {@link CommandProxy} of a circuit is its
+ * {@link CircuitHandle}.
+ * <p>
+ * A registry created with a {@link SnapshotPolicy} restores the state of a
+ * circuit saved by an earlier process when the circuit is registered, if its
+ * CircuitBreaker extends {@link AbstractCircuitBreaker}. It saves the state of
+ * all its circuits periodically on the {@link SharedScheduler} and when it is
+ * closed, along with the snapshots read at start which have not been restored
+ * yet, so that the circuits registered late are not forgotten.
+ *
  * @author 576219
  *
  */
 public class DefaultCommandRegistry implements CommandRegistry {
 
-	private static ConcurrentHashMap<String, CommandProxy<?, ?>> commandMap = new ConcurrentHashMap<String, CommandProxy<?, ?>>();
+	private final ConcurrentHashMap<String, CommandProxy<?, ?>> commandMap = new ConcurrentHashMap<String, CommandProxy<?, ?>>();
+
+	private final List<CircuitEventListener> listeners = new CopyOnWriteArrayList<CircuitEventListener>();
+
+	private volatile boolean closed;
+
+	private final SnapshotPolicy snapshotPolicy;
+
+	/**
+	 * The snapshots read at start which have not been restored yet
+	 */
+	private final ConcurrentHashMap<String, CircuitSnapshot> snapshots = new ConcurrentHashMap<String, CircuitSnapshot>();
+
+	private final ScheduledFuture<?> snapshotTask;
+
+	/**
+	 * Creates a registry which keeps the state of its circuits in memory only.
+	 */
+	public DefaultCommandRegistry() {
+		this.snapshotPolicy = null;
+		this.snapshotTask = null;
+	}
+
+	/**
+	 * Creates a registry which saves the state of its circuits and restores
+	 * the snapshots which are not stale from the file of the policy.
+	 * 
+	 * @param snapshotPolicy
+	 */
+	public DefaultCommandRegistry(SnapshotPolicy snapshotPolicy) {
+		this.snapshotPolicy = snapshotPolicy;
+		this.snapshots.putAll(CircuitSnapshotFile.read(snapshotPolicy.getFile(), System.currentTimeMillis(),
+				snapshotPolicy.getMaximumAge().toMillis()));
+		long interval = Math.max(1, snapshotPolicy.getInterval().toMillis());
+		this.snapshotTask = SharedScheduler.get().scheduleWithFixedDelay(() -> {
+			try {
+				saveSnapshot();
+			} catch (IOException | RuntimeException e) {
+				// the next snapshot is tried at the next interval
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
 
 	/**
 	 * Finds the corresponding {@link Command} instance for the circuit name.
@@ -29,15 +94,155 @@ public class DefaultCommandRegistry implements CommandRegistry {
 		return (Command<K, V>) commandMap.get(name);
 	}
 
+	/**
+	 * Finds the corresponding {@link AsyncCommand} instance for the circuit
+	 * name.
+	 */
+	@SuppressWarnings("unchecked")
+
+	public <K, V> AsyncCommand<K, V> discoverAsync(String name) {
+		return (AsyncCommand<K, V>) commandMap.get(name);
+	}
+
 	/**
 	 * Register a {@link Command} from a circuit by creating a
 	 * {@link CommandProxy} instance and wrapping the Command and the
-	 * corresponding {@link CircuitBreaker}F
+	 * corresponding {@link CircuitBreaker}. The proxy of a circuit registered
+	 * before with the same name is closed, its CircuitBreaker keeps running if
+	 * the new circuit uses it as well. The snapshot of the circuit, if any, is
+	 * restored before the proxy is handed out.
+	 */
+
+	public <K, V> CircuitHandle<K, V> register(String name, Circuit<K, V> circuit) {
+		if (closed)
+			throw new IllegalStateException("Registry has been closed");
+		final CommandProxy<K, V> proxy = new CommandProxy<K, V>(name, circuit);
+		CircuitSnapshot snapshot = snapshots.remove(name);
+		if (snapshot != null && proxy.getCircuitBreaker() instanceof AbstractCircuitBreaker)
+			((AbstractCircuitBreaker<K, V>) proxy.getCircuitBreaker()).restore(snapshot);
+		proxy.onClose(() -> commandMap.remove(name, proxy), this::isInUse);
+		CommandProxy<?, ?> replaced = commandMap.put(name, proxy);
+		if (replaced != null)
+			replaced.close();
+		if (closed)
+			proxy.close();
+		return proxy;
+	}
+
+	/**
+	 * Checks whether a registered circuit uses the CircuitBreaker, so that
+	 * a breaker shared by circuits, or by the circuit registered again under
+	 * the same name, is not shut down while it is still in use.
+	 */
+	private boolean isInUse(CircuitBreaker<?, ?> breaker) {
+		for (CommandProxy<?, ?> proxy : commandMap.values()) {
+			if (proxy.getCircuitBreaker() == breaker)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the {@link CommandProxy} registered for the circuit name.
+	 */
+	@SuppressWarnings("unchecked")
+
+	public <K, V> CircuitHandle<K, V> getCircuit(String name) {
+		return (CircuitHandle<K, V>) commandMap.get(name);
+	}
+
+	/**
+	 * Copies the registered {@link CommandProxy} instances, the copy does not
+	 * change when circuits are registered or unregistered later.
+	 */
+
+	public Collection<CircuitHandle<?, ?>> getCircuits() {
+		return Collections.unmodifiableList(new ArrayList<CircuitHandle<?, ?>>(commandMap.values()));
+	}
+
+	/**
+	 * Removes the {@link CommandProxy} of the circuit name and closes it.
+	 */
+
+	public boolean unregister(String name) {
+		CommandProxy<?, ?> proxy = commandMap.remove(name);
+		if (proxy == null)
+			return false;
+		proxy.close();
+		return true;
+	}
+
+	/**
+	 * Takes a snapshot of the metrics of the {@link CommandProxy} registered
+	 * for the circuit name.
+	 */
+
+	public CircuitMetrics getMetrics(String name) {
+		CommandProxy<?, ?> proxy = commandMap.get(name);
+		return proxy == null ? null : proxy.getMetrics();
+	}
+
+	/**
+	 * Subscribes the listener to the shared {@link CircuitEventBus}.
+	 */
+
+	public void subscribe(String name, CircuitEventListener listener) {
+		CircuitEventBus.get().subscribe(name, listener);
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unsubscribes the listener from the shared {@link CircuitEventBus}.
+	 */
+
+	public void unsubscribe(CircuitEventListener listener) {
+		CircuitEventBus.get().unsubscribe(listener);
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Saves the state of the circuits whose CircuitBreaker extends
+	 * {@link AbstractCircuitBreaker} to the file of the {@link SnapshotPolicy}.
+	 * It is done periodically and when the registry is closed.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be written, the previous file is left
+	 *             as it was
+	 * @throws IllegalStateException
+	 *             If the registry has no SnapshotPolicy
+	 */
+	public synchronized void saveSnapshot() throws IOException {
+		if (snapshotPolicy == null)
+			throw new IllegalStateException("Registry has no snapshot policy");
+		Map<String, CircuitSnapshot> all = new HashMap<String, CircuitSnapshot>(snapshots);
+		for (Map.Entry<String, CommandProxy<?, ?>> entry : commandMap.entrySet()) {
+			CircuitBreaker<?, ?> breaker = entry.getValue().getCircuitBreaker();
+			if (breaker instanceof AbstractCircuitBreaker)
+				all.put(entry.getKey(), ((AbstractCircuitBreaker<?, ?>) breaker).snapshot());
+		}
+		CircuitSnapshotFile.write(snapshotPolicy.getFile(), all);
+	}
+
+	/**
+	 * Closes the {@link CommandProxy} of every circuit, after saving their
+	 * state if the registry has a {@link SnapshotPolicy}. The shared
+	 * {@link CircuitEventBus} and {@link SharedScheduler} keep running for the
+	 * other registries, their threads are daemon threads.
 	 */
 
-	public <K, V> void register(String name, Circuit<K, V> circuit) {
-		CommandProxy<K, V> proxy = new CommandProxy<K, V>(circuit.getCommand(), circuit.getCircuitBreaker(),
-				circuit.getExecutorServiceFactory());
-		commandMap.put(name, proxy);
+	public void close() {
+		closed = true;
+		if (snapshotTask != null) {
+			snapshotTask.cancel(false);
+			try {
+				saveSnapshot();
+			} catch (IOException e) {
+				// the last periodic snapshot stays in place
+			}
+		}
+		for (String name : commandMap.keySet())
+			unregister(name);
+		for (CircuitEventListener listener : listeners)
+			unsubscribe(listener);
 	}
 }
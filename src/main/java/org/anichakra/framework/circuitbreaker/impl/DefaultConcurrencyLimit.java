@@ -0,0 +1,62 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimit;
+
+/**
+ * Default ConcurrencyLimit with the following properties:
+ * <p>
+ * <ul>
+ * <li>initialLimit=20</li>
+ * <li>minimumLimit=1</li>
+ * <li>maximumLimit=200</li>
+ * <li>tolerance=1.5</li>
+ * <li>backoffRatio=0.9</li>
+ * </ul>
+ *
+ * @see AdaptiveConcurrencyLimiter
+ * @author 576219
+ *
+ */
+public class DefaultConcurrencyLimit implements ConcurrencyLimit {
+
+	/**
+	 * 
+	 */
+
+	public int getInitialLimit() {
+		return 20;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMinimumLimit() {
+		return 1;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMaximumLimit() {
+		return 200;
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getTolerance() {
+		return 1.5;
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getBackoffRatio() {
+		return 0.9;
+	}
+
+}
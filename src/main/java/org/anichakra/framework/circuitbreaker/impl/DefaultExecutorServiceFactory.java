@@ -1,23 +1,85 @@
 package org.anichakra.framework.circuitbreaker.impl;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.anichakra.framework.circuitbreaker.api.BulkheadType;
 import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
 
 /**
- * Default implementation of ExecutorServiceFactory
+ * Default implementation of ExecutorServiceFactory. By default the calls are
+ * not bounded and run in a cached thread pool. With a
+ * {@link BulkheadType} the concurrency level bounds the concurrent calls of
+ * the circuit, and the queue of a {@link BulkheadType#THREAD_POOL} bulkhead
+ * holds as many calls as the concurrency level. The calls rejected by a full
+ * bulkhead are counted as faults of the circuit only when asked to.
  * @author 576219
  *
  */
 public class DefaultExecutorServiceFactory implements ExecutorServiceFactory{
 
-	@SuppressWarnings("unused")
-	private int concurrencyLevel;
+	private final int concurrencyLevel;
+	private final BulkheadType bulkheadType;
+	private final boolean rejectionCountedAsFault;
+
 	public DefaultExecutorServiceFactory(int concurrencyLevel) {
+		this(concurrencyLevel, BulkheadType.NONE);
+	}
+
+	public DefaultExecutorServiceFactory(int concurrencyLevel, BulkheadType bulkheadType) {
+		this(concurrencyLevel, bulkheadType, false);
+	}
+
+	/**
+	 * 
+	 * @param rejectionCountedAsFault
+	 *            TRUE if a call rejected by the full bulkhead is a fault of
+	 *            the circuit
+	 */
+	public DefaultExecutorServiceFactory(int concurrencyLevel, BulkheadType bulkheadType,
+			boolean rejectionCountedAsFault) {
+		if (bulkheadType != BulkheadType.NONE && concurrencyLevel <= 0)
+			throw new IllegalArgumentException("Concurrency level of a bulkhead must be positive");
 		this.concurrencyLevel = concurrencyLevel;
+		this.bulkheadType = bulkheadType;
+		this.rejectionCountedAsFault = rejectionCountedAsFault;
 	}
+
+	/**
+	 * A bounded thread pool for a {@link BulkheadType#THREAD_POOL} bulkhead
+	 * which rejects the calls when its threads and its queue are full,
+	 * otherwise a cached thread pool.
+	 */
 	public ExecutorService getExecutorService() {
-		return Executors.newCachedThreadPool();
+		if (bulkheadType != BulkheadType.THREAD_POOL)
+			return Executors.newCachedThreadPool();
+		int queueCapacity = getQueueCapacity();
+		BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<Runnable>(queueCapacity)
+				: new SynchronousQueue<Runnable>();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrencyLevel, concurrencyLevel, 60L,
+				TimeUnit.SECONDS, queue, new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public BulkheadType getBulkheadType() {
+		return bulkheadType;
+	}
+
+	public int getConcurrencyLevel() {
+		return concurrencyLevel;
+	}
+
+	public int getQueueCapacity() {
+		return concurrencyLevel;
+	}
+
+	public boolean isRejectionCountedAsFault() {
+		return rejectionCountedAsFault;
 	}
 }
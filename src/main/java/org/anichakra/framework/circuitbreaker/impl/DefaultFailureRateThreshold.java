@@ -0,0 +1,54 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import org.anichakra.framework.circuitbreaker.api.FailureRateThreshold;
+import org.anichakra.framework.circuitbreaker.api.SlidingWindowType;
+
+/**
+ * Default FailureRateThreshold with the following properties:
+ * <p>
+ * <ul>
+ * <li>failureRateThreshold=50</li>
+ * <li>minimumNumberOfCalls=20</li>
+ * <li>slidingWindowType=COUNT_BASED</li>
+ * <li>slidingWindowSize=100</li>
+ * </ul>
+ * 
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public class DefaultFailureRateThreshold extends DefaultFaultThreshold implements FailureRateThreshold {
+
+	/**
+	 * 
+	 */
+
+	public float getFailureRateThreshold() {
+		return 50;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMinimumNumberOfCalls() {
+		return 20;
+	}
+
+	/**
+	 * 
+	 */
+
+	public SlidingWindowType getSlidingWindowType() {
+		return SlidingWindowType.COUNT_BASED;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getSlidingWindowSize() {
+		return 100;
+	}
+
+}
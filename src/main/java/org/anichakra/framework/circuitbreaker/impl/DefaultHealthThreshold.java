@@ -10,6 +10,7 @@ import org.anichakra.framework.circuitbreaker.api.HealthThreshold;
  * <li>timeSpanForCheck=20</li>
  * <li>delayBetweenHealthChecks=60</li>
  * <li>timeSpanForCheck=12</li>
+ * <li>permittedCallsInHalfOpenState=0</li>
  * </ul>
  * 
  * @see AbstractCircuitBreaker
@@ -50,4 +51,12 @@ public class DefaultHealthThreshold implements HealthThreshold {
 		return 12;
 	}
 
+	/**
+	 * 
+	 */
+	
+	public int getPermittedCallsInHalfOpenState() {
+		return 0;
+	}
+
 }
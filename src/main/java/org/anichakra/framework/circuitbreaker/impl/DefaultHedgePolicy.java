@@ -0,0 +1,64 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.HedgePolicy;
+
+/**
+ * Default HedgePolicy with the following properties:
+ * <p>
+ * <ul>
+ * <li>percentile=95</li>
+ * <li>minimumDelay=10ms</li>
+ * <li>minimumNumberOfCalls=100</li>
+ * <li>windowSize=60s</li>
+ * <li>hedgeBudgetRatio=0.1</li>
+ * </ul>
+ *
+ * @see Hedger
+ * @author 576219
+ *
+ */
+public class DefaultHedgePolicy implements HedgePolicy {
+
+	/**
+	 * 
+	 */
+
+	public double getPercentile() {
+		return 95;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMinimumDelay() {
+		return Duration.ofMillis(10);
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMinimumNumberOfCalls() {
+		return 100;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getWindowSize() {
+		return 60;
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getHedgeBudgetRatio() {
+		return 0.1;
+	}
+
+}
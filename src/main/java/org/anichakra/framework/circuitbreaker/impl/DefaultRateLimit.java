@@ -0,0 +1,46 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.RateLimit;
+
+/**
+ * Default RateLimit with the following properties:
+ * <p>
+ * <ul>
+ * <li>permitsPerSecond=100</li>
+ * <li>burstSize=100</li>
+ * <li>maximumWait=0</li>
+ * </ul>
+ *
+ * @see TokenBucketRateLimiter
+ * @author 576219
+ *
+ */
+public class DefaultRateLimit implements RateLimit {
+
+	/**
+	 * 
+	 */
+
+	public double getPermitsPerSecond() {
+		return 100;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getBurstSize() {
+		return 100;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMaximumWait() {
+		return Duration.ZERO;
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.RetryPolicy;
+
+/**
+ * Default RetryPolicy with the following properties:
+ * <p>
+ * <ul>
+ * <li>maxAttempts=3</li>
+ * <li>initialBackoff=100ms</li>
+ * <li>backoffMultiplier=2</li>
+ * <li>maximumBackoff=2s</li>
+ * <li>jitter=0.5</li>
+ * <li>retryBudgetRatio=0.2</li>
+ * <li>minimumRetriesPerSecond=1</li>
+ * </ul>
+ *
+ * @see RetryBudget
+ * @author 576219
+ *
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+
+	/**
+	 * 
+	 */
+
+	public int getMaxAttempts() {
+		return 3;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getInitialBackoff() {
+		return Duration.ofMillis(100);
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getBackoffMultiplier() {
+		return 2;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMaximumBackoff() {
+		return Duration.ofSeconds(2);
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getJitter() {
+		return 0.5;
+	}
+
+	/**
+	 * 
+	 */
+
+	public double getRetryBudgetRatio() {
+		return 0.2;
+	}
+
+	/**
+	 * 
+	 */
+
+	public int getMinimumRetriesPerSecond() {
+		return 1;
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.io.File;
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.SnapshotPolicy;
+
+/**
+ * Default SnapshotPolicy with the following properties:
+ * <p>
+ * <ul>
+ * <li>interval=10s</li>
+ * <li>maximumAge=5m</li>
+ * </ul>
+ *
+ * @see DefaultCommandRegistry
+ * @author 576219
+ *
+ */
+public class DefaultSnapshotPolicy implements SnapshotPolicy {
+
+	private final File file;
+
+	/**
+	 * 
+	 * @param file
+	 *            The file of the snapshots
+	 */
+	public DefaultSnapshotPolicy(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * 
+	 */
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getInterval() {
+		return Duration.ofSeconds(10);
+	}
+
+	/**
+	 * 
+	 */
+
+	public Duration getMaximumAge() {
+		return Duration.ofMinutes(5);
+	}
+
+}
@@ -0,0 +1,335 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed wheel timer that fires the timeouts of the calls of all the
+ * circuits from a single thread. The wheel is an array of buckets, each
+ * covering one tick. A timeout is put in the bucket of its deadline together
+ * with the number of rounds of the wheel left before it is due, so scheduling
+ * and cancelling a timeout are constant time no matter how many timeouts are
+ * outstanding. The worker thread expires the timeouts of one bucket per tick.
+ * <p>
+ * The tasks of the timeouts are run by the worker thread, so they must be
+ * short, like cancelling a call and recording a fault.
+ *
+ * @see SharedScheduler#timer()
+ * @author 576219
+ *
+ */
+public class HashedWheelTimer {
+
+	/**
+	 * A task scheduled with the timer
+	 */
+	public interface Timeout {
+
+		/**
+		 * Cancels the task if it has not been run yet.
+		 *
+		 * @return TRUE if the task was cancelled
+		 */
+		boolean cancel();
+
+		/**
+		 *
+		 * @return TRUE if the task has been run
+		 */
+		boolean isExpired();
+
+		/**
+		 *
+		 * @return TRUE if the task has been cancelled
+		 */
+		boolean isCancelled();
+	}
+
+	private static final int INIT = 0;
+
+	private static final int CANCELLED = 1;
+
+	private static final int EXPIRED = 2;
+
+	private static final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater.newUpdater(Entry.class,
+			"state");
+
+	/**
+	 * The maximum number of new timeouts moved to the wheel in one tick, so
+	 * that a burst of new timeouts does not delay the expiry of the due ones
+	 */
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private final long tickNanos;
+
+	private final Bucket[] wheel;
+
+	private final int mask;
+
+	private final Queue<Entry> newTimeouts = new ConcurrentLinkedQueue<Entry>();
+
+	private final Queue<Entry> cancelledTimeouts = new ConcurrentLinkedQueue<Entry>();
+
+	private final AtomicLong pendingTimeouts = new AtomicLong();
+
+	private final Thread worker;
+
+	private final long startTime;
+
+	private volatile boolean stopped;
+
+	private long tick;
+
+	/**
+	 * Creates and starts a timer.
+	 *
+	 * @param name
+	 *            The name of the worker thread
+	 * @param tickDuration
+	 *            The duration of one tick, that is the precision of the timer
+	 * @param unit
+	 *            The unit of the tick duration
+	 * @param ticksPerWheel
+	 *            The number of buckets of the wheel, rounded up to a power of
+	 *            two
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (tickDuration <= 0 || ticksPerWheel <= 0)
+			throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+		this.tickNanos = unit.toNanos(tickDuration);
+		int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++)
+			wheel[i] = new Bucket();
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+		this.worker = new Thread(this::work, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Schedules a task to be run once after the delay.
+	 *
+	 * @param task
+	 *            The task to run
+	 * @param delay
+	 *            The delay after which the task is run
+	 * @param unit
+	 *            The unit of the delay
+	 * @return The handle to cancel the task
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (stopped)
+			throw new IllegalStateException("Timer has been stopped");
+		long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+		Entry entry = new Entry(task, deadline);
+		pendingTimeouts.incrementAndGet();
+		newTimeouts.add(entry);
+		return entry;
+	}
+
+	/**
+	 *
+	 * @return The number of timeouts which are neither expired nor removed
+	 *         after cancellation yet
+	 */
+	public long getPendingTimeouts() {
+		return pendingTimeouts.get();
+	}
+
+	/**
+	 *
+	 * @return The duration of one tick in nanoseconds, that is how late a
+	 *         timeout may run while the worker thread keeps up
+	 */
+	public long getTickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * Stops the worker thread. The outstanding timeouts are never run.
+	 */
+	public void stop() {
+		stopped = true;
+		worker.interrupt();
+	}
+
+	/**
+	 *
+	 * @return TRUE if the timer has been stopped
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	private void work() {
+		while (!stopped) {
+			long deadline = waitForNextTick();
+			if (deadline < 0)
+				break;
+			removeCancelledTimeouts();
+			transferNewTimeouts();
+			wheel[(int) (tick & mask)].expire(deadline);
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleeps until the end of the current tick.
+	 *
+	 * @return The time of the end of the tick relative to the start time, or
+	 *         -1 if the timer is stopped
+	 */
+	private long waitForNextTick() {
+		long deadline = tickNanos * (tick + 1);
+		for (;;) {
+			long current = System.nanoTime() - startTime;
+			long sleepNanos = deadline - current;
+			if (sleepNanos <= 0)
+				return current;
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleepNanos);
+			} catch (InterruptedException e) {
+				if (stopped)
+					return -1;
+			}
+		}
+	}
+
+	private void transferNewTimeouts() {
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			Entry entry = newTimeouts.poll();
+			if (entry == null)
+				return;
+			if (entry.state != INIT)
+				continue;
+			long ticks = entry.deadline / tickNanos;
+			entry.remainingRounds = (ticks - tick) / wheel.length;
+			// a timeout already due goes to the current bucket
+			long due = Math.max(ticks, tick);
+			wheel[(int) (due & mask)].add(entry);
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Entry entry;
+		while ((entry = cancelledTimeouts.poll()) != null) {
+			Bucket bucket = entry.bucket;
+			if (bucket != null)
+				bucket.remove(entry);
+			else
+				pendingTimeouts.decrementAndGet();
+		}
+	}
+
+	/**
+	 * A timeout, linked in the bucket of its deadline
+	 */
+	private final class Entry implements Timeout {
+
+		private final Runnable task;
+
+		private final long deadline;
+
+		volatile int state = INIT;
+
+		private long remainingRounds;
+
+		private Entry next;
+
+		private Entry prev;
+
+		private Bucket bucket;
+
+		private Entry(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public boolean cancel() {
+			if (!STATE.compareAndSet(this, INIT, CANCELLED))
+				return false;
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		private void run() {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				// a failing task must not stop the timer
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list of the timeouts of one tick, only accessed by the
+	 * worker thread
+	 */
+	private final class Bucket {
+
+		private Entry head;
+
+		private Entry tail;
+
+		private void add(Entry entry) {
+			entry.bucket = this;
+			if (head == null) {
+				head = tail = entry;
+			} else {
+				tail.next = entry;
+				entry.prev = tail;
+				tail = entry;
+			}
+		}
+
+		private void expire(long deadline) {
+			Entry entry = head;
+			while (entry != null) {
+				Entry next = entry.next;
+				if (entry.isCancelled()) {
+					// removed with the other cancelled timeouts in the next tick
+				} else if (entry.remainingRounds <= 0) {
+					// a timeout cancelled concurrently is left to the cancelled ones
+					if (entry.deadline <= deadline && STATE.compareAndSet(entry, INIT, EXPIRED)) {
+						remove(entry);
+						entry.run();
+					}
+				} else {
+					entry.remainingRounds--;
+				}
+				entry = next;
+			}
+		}
+
+		private void remove(Entry entry) {
+			if (entry.bucket != this)
+				return;
+			Entry next = entry.next;
+			if (entry.prev != null)
+				entry.prev.next = next;
+			if (next != null)
+				next.prev = entry.prev;
+			if (entry == head)
+				head = next;
+			if (entry == tail)
+				tail = entry.prev;
+			entry.prev = null;
+			entry.next = null;
+			entry.bucket = null;
+			pendingTimeouts.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link CircuitStateSlot} of a circuit breaker that keeps its state on
+ * its own, an {@link AtomicLong} for the word and a {@link SlidingTimeWindow}
+ * for the faults.
+ * 
+ * @author 576219
+ *
+ */
+final class HeapCircuitStateSlot implements CircuitStateSlot {
+
+	private final AtomicLong word = new AtomicLong();
+
+	private final SlidingTimeWindow faultWindow;
+
+	private final long createdMillis;
+
+	HeapCircuitStateSlot(long faultWindowMillis, long createdMillis) {
+		this.faultWindow = new SlidingTimeWindow(faultWindowMillis);
+		this.createdMillis = createdMillis;
+	}
+
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	public long getWord() {
+		return word.get();
+	}
+
+	public boolean compareAndSetWord(long expected, long next) {
+		return word.compareAndSet(expected, next);
+	}
+
+	public void recordFault(long nowMillis) {
+		faultWindow.record(nowMillis);
+	}
+
+	public int countFaults(long nowMillis) {
+		return faultWindow.count(nowMillis);
+	}
+
+	public void addFaults(long atMillis, int count) {
+		faultWindow.add(atMillis, count);
+	}
+
+	public long[] getFaults(long nowMillis) {
+		return faultWindow.getBuckets(nowMillis);
+	}
+
+	public void clearFaults() {
+		faultWindow.clear();
+	}
+
+	public boolean isShared() {
+		return false;
+	}
+}
@@ -0,0 +1,115 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.anichakra.framework.circuitbreaker.api.HedgePolicy;
+
+/**
+ * The hedges a circuit may make, as configured by a {@link HedgePolicy}. The
+ * latencies of the successful calls are kept in a {@link LatencyHistogram},
+ * from which the delay before a hedge is recalculated at most every
+ * {@value #DELAY_UPDATE_MILLIS} milliseconds. The calls and the hedges of the
+ * last {@value #BUDGET_WINDOW_SECONDS} seconds are counted in two
+ * {@link SlidingTimeWindow}s, and a hedge is allowed while the hedges are
+ * fewer than the ratio of the calls. As with the {@link RetryBudget} counting
+ * the hedge after checking the budget is not atomic.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class Hedger {
+
+	/**
+	 * The span of the windows of the calls and the hedges
+	 */
+	public static final int BUDGET_WINDOW_SECONDS = 10;
+
+	/**
+	 * The interval between two calculations of the delay
+	 */
+	public static final long DELAY_UPDATE_MILLIS = 100;
+
+	private final HedgePolicy hedgePolicy;
+
+	private final LatencyHistogram latencies;
+
+	private final SlidingTimeWindow calls;
+
+	private final SlidingTimeWindow hedges;
+
+	private final AtomicLong nextDelayUpdate = new AtomicLong(System.nanoTime());
+
+	private volatile long delayNanos = -1;
+
+	/**
+	 *
+	 * @param hedgePolicy
+	 */
+	public Hedger(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		this.latencies = new LatencyHistogram(hedgePolicy.getWindowSize(), TimeUnit.SECONDS);
+		long spanMillis = TimeUnit.SECONDS.toMillis(BUDGET_WINDOW_SECONDS);
+		this.calls = new SlidingTimeWindow(spanMillis, BUDGET_WINDOW_SECONDS);
+		this.hedges = new SlidingTimeWindow(spanMillis, BUDGET_WINDOW_SECONDS);
+	}
+
+	/**
+	 * Counts a call which may be hedged.
+	 *
+	 * @param nowNanos
+	 */
+	public void onCall(long nowNanos) {
+		calls.record(TimeUnit.NANOSECONDS.toMillis(nowNanos));
+	}
+
+	/**
+	 * Records the latency of a successful call.
+	 *
+	 * @param latencyNanos
+	 * @param nowNanos
+	 */
+	public void onSuccess(long latencyNanos, long nowNanos) {
+		latencies.record(latencyNanos, nowNanos);
+	}
+
+	/**
+	 * The delay is recalculated by only one of the calling threads at a time.
+	 *
+	 * @param nowNanos
+	 * @return The delay in nanoseconds after which a call is hedged, or -1 if
+	 *         the calls are not hedged yet
+	 */
+	public long delayNanos(long nowNanos) {
+		long next = nextDelayUpdate.get();
+		if (nowNanos - next >= 0 && nextDelayUpdate.compareAndSet(next,
+				nowNanos + TimeUnit.MILLISECONDS.toNanos(DELAY_UPDATE_MILLIS))) {
+			updateDelay(nowNanos);
+		}
+		return delayNanos;
+	}
+
+	private void updateDelay(long nowNanos) {
+		if (latencies.getCount(nowNanos) < hedgePolicy.getMinimumNumberOfCalls()) {
+			delayNanos = -1;
+			return;
+		}
+		long delay = latencies.getValueAtPercentile(hedgePolicy.getPercentile(), nowNanos);
+		delayNanos = Math.max(delay, Math.max(1, hedgePolicy.getMinimumDelay().toNanos()));
+	}
+
+	/**
+	 * Takes a hedge from the budget if there is one left.
+	 *
+	 * @param nowNanos
+	 * @return TRUE if the call can be hedged
+	 */
+	public boolean tryHedge(long nowNanos) {
+		long nowMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos);
+		if (hedges.count(nowMillis) >= hedgePolicy.getHedgeBudgetRatio() * calls.count(nowMillis))
+			return false;
+		hedges.record(nowMillis);
+		return true;
+	}
+}
@@ -0,0 +1,223 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of the latencies of the calls over a rolling window.
+ * The latencies are counted in logarithmic buckets, each power of two being
+ * split in eight linear sub-buckets, so a percentile is accurate within 12.5%
+ * whatever the magnitude of the latencies, from nanoseconds to hours.
+ * Recording a latency is a single atomic increment.
+ * <p>
+ * The window is split in slots. The slot of the current time is reset when it
+ * is reused, so the latencies older than the window are forgotten one slot at
+ * a time. A latency recorded while its slot is being reset may be lost, which
+ * is acceptable for statistics.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The highest power of two of a latency in nanoseconds, that is about 9
+	 * hours. Longer latencies are counted in the last bucket.
+	 */
+	private static final int MAX_EXPONENT = 44;
+
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	/**
+	 * The number of buckets of a slot
+	 */
+	static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	/**
+	 * The default number of slots of the window
+	 */
+	public static final int DEFAULT_SLOTS = 10;
+
+	private final long slotNanos;
+
+	private final int slots;
+
+	private final AtomicLongArray counts;
+
+	private final AtomicLongArray epochs;
+
+	/**
+	 *
+	 * @param window
+	 *            The span of the rolling window
+	 * @param unit
+	 *            The unit of the span
+	 */
+	public LatencyHistogram(long window, TimeUnit unit) {
+		this(window, unit, DEFAULT_SLOTS);
+	}
+
+	/**
+	 *
+	 * @param window
+	 *            The span of the rolling window
+	 * @param unit
+	 *            The unit of the span
+	 * @param slots
+	 *            The number of slots the window is split in
+	 */
+	public LatencyHistogram(long window, TimeUnit unit, int slots) {
+		if (window <= 0 || slots <= 0)
+			throw new IllegalArgumentException("Window and slots must be positive");
+		this.slots = slots;
+		this.slotNanos = Math.max(1, unit.toNanos(window) / slots);
+		this.counts = new AtomicLongArray(slots * BUCKETS);
+		this.epochs = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i++)
+			epochs.set(i, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Records the latency of a call.
+	 *
+	 * @param latencyNanos
+	 *            The latency in nanoseconds
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 */
+	public void record(long latencyNanos, long nowNanos) {
+		long epoch = Math.floorDiv(nowNanos, slotNanos);
+		int slot = (int) Math.floorMod(epoch, (long) slots);
+		long current = epochs.get(slot);
+		if (current != epoch) {
+			if (current > epoch)
+				return;
+			if (epochs.compareAndSet(slot, current, epoch)) {
+				int offset = slot * BUCKETS;
+				for (int i = 0; i < BUCKETS; i++)
+					counts.set(offset + i, 0);
+			}
+		}
+		counts.incrementAndGet(slot * BUCKETS + indexOf(latencyNanos));
+	}
+
+	/**
+	 *
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return The number of latencies recorded in the window
+	 */
+	public long getCount(long nowNanos) {
+		long epoch = Math.floorDiv(nowNanos, slotNanos);
+		long count = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (isLive(slot, epoch)) {
+				int offset = slot * BUCKETS;
+				for (int i = 0; i < BUCKETS; i++)
+					count += counts.get(offset + i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 *
+	 * @param percentile
+	 *            A percentile between 0 and 100
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return The latency in nanoseconds below which the percentage of the
+	 *         latencies in the window falls, rounded up to the upper bound of
+	 *         its bucket, or 0 if no latency has been recorded in the window
+	 */
+	public long getValueAtPercentile(double percentile, long nowNanos) {
+		return valueAtPercentile(getCounts(nowNanos), percentile);
+	}
+
+	/**
+	 *
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return The number of latencies recorded in the window per bucket
+	 */
+	long[] getCounts(long nowNanos) {
+		long epoch = Math.floorDiv(nowNanos, slotNanos);
+		long[] merged = new long[BUCKETS];
+		for (int slot = 0; slot < slots; slot++) {
+			if (isLive(slot, epoch)) {
+				int offset = slot * BUCKETS;
+				for (int i = 0; i < BUCKETS; i++)
+					merged[i] += counts.get(offset + i);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 *
+	 * @param counts
+	 *            The number of latencies per bucket as returned by
+	 *            {@link #getCounts(long)}
+	 * @param percentile
+	 *            A percentile between 0 and 100
+	 * @return The upper bound of the bucket of the percentile, or 0 if there
+	 *         is no latency
+	 */
+	static long valueAtPercentile(long[] counts, double percentile) {
+		long total = 0;
+		for (long count : counts)
+			total += count;
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			count += counts[i];
+			if (count >= rank)
+				return upperBoundOf(i);
+		}
+		return MAX_VALUE;
+	}
+
+	/**
+	 * Forgets all the latencies.
+	 */
+	public void clear() {
+		for (int slot = 0; slot < slots; slot++)
+			epochs.set(slot, Long.MIN_VALUE);
+	}
+
+	private boolean isLive(int slot, long epoch) {
+		long slotEpoch = epochs.get(slot);
+		return slotEpoch != Long.MIN_VALUE && slotEpoch <= epoch && epoch - slotEpoch < slots;
+	}
+
+	/**
+	 *
+	 * @return The index of the bucket of a latency
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) Math.max(0, value);
+		long v = Math.min(value, MAX_VALUE);
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((v >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 *
+	 * @return The highest latency counted in a bucket
+	 */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long lower = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,337 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CircuitStateStore} backed by a memory-mapped file, through which
+ * the circuit breakers of the processes of a host that map the same file share
+ * the state of their circuits without any network dependency. A circuit
+ * tripped by one process is open in all of them, the faults of all the
+ * processes are counted together and the circuit recovers for all of them at
+ * once.
+ * <p>
+ * The file is a header followed by a fixed number of slots, and every slot is
+ * a fixed number of 64 bit words, all read and written atomically through
+ * {@link MappedWords}:
+ * <ul>
+ * <li>the status of the slot, free, being claimed or in use. A claim is
+ * stamped with a random number so that it can be told apart from the next
+ * one.</li>
+ * <li>the time from which the times in the word are counted</li>
+ * <li>the width of the buckets of the fault window</li>
+ * <li>the word of the {@link AbstractCircuitBreaker}</li>
+ * <li>the name of the circuit, at most {@value #MAX_NAME_BYTES} bytes in
+ * UTF-8</li>
+ * <li>the buckets of the fault window, a {@link SlidingTimeWindow} over
+ * these words</li>
+ * </ul>
+ * A circuit is placed in the slot its name hashes to, or the next free one,
+ * and a slot is claimed by a compare-and-set of its status, so two processes
+ * creating the slot of the same circuit at the same time end up with the same
+ * slot. A claim is a few writes, a slot whose claim has not changed for
+ * {@value #CLAIM_TIMEOUT_MILLIS} milliseconds was claimed by a process which
+ * is gone, and it is claimed again by a compare-and-set of that claim. The
+ * creator of a slot sets the span of its fault window, which is
+ * {@value #FAULT_BUCKETS} buckets wide, and all the processes should map the
+ * file with the same capacity.
+ * <p>
+ * Closing the store closes the file. The memory stays mapped for the circuit
+ * breakers using its slots until they are garbage collected, and the state
+ * stays in the file for the next processes.
+ *
+ * @see CircuitStateSlot
+ * @author 576219
+ *
+ */
+public class MappedCircuitStateStore implements CircuitStateStore, AutoCloseable {
+
+	/**
+	 * The default number of slots of a new file
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The longest name of a circuit in bytes
+	 */
+	public static final int MAX_NAME_BYTES = 64;
+
+	/**
+	 * The number of buckets of the fault window of a slot
+	 */
+	public static final int FAULT_BUCKETS = SlidingTimeWindow.DEFAULT_BUCKETS;
+
+	/**
+	 * "CBSTATE1" in ASCII, the first word of a file of this store
+	 */
+	private static final long MAGIC = 0x4342535441544531L;
+
+	private static final int HEADER_WORDS = 8;
+
+	private static final int STATUS = 0;
+
+	private static final int CREATED = 1;
+
+	private static final int BUCKET_MILLIS = 2;
+
+	private static final int WORD = 3;
+
+	private static final int NAME = 4;
+
+	private static final int NAME_WORDS = MAX_NAME_BYTES / Long.BYTES;
+
+	private static final int BUCKETS = NAME + NAME_WORDS;
+
+	private static final int SLOT_WORDS = BUCKETS + FAULT_BUCKETS;
+
+	private static final long FREE = 0;
+
+	/**
+	 * The low bits of a claim, the others are random
+	 */
+	private static final long CLAIMED = 1;
+
+	private static final long IN_USE = 2;
+
+	/**
+	 * How long an unchanged claim of a slot by another process is waited for
+	 * before it is considered abandoned
+	 */
+	private static final long CLAIM_TIMEOUT_MILLIS = 1000;
+
+	private final FileChannel channel;
+
+	private final MappedWords words;
+
+	private final int capacity;
+
+	private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+	/**
+	 * Maps the file with {@link #DEFAULT_CAPACITY} slots.
+	 *
+	 * @param file
+	 *            The file shared by the processes, created if it does not
+	 *            exist
+	 * @throws IOException
+	 */
+	public MappedCircuitStateStore(File file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            The file shared by the processes, created if it does not
+	 *            exist
+	 * @param capacity
+	 *            The number of slots of the file if it is created. An existing
+	 *            file which is larger is mapped as a whole.
+	 * @throws IOException
+	 */
+	public MappedCircuitStateStore(File file, int capacity) throws IOException {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long size = Math.max(channel.size(), (HEADER_WORDS + (long) capacity * SLOT_WORDS) * Long.BYTES);
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Capacity is too large: " + capacity);
+			this.words = new MappedWords(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+			this.capacity = (words.length() - HEADER_WORDS) / SLOT_WORDS;
+			if (!words.compareAndSet(0, 0, MAGIC) && words.get(0) != MAGIC)
+				throw new IllegalArgumentException("Not a circuit state file: " + file);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the name is longer than {@value #MAX_NAME_BYTES} bytes
+	 * @throws IllegalStateException
+	 *             If all the slots of the file are in use
+	 */
+	public CircuitStateSlot getSlot(String name, long faultWindowMillis, long nowMillis) {
+		Slot slot = slots.get(name);
+		if (slot != null)
+			return slot;
+		slot = new Slot(find(name, faultWindowMillis, nowMillis));
+		Slot existing = slots.putIfAbsent(name, slot);
+		return existing != null ? existing : slot;
+	}
+
+	/**
+	 *
+	 * @return The number of slots of the file
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Closes the file, the slots already handed out stay usable.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Probes the slots from the one the name hashes to and claims the first
+	 * free one, or abandoned one, unless a slot in use has the same name.
+	 *
+	 * @return The index of the first word of the slot
+	 */
+	private int find(String name, long faultWindowMillis, long nowMillis) {
+		long[] key = encode(name);
+		int start = (name.hashCode() & Integer.MAX_VALUE) % capacity;
+		for (int i = 0; i < capacity; i++) {
+			int base = HEADER_WORDS + ((start + i) % capacity) * SLOT_WORDS;
+			if (claim(base, FREE, key, faultWindowMillis, nowMillis))
+				return base;
+			long status = awaitInUse(base);
+			if (status != IN_USE) {
+				if (claim(base, status, key, faultWindowMillis, nowMillis))
+					return base;
+				// claimed again by another thread or process
+				status = awaitInUse(base);
+			}
+			if (status == IN_USE && matches(base, key))
+				return base;
+		}
+		throw new IllegalStateException("All the " + capacity + " slots of the circuit state file are in use");
+	}
+
+	/**
+	 * Claims the slot if its status is the expected one, and puts it in use
+	 * for the circuit. Whatever an abandoned claim has written is overwritten.
+	 *
+	 * @return FALSE if the status of the slot has changed, before or during
+	 *         the claim
+	 */
+	private boolean claim(int base, long expected, long[] key, long faultWindowMillis, long nowMillis) {
+		long claim = (ThreadLocalRandom.current().nextLong() << 2) | CLAIMED;
+		if (!words.compareAndSet(base + STATUS, expected, claim))
+			return false;
+		words.set(base + CREATED, nowMillis);
+		words.set(base + BUCKET_MILLIS, Math.max(1, faultWindowMillis / FAULT_BUCKETS));
+		words.set(base + WORD, 0L);
+		for (int j = 0; j < NAME_WORDS; j++)
+			words.set(base + NAME + j, key[j]);
+		for (int j = 0; j < FAULT_BUCKETS; j++)
+			words.set(base + BUCKETS + j, 0L);
+		// the claim may have been taken for abandoned in the meantime, the
+		// slot is then left to the new claim and probed again
+		return words.compareAndSet(base + STATUS, claim, IN_USE);
+	}
+
+	/**
+	 * Waits for a slot being claimed by another thread or process to be in
+	 * use. The wait starts over when the slot is claimed again.
+	 *
+	 * @return {@link #IN_USE}, or the claim of the slot if it has not changed
+	 *         for {@value #CLAIM_TIMEOUT_MILLIS} milliseconds
+	 */
+	private long awaitInUse(int base) {
+		long claim = words.get(base + STATUS);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLAIM_TIMEOUT_MILLIS);
+		while (claim != IN_USE) {
+			Thread.yield();
+			long status = words.get(base + STATUS);
+			if (status != claim) {
+				claim = status;
+				deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLAIM_TIMEOUT_MILLIS);
+			} else if (System.nanoTime() - deadline >= 0) {
+				return claim;
+			}
+		}
+		return IN_USE;
+	}
+
+	private boolean matches(int base, long[] key) {
+		for (int j = 0; j < NAME_WORDS; j++) {
+			if (words.get(base + NAME + j) != key[j])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The name in UTF-8 packed into words, the bytes after the name are zeros
+	 */
+	private static long[] encode(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length == 0 || bytes.length > MAX_NAME_BYTES)
+			throw new IllegalArgumentException(
+					"Name of a circuit must be 1 to " + MAX_NAME_BYTES + " bytes long in UTF-8: " + name);
+		long[] key = new long[NAME_WORDS];
+		for (int i = 0; i < bytes.length; i++)
+			key[i / Long.BYTES] |= (bytes[i] & 0xFFL) << (8 * (i % Long.BYTES));
+		return key;
+	}
+
+	/**
+	 * A slot in the file, its fault window is a {@link SlidingTimeWindow} over
+	 * the words of the slot.
+	 */
+	private final class Slot implements CircuitStateSlot {
+
+		private final int base;
+
+		private final long createdMillis;
+
+		private final SlidingTimeWindow faultWindow;
+
+		private Slot(int base) {
+			this.base = base;
+			this.createdMillis = words.get(base + CREATED);
+			this.faultWindow = new SlidingTimeWindow(words, base + BUCKETS, FAULT_BUCKETS,
+					words.get(base + BUCKET_MILLIS));
+		}
+
+		public long getCreatedMillis() {
+			return createdMillis;
+		}
+
+		public long getWord() {
+			return words.get(base + WORD);
+		}
+
+		public boolean compareAndSetWord(long expected, long word) {
+			return words.compareAndSet(base + WORD, expected, word);
+		}
+
+		public void recordFault(long nowMillis) {
+			faultWindow.record(nowMillis);
+		}
+
+		public int countFaults(long nowMillis) {
+			return faultWindow.count(nowMillis);
+		}
+
+		public void addFaults(long atMillis, int count) {
+			faultWindow.add(atMillis, count);
+		}
+
+		public long[] getFaults(long nowMillis) {
+			return faultWindow.getBuckets(nowMillis);
+		}
+
+		public void clearFaults() {
+			faultWindow.clear();
+		}
+
+		public boolean isShared() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The 64 bit words of a memory-mapped file, read and written atomically so
+ * that several processes mapping the same file can share them. This is the
+ * Java 8 version of the class. Java 8 has no public API for an atomic
+ * operation on mapped memory, and a lock would not be seen by the other
+ * processes, so it reaches the mapped memory through the native atomic
+ * operations of sun.misc.Unsafe. The class is looked up at run time and its
+ * methods are called through constant method handles, which the JIT compiles
+ * to the same instructions as direct calls, so nothing in the framework is
+ * compiled against the internal API. A multi-release jar built on Java 21 or
+ * later also contains a version of this class that uses a VarHandle instead,
+ * which the runtime picks up when it supports it. Both versions make the same
+ * native atomic operations in the native byte order, so processes running on
+ * either can share a file.
+ *
+ * @see MappedCircuitStateStore
+ * @author 576219
+ *
+ */
+final class MappedWords implements AtomicWords {
+
+	/**
+	 * (Object, long)long
+	 */
+	private static final MethodHandle GET_LONG_VOLATILE;
+
+	/**
+	 * (Object, long, long)void
+	 */
+	private static final MethodHandle PUT_LONG_VOLATILE;
+
+	/**
+	 * (Object, long, long, long)boolean
+	 */
+	private static final MethodHandle COMPARE_AND_SWAP_LONG;
+
+	/**
+	 * (Object, long)long
+	 */
+	private static final MethodHandle GET_LONG;
+
+	private static final long ADDRESS_OFFSET;
+
+	static {
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			GET_LONG_VOLATILE = lookup.findVirtual(type, "getLongVolatile",
+					MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+			PUT_LONG_VOLATILE = lookup.findVirtual(type, "putLongVolatile",
+					MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+			COMPARE_AND_SWAP_LONG = lookup.findVirtual(type, "compareAndSwapLong",
+					MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class))
+					.bindTo(unsafe);
+			GET_LONG = lookup.findVirtual(type, "getLong", MethodType.methodType(long.class, Object.class, long.class))
+					.bindTo(unsafe);
+			ADDRESS_OFFSET = (long) lookup
+					.findVirtual(type, "objectFieldOffset", MethodType.methodType(long.class, Field.class))
+					.invoke(unsafe, Buffer.class.getDeclaredField("address"));
+		} catch (Throwable e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Kept so that the memory is not unmapped while the words are in use
+	 */
+	private final MappedByteBuffer buffer;
+
+	private final long address;
+
+	private final int length;
+
+	/**
+	 *
+	 * @param buffer
+	 *            The mapped buffer, which starts on a page boundary
+	 */
+	MappedWords(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		try {
+			this.address = (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+		this.length = buffer.capacity() / Long.BYTES;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public long get(int index) {
+		try {
+			return (long) GET_LONG_VOLATILE.invokeExact((Object) null, offset(index));
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public void set(int index, long value) {
+		try {
+			PUT_LONG_VOLATILE.invokeExact((Object) null, offset(index), value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	public boolean compareAndSet(int index, long expected, long value) {
+		try {
+			return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, offset(index), expected, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * The index is always checked, a raw address out of the mapping would
+	 * crash the process
+	 */
+	private long offset(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Word " + index + " of " + length);
+		return address + (long) index * Long.BYTES;
+	}
+
+	/**
+	 * The operations declare no checked exception, anything else thrown is
+	 * an Error or a RuntimeException thrown as it is
+	 */
+	private static RuntimeException rethrow(Throwable e) {
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e instanceof RuntimeException)
+			return (RuntimeException) e;
+		return new IllegalStateException(e);
+	}
+}
@@ -0,0 +1,62 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import org.anichakra.framework.circuitbreaker.api.FailureRateThreshold;
+
+/**
+ * A lock-free aggregate of the outcomes of the calls made through a circuit,
+ * used to calculate the failure rate for a {@link FailureRateThreshold}.
+ * 
+ * @see CountBasedOutcomeWindow
+ * @see TimeBasedOutcomeWindow
+ * @author 576219
+ *
+ */
+public interface OutcomeWindow {
+
+	/**
+	 * Records the outcome of one call.
+	 * 
+	 * @param failure
+	 *            TRUE if the call has failed
+	 * @param now
+	 *            The current time in milliseconds
+	 */
+	void record(boolean failure, long now);
+
+	/**
+	 * 
+	 * @param now
+	 *            The current time in milliseconds
+	 * @return The number of calls in the window
+	 */
+	int getNumberOfCalls(long now);
+
+	/**
+	 * 
+	 * @param now
+	 *            The current time in milliseconds
+	 * @return The number of failed calls in the window
+	 */
+	int getNumberOfFailedCalls(long now);
+
+	/**
+	 * Removes all the outcomes from the window.
+	 */
+	void clear();
+
+	/**
+	 * Creates the window as configured in the threshold.
+	 * 
+	 * @param threshold
+	 *            The failure rate threshold
+	 * @return A count based or a time based window
+	 */
+	static OutcomeWindow of(FailureRateThreshold threshold) {
+		switch (threshold.getSlidingWindowType()) {
+		case TIME_BASED:
+			return new TimeBasedOutcomeWindow(threshold.getSlidingWindowSize());
+		default:
+			return new CountBasedOutcomeWindow(threshold.getSlidingWindowSize());
+		}
+	}
+}
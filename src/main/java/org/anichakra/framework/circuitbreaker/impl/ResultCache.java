@@ -0,0 +1,246 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.anichakra.framework.circuitbreaker.api.CacheMetrics;
+import org.anichakra.framework.circuitbreaker.api.CachePolicy;
+
+/**
+ * A bounded concurrent cache of the results of a Command, keyed by input, as
+ * configured by a {@link CachePolicy}. The entries are kept in a
+ * {@link ConcurrentHashMap} and in a queue in the order they were inserted.
+ * When the cache grows beyond its maximum size the oldest inputs are evicted
+ * from the head of the queue, so an insertion costs an offer to the queue and
+ * reading a result does not write anything but the counters.
+ * <p>
+ * A new result for an input already in the cache replaces the value of its
+ * entry in place. A result older than the time to live and the maximum
+ * staleness is never returned, and its entry is removed by a sweep of the
+ * queue made by the first access after the sweep interval, which is the
+ * maximum age of a result but at least a second. An entry leaves the map and
+ * the queue together, by the eviction or by the sweep which removes it from
+ * the map first.
+ *
+ * @see CommandProxy
+ * @author 576219
+ * @param <K>
+ * @param <V>
+ */
+public class ResultCache<K, V> implements CacheMetrics {
+
+	private static final long MINIMUM_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final int maximumSize;
+
+	private final long timeToLiveNanos;
+
+	private final long maximumAgeNanos;
+
+	private final long sweepIntervalNanos;
+
+	private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime());
+
+	private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+
+	private final Queue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<Entry<K, V>>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder staleHits = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 *
+	 * @param cachePolicy
+	 */
+	public ResultCache(CachePolicy cachePolicy) {
+		if (cachePolicy.getMaximumSize() <= 0)
+			throw new IllegalArgumentException("Maximum size must be positive");
+		this.maximumSize = cachePolicy.getMaximumSize();
+		this.timeToLiveNanos = cachePolicy.getTimeToLive().toNanos();
+		this.maximumAgeNanos = timeToLiveNanos + cachePolicy.getMaximumStaleness().toNanos();
+		this.sweepIntervalNanos = Math.max(maximumAgeNanos, MINIMUM_SWEEP_INTERVAL_NANOS);
+		this.nextSweepNanos.addAndGet(sweepIntervalNanos);
+	}
+
+	/**
+	 * Looks for a fresh result, and counts a hit or a miss.
+	 *
+	 * @param k
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return The result, or null if the input has no fresh result
+	 */
+	Result<V> getFresh(K k, long nowNanos) {
+		sweepIfDue(nowNanos);
+		Result<V> result = get(k, nowNanos, timeToLiveNanos);
+		if (result == null)
+			misses.increment();
+		else
+			hits.increment();
+		return result;
+	}
+
+	/**
+	 * Looks for a result that is fresh or not older than the maximum
+	 * staleness, and counts a stale hit if there is one.
+	 *
+	 * @param k
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 * @return The result, or null if the input has no result to serve
+	 */
+	Result<V> getStale(K k, long nowNanos) {
+		Result<V> result = get(k, nowNanos, maximumAgeNanos);
+		if (result != null)
+			staleHits.increment();
+		return result;
+	}
+
+	private Result<V> get(K k, long nowNanos, long maxAgeNanos) {
+		Entry<K, V> entry = entries.get(k);
+		if (entry == null)
+			return null;
+		Result<V> result = entry.result;
+		return nowNanos - result.writtenNanos < maxAgeNanos ? result : null;
+	}
+
+	/**
+	 * Stores the result of a successful call, and evicts the oldest inputs if
+	 * the cache is full.
+	 *
+	 * @param k
+	 * @param v
+	 * @param nowNanos
+	 *            The current time as given by {@link System#nanoTime()}
+	 */
+	void put(K k, V v, long nowNanos) {
+		sweepIfDue(nowNanos);
+		Result<V> result = new Result<V>(v, nowNanos);
+		Entry<K, V> entry = entries.get(k);
+		if (entry != null) {
+			entry.result = result;
+			return;
+		}
+		entry = new Entry<K, V>(k, result);
+		Entry<K, V> existing = entries.putIfAbsent(k, entry);
+		if (existing != null) {
+			existing.result = result;
+			return;
+		}
+		insertionOrder.offer(entry);
+		if (size.incrementAndGet() > maximumSize)
+			evict();
+	}
+
+	private void evict() {
+		while (size.get() > maximumSize) {
+			Entry<K, V> eldest = insertionOrder.poll();
+			if (eldest == null)
+				return;
+			if (entries.remove(eldest.key, eldest)) {
+				size.decrementAndGet();
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries whose result is too old to be served, once per
+	 * sweep interval. The thread which moves the time of the next sweep
+	 * makes it, the others go on.
+	 */
+	private void sweepIfDue(long nowNanos) {
+		long next = nextSweepNanos.get();
+		if (nowNanos - next < 0 || !nextSweepNanos.compareAndSet(next, nowNanos + sweepIntervalNanos))
+			return;
+		insertionOrder.removeIf((entry) -> {
+			if (nowNanos - entry.result.writtenNanos < maximumAgeNanos || !entries.remove(entry.key, entry))
+				return false;
+			size.decrementAndGet();
+			return true;
+		});
+	}
+
+	/**
+	 * Removes all the results.
+	 */
+	public void clear() {
+		Entry<K, V> entry;
+		while ((entry = insertionOrder.poll()) != null) {
+			if (entries.remove(entry.key, entry))
+				size.decrementAndGet();
+		}
+	}
+
+	public int getSize() {
+		return size.get();
+	}
+
+	public long getNumberOfHits() {
+		return hits.sum();
+	}
+
+	public long getNumberOfMisses() {
+		return misses.sum();
+	}
+
+	public long getNumberOfStaleHits() {
+		return staleHits.sum();
+	}
+
+	public long getNumberOfEvictions() {
+		return evictions.sum();
+	}
+
+	public String toString() {
+		return "CacheMetrics [size=" + getSize() + ", hits=" + getNumberOfHits() + ", misses=" + getNumberOfMisses()
+				+ ", staleHits=" + getNumberOfStaleHits() + ", evictions=" + getNumberOfEvictions() + "]";
+	}
+
+	/**
+	 * A result and the time it was written, replaced as a whole so that they
+	 * are always read together
+	 */
+	static final class Result<V> {
+
+		private final V value;
+
+		private final long writtenNanos;
+
+		private Result(V value, long writtenNanos) {
+			this.value = value;
+			this.writtenNanos = writtenNanos;
+		}
+
+		V getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * The entry of an input, in the map and in the queue
+	 */
+	private static final class Entry<K, V> {
+
+		private final K key;
+
+		private volatile Result<V> result;
+
+		private Entry(K key, Result<V> result) {
+			this.key = key;
+			this.result = result;
+		}
+	}
+}
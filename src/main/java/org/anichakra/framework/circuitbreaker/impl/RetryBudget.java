@@ -0,0 +1,87 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.RetryPolicy;
+
+/**
+ * The retries a circuit may make, as configured by a {@link RetryPolicy}. The
+ * successful calls and the retries of the last
+ * {@value #WINDOW_SECONDS} seconds are counted in two
+ * {@link SlidingTimeWindow}s, and a retry is allowed while the retries are
+ * fewer than the ratio of the successful calls plus the minimum. Counting the
+ * retry after checking the budget is not atomic, so a few concurrent retries
+ * may go over the budget by the number of threads.
+ * <p>
+ * The budget also calculates the backoff of each retry.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class RetryBudget {
+
+	/**
+	 * The span of the windows of the successful calls and the retries
+	 */
+	public static final int WINDOW_SECONDS = 10;
+
+	private final RetryPolicy retryPolicy;
+
+	private final SlidingTimeWindow successes;
+
+	private final SlidingTimeWindow retries;
+
+	private final int minimumRetries;
+
+	/**
+	 *
+	 * @param retryPolicy
+	 */
+	public RetryBudget(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		long spanMillis = TimeUnit.SECONDS.toMillis(WINDOW_SECONDS);
+		this.successes = new SlidingTimeWindow(spanMillis, WINDOW_SECONDS);
+		this.retries = new SlidingTimeWindow(spanMillis, WINDOW_SECONDS);
+		this.minimumRetries = Math.max(0, retryPolicy.getMinimumRetriesPerSecond()) * WINDOW_SECONDS;
+	}
+
+	/**
+	 * Counts a successful call.
+	 *
+	 * @param nowMillis
+	 */
+	public void onSuccess(long nowMillis) {
+		successes.record(nowMillis);
+	}
+
+	/**
+	 * Takes a retry from the budget if there is one left.
+	 *
+	 * @param nowMillis
+	 * @return TRUE if the call can be retried
+	 */
+	public boolean tryRetry(long nowMillis) {
+		double allowed = minimumRetries + retryPolicy.getRetryBudgetRatio() * successes.count(nowMillis);
+		if (retries.count(nowMillis) >= allowed)
+			return false;
+		retries.record(nowMillis);
+		return true;
+	}
+
+	/**
+	 *
+	 * @param attempt
+	 *            The number of the attempt which failed, starting at 1
+	 * @return The backoff in nanoseconds before the next attempt
+	 */
+	public long backoffNanos(int attempt) {
+		double backoff = retryPolicy.getInitialBackoff().toNanos()
+				* Math.pow(retryPolicy.getBackoffMultiplier(), attempt - 1);
+		backoff = Math.min(backoff, retryPolicy.getMaximumBackoff().toNanos());
+		double jitter = Math.min(1, Math.max(0, retryPolicy.getJitter()));
+		backoff -= backoff * jitter * ThreadLocalRandom.current().nextDouble();
+		return Math.max(0, (long) backoff);
+	}
+}
@@ -0,0 +1,110 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holder of the single {@link ScheduledExecutorService} and the single
+ * {@link HashedWheelTimer} that are shared by all the circuits in the JVM. The
+ * circuit breakers use the scheduler, through the {@link SystemClock}, to
+ * schedule the health checks after a trip and to enforce the maximum duration
+ * of the health checks, so that no request thread is ever parked while the
+ * circuit recovers. The timer fires the timeouts of the calls, so that no
+ * thread has to wait for a call just to time it out.
+ * <p>
+ * The threads are daemon threads, so an application does not need to shut the
+ * scheduler down explicitly.
+ *
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public final class SharedScheduler {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/**
+	 * The precision of the timeouts in milliseconds
+	 */
+	private static final int TIMER_TICK_MILLIS = 5;
+
+	private static final int TIMER_TICKS_PER_WHEEL = 2048;
+
+	private static volatile ScheduledExecutorService scheduler;
+
+	private static volatile HashedWheelTimer timer;
+
+	private SharedScheduler() {
+	}
+
+	/**
+	 *
+	 * @return The shared scheduler, created lazily on first use or after a
+	 *         {@link #shutdown()}.
+	 */
+	public static ScheduledExecutorService get() {
+		ScheduledExecutorService s = scheduler;
+		if (s == null || s.isShutdown()) {
+			synchronized (SharedScheduler.class) {
+				s = scheduler;
+				if (s == null || s.isShutdown()) {
+					s = newScheduler();
+					scheduler = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 *
+	 * @return The shared timer, created lazily on first use or after a
+	 *         {@link #shutdown()}.
+	 */
+	public static HashedWheelTimer timer() {
+		HashedWheelTimer t = timer;
+		if (t == null || t.isStopped()) {
+			synchronized (SharedScheduler.class) {
+				t = timer;
+				if (t == null || t.isStopped()) {
+					t = new HashedWheelTimer("circuit-breaker-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+							TIMER_TICKS_PER_WHEEL);
+					timer = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Shuts down the shared scheduler and the shared timer. Pending health
+	 * checks and timeouts are cancelled.
+	 */
+	public static void shutdown() {
+		synchronized (SharedScheduler.class) {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+			if (timer != null) {
+				timer.stop();
+				timer = null;
+			}
+		}
+	}
+
+	private static ScheduledExecutorService newScheduler() {
+		ThreadFactory threadFactory = (runnable) -> {
+			Thread thread = new Thread(runnable, "circuit-breaker-scheduler-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				Math.max(2, Runtime.getRuntime().availableProcessors()), threadFactory);
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+}
@@ -0,0 +1,190 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size, time bucketed sliding window that counts events like the
+ * faults of a circuit. The window is divided into a fixed number of buckets of
+ * equal width in milliseconds, and each bucket is a single primitive long which
+ * packs the epoch of the bucket in the upper 32 bits and the number of events
+ * in the lower 32 bits. A bucket that belongs to an epoch which has slid out of
+ * the window is reused by simply overwriting it.
+ * <p>
+ * Recording an event is a single compare-and-set and counting the events is a
+ * scan over the fixed number of buckets, so both are independent of the number
+ * of events in the window and neither allocates any object.
+ * <p>
+ * The times may be negative, like the milliseconds of
+ * {@link System#nanoTime()}, the epochs are rounded towards negative infinity.
+ * <p>
+ * The buckets are {@link AtomicWords}, on the heap for a window created with
+ * a public constructor, or a range of the words of a slot of a
+ * {@link MappedCircuitStateStore} for the fault window shared by processes.
+ *
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public class SlidingTimeWindow {
+
+	/**
+	 * The default number of buckets the window is divided into
+	 */
+	public static final int DEFAULT_BUCKETS = 60;
+
+	private final long bucketMillis;
+
+	private final AtomicWords words;
+
+	private final int offset;
+
+	private final int length;
+
+	/**
+	 * Creates a window of {@link #DEFAULT_BUCKETS} buckets.
+	 *
+	 * @param spanMillis
+	 *            The time span of the window in milliseconds
+	 */
+	public SlidingTimeWindow(long spanMillis) {
+		this(spanMillis, DEFAULT_BUCKETS);
+	}
+
+	/**
+	 *
+	 * @param spanMillis
+	 *            The time span of the window in milliseconds. The buckets are
+	 *            at least 1 millisecond wide, so a span of 0, like the one of a
+	 *            fault threshold checked over 0 minutes, is a window of one
+	 *            millisecond per bucket.
+	 * @param bucketCount
+	 *            The number of buckets the window is divided into. The window
+	 *            slides by the span divided by this number.
+	 */
+	public SlidingTimeWindow(long spanMillis, int bucketCount) {
+		if (spanMillis < 0 || bucketCount <= 0)
+			throw new IllegalArgumentException("Span of the window must not be negative and its bucket count positive");
+		this.bucketMillis = Math.max(1, spanMillis / bucketCount);
+		this.words = AtomicWords.onHeap(bucketCount);
+		this.offset = 0;
+		this.length = bucketCount;
+	}
+
+	/**
+	 * Creates a window over buckets kept in words which may hold other data
+	 * as well.
+	 *
+	 * @param words
+	 * @param offset
+	 *            The index of the word of the first bucket
+	 * @param bucketCount
+	 *            The number of buckets, which are the words following the
+	 *            first one
+	 * @param bucketMillis
+	 *            The width of each bucket in milliseconds
+	 */
+	SlidingTimeWindow(AtomicWords words, int offset, int bucketCount, long bucketMillis) {
+		if (bucketCount <= 0 || bucketMillis <= 0 || offset < 0 || offset + bucketCount > words.length())
+			throw new IllegalArgumentException("Buckets of the window must be within the words");
+		this.bucketMillis = bucketMillis;
+		this.words = words;
+		this.offset = offset;
+		this.length = bucketCount;
+	}
+
+	/**
+	 * Records one event at the given time.
+	 *
+	 * @param now
+	 *            The current time in milliseconds
+	 */
+	public void record(long now) {
+		add(now, 1);
+	}
+
+	/**
+	 * Records a number of events at the given time.
+	 *
+	 * @param now
+	 *            The current time in milliseconds
+	 * @param delta
+	 *            The number of events
+	 */
+	public void add(long now, int delta) {
+		long epoch = Math.floorDiv(now, bucketMillis);
+		int index = offset + (int) Math.floorMod(epoch, (long) length);
+		int tag = (int) epoch;
+		for (;;) {
+			long bucket = words.get(index);
+			long next;
+			if ((int) bucket != 0 && tag - (int) (bucket >>> 32) <= 0) {
+				// same epoch, or a newer one recorded by a thread that read the clock later,
+				// an empty bucket is always retagged as its tag 0 is later than negative epochs
+				next = bucket + delta;
+			} else {
+				next = ((long) tag << 32) | (delta & 0xFFFFFFFFL);
+			}
+			if (words.compareAndSet(index, bucket, next))
+				return;
+		}
+	}
+
+	/**
+	 *
+	 * @param now
+	 *            The current time in milliseconds
+	 * @return The number of events recorded within the window ending at the
+	 *         given time.
+	 */
+	public int count(long now) {
+		int current = (int) Math.floorDiv(now, bucketMillis);
+		int sum = 0;
+		for (int i = 0; i < length; i++) {
+			long bucket = words.get(offset + i);
+			int age = current - (int) (bucket >>> 32);
+			if (age >= 0 && age < length)
+				sum += (int) bucket;
+		}
+		return sum;
+	}
+
+	/**
+	 *
+	 * @param now
+	 *            The current time in milliseconds
+	 * @return The start time in milliseconds and the number of events of every
+	 *         bucket within the window ending at the given time which holds
+	 *         events, in pairs
+	 */
+	public long[] getBuckets(long now) {
+		int current = (int) Math.floorDiv(now, bucketMillis);
+		long[] pairs = new long[2 * length];
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			long bucket = words.get(offset + i);
+			int tag = (int) (bucket >>> 32);
+			int age = current - tag;
+			if (age >= 0 && age < length && (int) bucket != 0) {
+				pairs[size++] = (Math.floorDiv(now, bucketMillis) - age) * bucketMillis;
+				pairs[size++] = (int) bucket;
+			}
+		}
+		return Arrays.copyOf(pairs, size);
+	}
+
+	/**
+	 * Removes all the events from the window.
+	 */
+	public void clear() {
+		for (int i = 0; i < length; i++)
+			words.set(offset + i, 0L);
+	}
+
+	/**
+	 *
+	 * @return The width of each bucket in milliseconds
+	 */
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+}
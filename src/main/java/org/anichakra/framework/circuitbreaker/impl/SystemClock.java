@@ -0,0 +1,49 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link CircuitClock} of the real time. It reads the system clock,
+ * schedules the tasks on the {@link SharedScheduler} and runs the blocking
+ * tasks in a new thread each, a virtual one on Java 21 or later.
+ * 
+ * @see AbstractCircuitBreaker
+ * @author 576219
+ *
+ */
+public final class SystemClock implements CircuitClock {
+
+	/**
+	 * The only instance
+	 */
+	public static final SystemClock INSTANCE = new SystemClock();
+
+	private SystemClock() {
+	}
+
+	/**
+	 * The executor of the blocking tasks, created on first use
+	 */
+	private static final class Executor {
+		private static final ExecutorService INSTANCE = ThreadSupport
+				.newThreadPerTaskExecutor("circuit-breaker-health-check-");
+	}
+
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	public Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return SharedScheduler.get().schedule(task, delay, unit);
+	}
+
+	public Future<?> submit(Runnable task) {
+		return Executor.INSTANCE.submit(task);
+	}
+}
@@ -0,0 +1,47 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the framework. This is the Java 8 version of the
+ * class, a multi-release jar built on Java 21 or later also contains a version
+ * of it that creates virtual threads, which the runtime picks up when it
+ * supports them.
+ *
+ * @see VirtualThreadExecutorServiceFactory
+ * @author 576219
+ *
+ */
+final class ThreadSupport {
+
+	private ThreadSupport() {
+	}
+
+	/**
+	 *
+	 * @return TRUE if the threads created for each task are virtual threads
+	 */
+	static boolean isVirtualThreadSupported() {
+		return false;
+	}
+
+	/**
+	 * Creates an ExecutorService that starts a new thread for each task, or
+	 * reuses an idle one. On this runtime it is a cached thread pool of daemon
+	 * threads.
+	 *
+	 * @param name
+	 *            The prefix of the names of the threads
+	 * @return An ExecutorService instance
+	 */
+	static ExecutorService newThreadPerTaskExecutor(final String name) {
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool((runnable) -> {
+			Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+}
@@ -0,0 +1,50 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link OutcomeWindow} holding the outcomes of the calls made in the last N
+ * seconds, kept as two {@link SlidingTimeWindow}s for all the calls and for
+ * the failed calls. The buckets are one second wide, or wider for windows
+ * longer than {@link SlidingTimeWindow#DEFAULT_BUCKETS} seconds.
+ * 
+ * @author 576219
+ *
+ */
+public class TimeBasedOutcomeWindow implements OutcomeWindow {
+
+	private final SlidingTimeWindow calls;
+
+	private final SlidingTimeWindow failures;
+
+	/**
+	 * 
+	 * @param seconds
+	 *            The time span of the window in seconds
+	 */
+	public TimeBasedOutcomeWindow(int seconds) {
+		long spanMillis = TimeUnit.SECONDS.toMillis(seconds);
+		int buckets = Math.min(seconds, SlidingTimeWindow.DEFAULT_BUCKETS);
+		this.calls = new SlidingTimeWindow(spanMillis, buckets);
+		this.failures = new SlidingTimeWindow(spanMillis, buckets);
+	}
+
+	public void record(boolean failure, long now) {
+		calls.record(now);
+		if (failure)
+			failures.record(now);
+	}
+
+	public int getNumberOfCalls(long now) {
+		return calls.count(now);
+	}
+
+	public int getNumberOfFailedCalls(long now) {
+		return failures.count(now);
+	}
+
+	public void clear() {
+		calls.clear();
+		failures.clear();
+	}
+}
@@ -0,0 +1,162 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.anichakra.framework.circuitbreaker.api.RateLimit;
+import org.anichakra.framework.circuitbreaker.api.RateLimiter;
+
+/**
+ * A lock-free token bucket as configured by a {@link RateLimit}. The bucket is
+ * not refilled by a thread, it is kept as a single number, the time at which
+ * it will be full again. Each permit pushes that time forward by the interval
+ * between two permits, and a permit is available as long as that time is not
+ * further ahead than the whole bucket, so taking a permit is one
+ * compare-and-set of an {@link AtomicLong}. A call which is allowed to wait
+ * reserves its permit in the same way and is told how long to wait for it, so
+ * the waiting calls are served in the order of their reservations.
+ * <p>
+ * The rate and the burst size are kept together in an immutable object which
+ * is replaced when one of them is changed, the permits reserved before keep
+ * the interval they were reserved with.
+ *
+ * @see CommandProxy
+ * @author 576219
+ *
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+	private final CircuitClock clock;
+
+	private final long maximumWaitNanos;
+
+	/**
+	 * The time at which the bucket will be full if no permit is taken until
+	 * then
+	 */
+	private final AtomicLong fullAt;
+
+	private final LongAdder throttledCalls = new LongAdder();
+
+	private volatile Rate rate;
+
+	/**
+	 *
+	 * @param rateLimit
+	 */
+	public TokenBucketRateLimiter(RateLimit rateLimit) {
+		this(rateLimit, SystemClock.INSTANCE);
+	}
+
+	/**
+	 *
+	 * @param rateLimit
+	 * @param clock
+	 *            The {@link SystemClock}, or a {@link VirtualClock} to
+	 *            simulate the rate limiter
+	 */
+	public TokenBucketRateLimiter(RateLimit rateLimit, CircuitClock clock) {
+		this.clock = clock;
+		this.rate = new Rate(rateLimit.getPermitsPerSecond(), rateLimit.getBurstSize());
+		this.maximumWaitNanos = Math.max(0, rateLimit.getMaximumWait().toNanos());
+		this.fullAt = new AtomicLong(clock.nanoTime());
+	}
+
+	/**
+	 * Takes a permit, or reserves the next one if the call can wait for it.
+	 *
+	 * @return The time to wait in nanoseconds before making the call, 0 if a
+	 *         permit was available, or -1 if the call is throttled
+	 */
+	public long reserve() {
+		Rate r = rate;
+		long now = clock.nanoTime();
+		long current;
+		long next;
+		long wait;
+		do {
+			current = fullAt.get();
+			next = Math.max(current, now) + r.intervalNanos;
+			wait = next - now - r.bucketNanos;
+			if (wait > maximumWaitNanos) {
+				throttledCalls.increment();
+				return -1;
+			}
+		} while (!fullAt.compareAndSet(current, next));
+		return Math.max(0, wait);
+	}
+
+	/**
+	 * Takes a permit, waiting for it in the calling thread if needed.
+	 *
+	 * @return TRUE if the call can be made, FALSE if it is throttled
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting, the permit is
+	 *             lost
+	 */
+	public boolean acquire() throws InterruptedException {
+		long wait = reserve();
+		if (wait < 0)
+			return false;
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+		return true;
+	}
+
+	public double getPermitsPerSecond() {
+		return rate.permitsPerSecond;
+	}
+
+	public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+		rate = new Rate(permitsPerSecond, rate.burstSize);
+	}
+
+	public int getBurstSize() {
+		return rate.burstSize;
+	}
+
+	public synchronized void setBurstSize(int burstSize) {
+		rate = new Rate(rate.permitsPerSecond, burstSize);
+	}
+
+	public int getAvailablePermits() {
+		Rate r = rate;
+		long now = clock.nanoTime();
+		long debt = Math.max(fullAt.get(), now) - now;
+		return (int) Math.max(0, (r.bucketNanos - debt) / r.intervalNanos);
+	}
+
+	public long getThrottledCalls() {
+		return throttledCalls.sum();
+	}
+
+	public String toString() {
+		return "RateLimiter [permitsPerSecond=" + getPermitsPerSecond() + ", burstSize=" + getBurstSize()
+				+ ", available=" + getAvailablePermits() + ", throttled=" + getThrottledCalls() + "]";
+	}
+
+	/**
+	 * The rate of the bucket, replaced as a whole so that the interval and the
+	 * size of the bucket are always read together
+	 */
+	private static final class Rate {
+
+		private final double permitsPerSecond;
+
+		private final int burstSize;
+
+		private final long intervalNanos;
+
+		private final long bucketNanos;
+
+		private Rate(double permitsPerSecond, int burstSize) {
+			if (!(permitsPerSecond > 0) || burstSize < 1)
+				throw new IllegalArgumentException("Rate and burst size must be positive");
+			this.permitsPerSecond = permitsPerSecond;
+			this.burstSize = burstSize;
+			this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+			this.bucketNanos = intervalNanos * burstSize;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CircuitClock} whose time only moves when
+ * {@link #advance(long, TimeUnit)} is called. The scheduled tasks are run by
+ * the thread which advances the clock, in the order of their time and then of
+ * their scheduling, so a run is fully deterministic and hours of virtual time
+ * take milliseconds. The tasks
+ * submitted with {@link #submit(Runnable)} are run immediately, that is they
+ * take no virtual time.
+ * <p>
+ * The clock is meant to be driven by a single thread and is not thread safe.
+ * 
+ * @see CircuitSimulation
+ * @author 576219
+ *
+ */
+public class VirtualClock implements CircuitClock {
+
+	/**
+	 * The default start time of the clock, 2020-01-01T00:00:00Z
+	 */
+	public static final long DEFAULT_START_MILLIS = 1577836800000L;
+
+	private final long startMillis;
+
+	private final PriorityQueue<Task> tasks = new PriorityQueue<Task>();
+
+	private long nanos;
+
+	private long sequence;
+
+	/**
+	 * Creates a clock starting at {@link #DEFAULT_START_MILLIS}.
+	 */
+	public VirtualClock() {
+		this(DEFAULT_START_MILLIS);
+	}
+
+	/**
+	 * 
+	 * @param startMillis
+	 *            The start time of the clock in milliseconds since the epoch
+	 */
+	public VirtualClock(long startMillis) {
+		this.startMillis = startMillis;
+	}
+
+	public long currentTimeMillis() {
+		return startMillis + TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	public long nanoTime() {
+		return nanos;
+	}
+
+	public Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		Task t = new Task(nanos + Math.max(0, unit.toNanos(delay)), sequence++, task);
+		tasks.add(t);
+		return t.future;
+	}
+
+	public Future<?> submit(Runnable task) {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		try {
+			task.run();
+			future.complete(null);
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Moves the time forward, running the tasks which become due on the way.
+	 * 
+	 * @param duration
+	 * @param unit
+	 */
+	public void advance(long duration, TimeUnit unit) {
+		long target = nanos + unit.toNanos(duration);
+		Task task;
+		while ((task = tasks.peek()) != null && task.time <= target) {
+			tasks.poll();
+			nanos = Math.max(nanos, task.time);
+			task.run();
+		}
+		nanos = target;
+	}
+
+	/**
+	 * 
+	 * @return The time elapsed since the start of the clock in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * 
+	 * @return The number of scheduled tasks not run yet, including the
+	 *         cancelled ones
+	 */
+	public int getPendingTasks() {
+		return tasks.size();
+	}
+
+	/**
+	 * A scheduled task, ordered by its time and then by its scheduling
+	 */
+	private static final class Task implements Comparable<Task> {
+
+		private final long time;
+
+		private final long sequence;
+
+		private final Runnable runnable;
+
+		private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		private Task(long time, long sequence, Runnable runnable) {
+			this.time = time;
+			this.sequence = sequence;
+			this.runnable = runnable;
+		}
+
+		private void run() {
+			if (future.isDone())
+				return;
+			try {
+				runnable.run();
+				future.complete(null);
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		public int compareTo(Task other) {
+			int c = Long.compare(time, other.time);
+			return c != 0 ? c : Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ExecutorService;
+
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+
+/**
+ * ExecutorServiceFactory that executes each call in a new virtual thread when
+ * the runtime is Java 21 or later, so that thousands of calls blocked on an
+ * external system do not hold any platform thread. On older runtimes it falls
+ * back to a cached thread pool.
+ * 
+ * @author 576219
+ *
+ */
+public class VirtualThreadExecutorServiceFactory implements ExecutorServiceFactory {
+
+	public ExecutorService getExecutorService() {
+		return ThreadSupport.newThreadPerTaskExecutor("circuit-breaker-command-");
+	}
+
+	/**
+	 * 
+	 * @return TRUE if the runtime supports virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return ThreadSupport.isVirtualThreadSupported();
+	}
+}
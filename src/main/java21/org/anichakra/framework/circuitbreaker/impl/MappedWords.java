@@ -0,0 +1,54 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The 64 bit words of a memory-mapped file, read and written atomically so
+ * that several processes mapping the same file can share them. This is the
+ * Java 21 version of the class which is packaged in the multi-release jar, it
+ * reaches the mapped memory through a VarHandle viewing the buffer as longs in
+ * the native byte order, as the Java 8 version does, so processes running on
+ * either can share a file.
+ *
+ * @see MappedCircuitStateStore
+ * @author 576219
+ *
+ */
+final class MappedWords implements AtomicWords {
+
+	private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+
+	private final MappedByteBuffer buffer;
+
+	private final int length;
+
+	/**
+	 *
+	 * @param buffer
+	 *            The mapped buffer, which starts on a page boundary
+	 */
+	MappedWords(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.length = buffer.capacity() / Long.BYTES;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public long get(int index) {
+		return (long) WORDS.getVolatile(buffer, index * Long.BYTES);
+	}
+
+	public void set(int index, long value) {
+		WORDS.setVolatile(buffer, index * Long.BYTES, value);
+	}
+
+	public boolean compareAndSet(int index, long expected, long value) {
+		return WORDS.compareAndSet(buffer, index * Long.BYTES, expected, value);
+	}
+}
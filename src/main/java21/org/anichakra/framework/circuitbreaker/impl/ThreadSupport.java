@@ -0,0 +1,40 @@
+package org.anichakra.framework.circuitbreaker.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the threads of the framework. This is the Java 21 version of the
+ * class which is packaged in the multi-release jar, it creates a virtual
+ * thread for each task so that the calls blocked on an external system do not
+ * hold any platform thread.
+ *
+ * @see VirtualThreadExecutorServiceFactory
+ * @author 576219
+ *
+ */
+final class ThreadSupport {
+
+	private ThreadSupport() {
+	}
+
+	/**
+	 *
+	 * @return TRUE if the threads created for each task are virtual threads
+	 */
+	static boolean isVirtualThreadSupported() {
+		return true;
+	}
+
+	/**
+	 * Creates an ExecutorService that starts a new virtual thread for each
+	 * task.
+	 *
+	 * @param name
+	 *            The prefix of the names of the threads
+	 * @return An ExecutorService instance
+	 */
+	static ExecutorService newThreadPerTaskExecutor(String name) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 1).factory());
+	}
+}
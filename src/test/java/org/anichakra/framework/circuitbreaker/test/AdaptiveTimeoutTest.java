@@ -0,0 +1,162 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.anichakra.framework.circuitbreaker.api.AdaptiveTimeout;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultAdaptiveTimeout;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.LatencyHistogram;
+import org.anichakra.framework.circuitbreaker.impl.SharedScheduler;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class AdaptiveTimeoutTest {
+
+	@Test
+	public void testPercentileOfLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram(10, TimeUnit.SECONDS);
+		long now = 0;
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i), now);
+		assertEquals(1000, histogram.getCount(now));
+		long p99 = histogram.getValueAtPercentile(99, now);
+		assertTrue("p99 is " + p99, p99 >= TimeUnit.MILLISECONDS.toNanos(990)
+				&& p99 <= TimeUnit.MILLISECONDS.toNanos(990) * 1125 / 1000);
+		long p50 = histogram.getValueAtPercentile(50, now);
+		assertTrue("p50 is " + p50, p50 >= TimeUnit.MILLISECONDS.toNanos(500)
+				&& p50 <= TimeUnit.MILLISECONDS.toNanos(500) * 1125 / 1000);
+	}
+
+	@Test
+	public void testLatenciesRollOutOfTheWindow() {
+		LatencyHistogram histogram = new LatencyHistogram(10, TimeUnit.SECONDS);
+		long start = TimeUnit.SECONDS.toNanos(1000);
+		histogram.record(100, start);
+		histogram.record(100, start + TimeUnit.SECONDS.toNanos(5));
+		assertEquals(2, histogram.getCount(start + TimeUnit.SECONDS.toNanos(9)));
+		assertEquals(1, histogram.getCount(start + TimeUnit.SECONDS.toNanos(10)));
+		assertEquals(0, histogram.getCount(start + TimeUnit.SECONDS.toNanos(20)));
+		assertEquals(0, histogram.getValueAtPercentile(99, start + TimeUnit.SECONDS.toNanos(20)));
+	}
+
+	@Test
+	public void testSubSecondTimeout() {
+		CommandProxy<Long, Long> command = new CommandProxy<Long, Long>(new SleepingCommand(), new TestBreaker(),
+				null, ExecutionMode.CALLER_THREAD);
+		assertEquals(Duration.ofMillis(200), command.getCurrentTimeout());
+		assertTimesOut(command, 1000);
+	}
+
+	@Test
+	public void testTimeoutFollowsLatency() throws Exception {
+		CommandProxy<Long, Long> command = new CommandProxy<Long, Long>("adaptive", new TestCircuit());
+		assertEquals(Duration.ofMillis(200), command.getCurrentTimeout());
+		for (int i = 0; i < 20; i++)
+			command.execute(1L);
+		TimeUnit.MILLISECONDS.sleep(2 * CommandProxy.ADAPTIVE_TIMEOUT_UPDATE_MILLIS);
+		long timeout = command.getCurrentTimeout().toMillis();
+		assertTrue("Adaptive timeout is " + timeout + "ms", timeout >= 5 && timeout < 100);
+		// a call of 150ms was in time with the timeout of the circuit breaker
+		assertTimesOut(command, 150);
+	}
+
+	@Test
+	public void testTimeoutWhenTheTimerIsStopped() {
+		SleepingCommand sleeping = new SleepingCommand();
+		CommandProxy<Long, Long> command = new CommandProxy<Long, Long>((k) -> {
+			sleeping.execute(50L);
+			// the timer is gone once the deadline of the call is set
+			SharedScheduler.timer().stop();
+			return sleeping.execute(k);
+		}, new TestBreaker(), new DefaultExecutorServiceFactory(1), ExecutionMode.THREAD_POOL);
+		long start = System.nanoTime();
+		assertTimesOut(command, 10000);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Timed out after " + elapsed + "ms", elapsed < 5000);
+	}
+
+	private static void assertTimesOut(Command<Long, Long> command, long millis) {
+		try {
+			command.execute(millis);
+			fail("The command should time out");
+		} catch (CommandExecutionFailureException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	private static class SleepingCommand implements Command<Long, Long> {
+
+		public Long execute(Long k) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(k);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return k;
+		}
+	}
+
+	private static class TestCircuit implements Circuit<Long, Long> {
+
+		public Command<Long, Long> getCommand() {
+			return new SleepingCommand();
+		}
+
+		public CircuitBreaker<Long, Long> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+
+		public AdaptiveTimeout getAdaptiveTimeout() {
+			return new DefaultAdaptiveTimeout() {
+				public double getMultiplier() {
+					return 2;
+				}
+
+				public Duration getMinimumTimeout() {
+					return Duration.ofMillis(5);
+				}
+
+				public int getMinimumNumberOfCalls() {
+					return 20;
+				}
+			};
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Long, Long> {
+
+		public Long executeFallback(Long k) {
+			return -1L;
+		}
+
+		public Duration getInvocationTimeout() {
+			return Duration.ofMillis(200);
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
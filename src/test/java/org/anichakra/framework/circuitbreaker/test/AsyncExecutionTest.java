@@ -0,0 +1,128 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.anichakra.framework.circuitbreaker.api.AsyncCommand;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class AsyncExecutionTest {
+
+	@Test
+	public void testAsyncCommand() throws Exception {
+		AsyncCommand<String, String> command = register("asyncEcho", new AsyncEchoCommand());
+		assertEquals("echo ok", command.executeAsync("ok").get());
+	}
+
+	@Test
+	public void testTimeoutWithoutBlockingThread() throws Exception {
+		AsyncCommand<String, String> command = register("asyncHanging", new AsyncEchoCommand());
+		CompletableFuture<String> future = command.executeAsync("hang");
+		try {
+			future.get();
+			fail("The call should time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CommandExecutionFailureException);
+			assertTrue(e.getCause().getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test
+	public void testTimeoutIsNotCompletedOnTheTimerThread() throws Exception {
+		AsyncCommand<String, String> command = register("asyncTimerThread", new AsyncEchoCommand());
+		CompletableFuture<String> thread = command.executeAsync("hang")
+				.handle((v, t) -> Thread.currentThread().getName());
+		assertNotEquals("circuit-breaker-timer", thread.get());
+	}
+
+	@Test
+	public void testFaultsTripToFallback() throws Exception {
+		AsyncCommand<String, String> command = register("asyncFaulty", new AsyncEchoCommand());
+		for (int i = 0; i < 2; i++) {
+			try {
+				command.executeAsync("fault").get();
+				fail("The fault should be thrown");
+			} catch (ExecutionException e) {
+				assertEquals(MockServiceSystemException.class, e.getCause().getCause().getClass());
+			}
+		}
+		assertEquals("fallback fault", command.executeAsync("fault").get());
+		assertEquals("fallback ok", command.executeAsync("ok").get());
+	}
+
+	private static AsyncCommand<String, String> register(String name, AsyncEchoCommand command) {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register(name, new Circuit<String, String>() {
+
+			public Command<String, String> getCommand() {
+				return command;
+			}
+
+			public CircuitBreaker<String, String> getCircuitBreaker() {
+				return command;
+			}
+
+			public ExecutorServiceFactory getExecutorServiceFactory() {
+				return new DefaultExecutorServiceFactory(2);
+			}
+		});
+		return registry.discoverAsync(name);
+	}
+
+	private static class AsyncEchoCommand extends AbstractCircuitBreaker<String, String>
+			implements Command<String, String>, AsyncCommand<String, String> {
+
+		AsyncEchoCommand() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public String execute(String k) throws CommandExecutionFailureException {
+			throw new UnsupportedOperationException();
+		}
+
+		public CompletableFuture<String> executeAsync(String k) {
+			if ("hang".equals(k))
+				return new CompletableFuture<String>();
+			if ("fault".equals(k)) {
+				CompletableFuture<String> future = new CompletableFuture<String>();
+				future.completeExceptionally(new MockServiceSystemException("fault"));
+				return future;
+			}
+			return CompletableFuture.completedFuture("echo " + k);
+		}
+
+		public String executeFallback(String k) {
+			return "fallback " + k;
+		}
+
+		public int invocationTimeout() {
+			return 1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.BatchCommand;
+import org.anichakra.framework.circuitbreaker.api.BatchPolicy;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.BatchingCommand;
+import org.anichakra.framework.circuitbreaker.impl.DefaultBatchPolicy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class BatchingTest {
+
+	private static final int CALLS = 100;
+
+	@Test
+	public void testConcurrentCallsAreBatched() throws Exception {
+		TestBatchCommand bulk = new TestBatchCommand();
+		Command<Integer, Integer> command = new BatchingCommand<Integer, Integer>(discover("batched", bulk),
+				policy(10, Duration.ofMillis(200)));
+		ExecutorService callers = Executors.newFixedThreadPool(CALLS);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < CALLS; i++) {
+				final int k = i + 1;
+				results.add(callers.submit(() -> command.execute(k)));
+			}
+			for (int i = 0; i < CALLS; i++)
+				assertEquals(Integer.valueOf((i + 1) * 2), results.get(i).get());
+		} finally {
+			callers.shutdown();
+		}
+		assertTrue("Batches: " + bulk.batches.get(), bulk.batches.get() >= 10 && bulk.batches.get() < CALLS / 2);
+		assertEquals(CALLS, bulk.keys.get());
+	}
+
+	@Test
+	public void testSingleCallIsSentAfterDelay() throws CommandExecutionFailureException {
+		TestBatchCommand bulk = new TestBatchCommand();
+		Command<Integer, Integer> command = new BatchingCommand<Integer, Integer>(discover("delayed", bulk),
+				policy(10, Duration.ofMillis(20)));
+		assertEquals(Integer.valueOf(6), command.execute(3));
+		assertEquals(1, bulk.batches.get());
+	}
+
+	@Test
+	public void testItemAndBatchFailures() throws CommandExecutionFailureException {
+		TestBatchCommand bulk = new TestBatchCommand();
+		Command<Integer, Integer> command = new BatchingCommand<Integer, Integer>(discover("failing", bulk),
+				new DefaultBatchPolicy());
+		try {
+			command.execute(-1);
+			fail("The missing result should fail the call");
+		} catch (CommandExecutionFailureException e) {
+			assertEquals(null, e.getCause());
+		}
+		for (int i = 0; i < 2; i++) {
+			try {
+				command.execute(0);
+				fail("The fault should be thrown");
+			} catch (CommandExecutionFailureException e) {
+				assertTrue(e.getCause() instanceof CommandExecutionFailureException);
+			}
+		}
+		// the third fault trips the circuit, the fallback answers for the batch
+		assertEquals(Integer.valueOf(-1), command.execute(0));
+		assertEquals(Integer.valueOf(-1), command.execute(5));
+	}
+
+	private static Command<List<Integer>, Map<Integer, Integer>> discover(String name, TestBatchCommand bulk) {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register(name, new TestCircuit(bulk));
+		return registry.discover(name);
+	}
+
+	private static BatchPolicy policy(int maxBatchSize, Duration maxDelay) {
+		return new BatchPolicy() {
+			public int getMaxBatchSize() {
+				return maxBatchSize;
+			}
+
+			public Duration getMaxDelay() {
+				return maxDelay;
+			}
+		};
+	}
+
+	/**
+	 * Doubles the inputs, has no result for negative inputs and fails the
+	 * batch for 0
+	 */
+	private static class TestBatchCommand implements BatchCommand<Integer, Integer> {
+
+		private final AtomicInteger batches = new AtomicInteger();
+
+		private final AtomicInteger keys = new AtomicInteger();
+
+		public Map<Integer, Integer> execute(List<Integer> batch) {
+			batches.incrementAndGet();
+			keys.addAndGet(batch.size());
+			Map<Integer, Integer> results = new HashMap<Integer, Integer>();
+			for (Integer k : batch) {
+				if (k == 0)
+					throw new MockServiceSystemException("fault");
+				if (k > 0)
+					results.put(k, k * 2);
+			}
+			return results;
+		}
+	}
+
+	private static class TestCircuit implements Circuit<List<Integer>, Map<Integer, Integer>> {
+
+		private final TestBatchCommand bulk;
+
+		TestCircuit(TestBatchCommand bulk) {
+			this.bulk = bulk;
+		}
+
+		public Command<List<Integer>, Map<Integer, Integer>> getCommand() {
+			return bulk;
+		}
+
+		public CircuitBreaker<List<Integer>, Map<Integer, Integer>> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			// a batch may be sent while the previous one is still in flight
+			return new DefaultExecutorServiceFactory(CALLS);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<List<Integer>, Map<Integer, Integer>> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Map<Integer, Integer> executeFallback(List<Integer> keys) {
+			Map<Integer, Integer> fallback = new HashMap<Integer, Integer>();
+			for (Integer k : keys)
+				fallback.put(k, -1);
+			return fallback;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.BulkheadType;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.FaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class BulkheadTest {
+
+	@Test
+	public void testSemaphoreBulkhead() throws Exception {
+		assertRejection(new DefaultExecutorServiceFactory(1, BulkheadType.SEMAPHORE), ExecutionMode.CALLER_THREAD, 0);
+	}
+
+	@Test
+	public void testThreadPoolBulkhead() throws Exception {
+		assertRejection(new DefaultExecutorServiceFactory(1, BulkheadType.THREAD_POOL) {
+			public int getQueueCapacity() {
+				return 1;
+			}
+		}, ExecutionMode.THREAD_POOL, 1);
+	}
+
+	@Test
+	public void testRejectedTrialRequestGivesItsPermitBack() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock);
+		final CommandProxy<String, String> proxy = new CommandProxy<String, String>((k) -> {
+			if (k.equals("slow")) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return "done " + k;
+		}, breaker, new DefaultExecutorServiceFactory(1, BulkheadType.SEMAPHORE), ExecutionMode.CALLER_THREAD);
+		ExecutorService callers = Executors.newCachedThreadPool();
+		try {
+			Future<String> slow = callers.submit(() -> proxy.execute("slow"));
+			assertEquals(true, started.await(5, TimeUnit.SECONDS));
+			breaker.trip();
+			clock.advance(1, TimeUnit.SECONDS);
+			assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+			// the only trial request is rejected by the bulkhead held by the slow call
+			assertEquals("fallback rejected", proxy.execute("rejected"));
+			release.countDown();
+			assertEquals("done slow", slow.get(5, TimeUnit.SECONDS));
+			assertEquals("done trial", proxy.execute("trial"));
+			assertEquals(CircuitState.CLOSED, breaker.getState());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRejectionCountedAsFault() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		TestBreaker breaker = new TestBreaker(new DefaultFaultThreshold() {
+			public int getMaxAllowableFaults() {
+				return 0;
+			}
+		});
+		final CommandProxy<String, String> proxy = new CommandProxy<String, String>((k) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "done " + k;
+		}, breaker, new DefaultExecutorServiceFactory(1, BulkheadType.SEMAPHORE, true), ExecutionMode.CALLER_THREAD);
+		ExecutorService callers = Executors.newCachedThreadPool();
+		try {
+			Future<String> slow = callers.submit(() -> proxy.execute("slow"));
+			assertEquals(true, started.await(5, TimeUnit.SECONDS));
+			// the rejected call is the one fault the circuit tolerates no more
+			assertEquals("fallback rejected", proxy.execute("rejected"));
+			assertEquals(CircuitState.OPEN, breaker.getState());
+			release.countDown();
+			assertEquals("done slow", slow.get(5, TimeUnit.SECONDS));
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	private static void assertRejection(DefaultExecutorServiceFactory factory, ExecutionMode mode, int queued)
+			throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CommandProxy<String, String> proxy = new CommandProxy<String, String>((k) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "done " + k;
+		}, new TestBreaker(), factory, mode);
+		ExecutorService callers = Executors.newCachedThreadPool();
+		try {
+			Future<String> first = callers.submit(() -> proxy.execute("first"));
+			assertEquals(true, started.await(5, TimeUnit.SECONDS));
+			Future<String> second = null;
+			if (queued > 0) {
+				second = callers.submit(() -> proxy.execute("second"));
+				long deadline = System.currentTimeMillis() + 5000;
+				while (proxy.getBulkheadMetrics().getQueueDepth() < queued && System.currentTimeMillis() < deadline)
+					TimeUnit.MILLISECONDS.sleep(10);
+				assertEquals(queued, proxy.getBulkheadMetrics().getQueueDepth());
+			}
+			assertEquals(1, proxy.getBulkheadMetrics().getActiveCalls());
+			assertEquals("fallback rejected", proxy.execute("rejected"));
+			assertEquals(1, proxy.getBulkheadMetrics().getRejectedCalls());
+			release.countDown();
+			assertEquals("done first", first.get(5, TimeUnit.SECONDS));
+			if (second != null)
+				assertEquals("done second", second.get(5, TimeUnit.SECONDS));
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<String, String> {
+
+		TestBreaker() {
+		}
+
+		TestBreaker(FaultThreshold faultThreshold) {
+			super(faultThreshold, new DefaultHealthThreshold());
+		}
+
+		TestBreaker(CircuitClock clock) {
+			super(new DefaultFaultThreshold(), new DefaultHealthThreshold() {
+				public int getDelayBetweenHealthChecks() {
+					return 1;
+				}
+
+				public int getPermittedCallsInHalfOpenState() {
+					return 1;
+				}
+			}, clock);
+		}
+
+		public String executeFallback(String k) {
+			return "fallback " + k;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
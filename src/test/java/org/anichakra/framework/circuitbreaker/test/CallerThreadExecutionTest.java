@@ -0,0 +1,131 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class CallerThreadExecutionTest {
+
+	@Test
+	public void testExecutesInCallerThread() throws CommandExecutionFailureException {
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> Thread.currentThread(),
+				new TestBreaker(), null, ExecutionMode.CALLER_THREAD);
+		assertSame(Thread.currentThread(), command.execute(0L));
+	}
+
+	@Test
+	public void testTimeoutInterruptsCallerThread() {
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(k);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return Thread.currentThread();
+		}, new TestBreaker(), null, ExecutionMode.CALLER_THREAD);
+		long start = System.currentTimeMillis();
+		try {
+			command.execute(10000L);
+			fail("The command should time out");
+		} catch (CommandExecutionFailureException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("Timed out after " + elapsed + "ms", elapsed >= 1000 && elapsed < 5000);
+		assertFalse("The interrupt of the timeout is cleared", Thread.currentThread().isInterrupted());
+		try {
+			assertSame(Thread.currentThread(), command.execute(10L));
+		} catch (CommandExecutionFailureException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testTimeoutAfterManyCalls() throws CommandExecutionFailureException {
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(k);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return Thread.currentThread();
+		}, new TestBreaker(), null, ExecutionMode.CALLER_THREAD);
+		for (int i = 0; i < 100; i++)
+			command.execute(5L);
+		long start = System.currentTimeMillis();
+		try {
+			command.execute(10000L);
+			fail("The command should time out");
+		} catch (CommandExecutionFailureException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("Timed out after " + elapsed + "ms", elapsed >= 1000 && elapsed < 5000);
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testClosedCircuitCallAllocatesNothing() throws CommandExecutionFailureException {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> Thread.currentThread(),
+				new TestBreaker(), null, ExecutionMode.CALLER_THREAD);
+		long id = Thread.currentThread().getId();
+		int calls = 100000;
+		// the allocations of the first calls, and of the JIT, are not counted
+		for (int i = 0; i < 3 * calls; i++)
+			command.execute(0L);
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < calls; i++)
+			command.execute(0L);
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		// a new timeout of the timer now and then is tolerated, one per call is not
+		assertTrue("Allocated " + allocated + " bytes in " + calls + " calls", allocated < calls);
+	}
+
+	@Test
+	public void testFaultInCallerThread() {
+		TestBreaker breaker = new TestBreaker();
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> {
+			throw new MockServiceSystemException("fault");
+		}, breaker, null, ExecutionMode.CALLER_THREAD);
+		try {
+			command.execute(0L);
+			fail("The fault should be thrown");
+		} catch (CommandExecutionFailureException e) {
+			assertEquals(MockServiceSystemException.class, e.getCause().getClass());
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Long, Thread> {
+
+		public Thread executeFallback(Long k) {
+			return null;
+		}
+
+		public int invocationTimeout() {
+			return 1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventListener;
+import org.anichakra.framework.circuitbreaker.api.CircuitEventType;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitEventBus;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class CircuitEventTest {
+
+	@Test
+	public void testSlowListenerMakesEventsDropped() throws InterruptedException {
+		CircuitEventBus bus = new CircuitEventBus(4);
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockingQueue<CircuitEventType> received = new LinkedBlockingQueue<CircuitEventType>();
+		bus.subscribe(null, (event) -> {
+			received.add(event.getType());
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try {
+			assertTrue(bus.publish("slow", CircuitEventType.FAILED, null));
+			assertEquals(CircuitEventType.FAILED, received.poll(5, TimeUnit.SECONDS));
+			// the listener is blocked on the first event which is still in the ring
+			for (int i = 0; i < 3; i++)
+				assertTrue(bus.publish("slow", CircuitEventType.TIMED_OUT, null));
+			assertFalse(bus.publish("slow", CircuitEventType.REJECTED, null));
+			assertEquals(1, bus.getDroppedEvents());
+			release.countDown();
+			for (int i = 0; i < 3; i++)
+				assertEquals(CircuitEventType.TIMED_OUT, received.poll(5, TimeUnit.SECONDS));
+		} finally {
+			bus.close();
+		}
+	}
+
+	@Test
+	public void testTransitionsAndOutcomesArePublished() throws InterruptedException {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("events", new TestCircuit());
+		final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+		CircuitEventListener listener = (event) -> received.add(event.getCircuitName() + ":" + event.getType());
+		registry.subscribe("events", listener);
+		try {
+			Command<Integer, Integer> command = registry.discover("events");
+			for (int i = 0; i < 3; i++)
+				execute(command, -1);
+			execute(command, 1);
+			List<String> events = new ArrayList<String>();
+			for (int i = 0; i < 5; i++)
+				events.add(received.poll(5, TimeUnit.SECONDS));
+			assertEquals("[events:FAILED, events:FAILED, events:FAILED, events:TRIPPED, events:SHORT_CIRCUITED]",
+					events.toString());
+		} finally {
+			registry.unsubscribe(listener);
+		}
+	}
+
+	private static void execute(Command<Integer, Integer> command, int k) {
+		try {
+			command.execute(k);
+		} catch (CommandExecutionFailureException e) {
+			// below the fault threshold
+		}
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				if (k < 0)
+					throw new MockServiceSystemException("fault");
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new AbstractCircuitBreaker<Integer, Integer>(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold()) {
+
+				public Integer executeFallback(Integer k) {
+					return 0;
+				}
+
+				protected Class<? extends Exception> getFaultType() {
+					return MockServiceSystemException.class;
+				}
+			};
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+	}
+}
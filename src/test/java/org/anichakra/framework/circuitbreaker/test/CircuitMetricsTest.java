@@ -0,0 +1,107 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class CircuitMetricsTest {
+
+	@Test
+	public void testOutcomesAreCounted() throws CommandExecutionFailureException {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("metrics", new TestCircuit());
+		Command<Integer, Integer> command = registry.discover("metrics");
+		for (int i = 0; i < 10; i++)
+			assertEquals(Integer.valueOf(i), command.execute(i));
+		for (int i = 0; i < 2; i++) {
+			try {
+				command.execute(-1);
+				fail("The fault should be thrown");
+			} catch (CommandExecutionFailureException e) {
+				// below the fault threshold
+			}
+		}
+		// the third fault trips the circuit
+		assertEquals(Integer.valueOf(0), command.execute(-1));
+		assertEquals(Integer.valueOf(0), command.execute(1));
+		assertEquals(Integer.valueOf(0), command.execute(2));
+
+		CircuitMetrics metrics = registry.getMetrics("metrics");
+		assertEquals(Duration.ofSeconds(30), metrics.getWindow());
+		assertEquals(10, metrics.getNumberOfSuccessfulCalls());
+		assertEquals(3, metrics.getNumberOfFailedCalls());
+		assertEquals(0, metrics.getNumberOfTimedOutCalls());
+		assertEquals(13, metrics.getNumberOfCalls());
+		assertEquals(2, metrics.getNumberOfShortCircuitedCalls());
+		assertEquals(0, metrics.getNumberOfRejectedCalls());
+		assertEquals(3, metrics.getNumberOfFallbackCalls());
+		assertTrue(metrics.getLatency(99).compareTo(metrics.getLatency(50)) >= 0);
+		assertTrue(metrics.getLatency(100).compareTo(Duration.ZERO) > 0);
+		assertNull(registry.getMetrics("unknown"));
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				if (k < 0)
+					throw new MockServiceSystemException("fault");
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+
+		public int getMetricsWindowSize() {
+			return 30;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return 0;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
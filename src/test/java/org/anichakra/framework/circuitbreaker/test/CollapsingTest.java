@@ -0,0 +1,183 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.AsyncCommand;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class CollapsingTest {
+
+	private static final int CALLERS = 20;
+
+	@Test
+	public void testEqualInputsShareOneCall() throws Exception {
+		TestCircuit circuit = new TestCircuit(false);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("collapsed", circuit);
+		Command<Integer, Integer> command = registry.discover("collapsed");
+		List<Future<Integer>> results = callConcurrently(registry, "collapsed", circuit, command);
+		for (Future<Integer> result : results)
+			assertEquals(Integer.valueOf(7), result.get());
+		assertEquals(1, circuit.calls.get());
+		CircuitMetrics metrics = registry.getMetrics("collapsed");
+		assertEquals(1, metrics.getNumberOfSuccessfulCalls());
+		assertEquals(CALLERS - 1, metrics.getNumberOfCollapsedCalls());
+
+		// the next call is not in flight with any other
+		assertEquals(Integer.valueOf(8), command.execute(8));
+		assertEquals(2, circuit.calls.get());
+	}
+
+	@Test
+	public void testFailureIsOneFault() throws Exception {
+		TestCircuit circuit = new TestCircuit(true);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("collapsedFailure", circuit);
+		Command<Integer, Integer> command = registry.discover("collapsedFailure");
+		List<Future<Integer>> results = callConcurrently(registry, "collapsedFailure", circuit, command);
+		for (Future<Integer> result : results) {
+			try {
+				result.get();
+				fail("The fault should be thrown");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof CommandExecutionFailureException);
+				assertEquals("Exception calling execute method with input:7", e.getCause().getMessage());
+			}
+		}
+		assertEquals(1, circuit.calls.get());
+		assertEquals(1, registry.getMetrics("collapsedFailure").getNumberOfFailedCalls());
+		assertEquals(CircuitState.CLOSED, circuit.breaker.getState());
+	}
+
+	@Test
+	public void testAsyncCallsShareOneCall() throws Exception {
+		TestCircuit circuit = new TestCircuit(false);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("collapsedAsync", circuit);
+		AsyncCommand<Integer, Integer> command = registry.discoverAsync("collapsedAsync");
+		CompletableFuture<Integer> first = command.executeAsync(7);
+		circuit.entered.await(5, TimeUnit.SECONDS);
+		CompletableFuture<Integer> second = command.executeAsync(7);
+		circuit.release.countDown();
+		assertEquals(Integer.valueOf(7), first.get());
+		assertEquals(Integer.valueOf(7), second.get());
+		assertEquals(1, circuit.calls.get());
+	}
+
+	/**
+	 * Calls the command with the same input from many threads and lets the
+	 * call in flight complete once all the other calls wait for it
+	 */
+	private static List<Future<Integer>> callConcurrently(CommandRegistry registry, String name,
+			TestCircuit circuit, Command<Integer, Integer> command) throws InterruptedException {
+		ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		try {
+			for (int i = 0; i < CALLERS; i++)
+				results.add(callers.submit(() -> command.execute(7)));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (registry.getMetrics(name).getNumberOfCollapsedCalls() < CALLERS - 1
+					&& System.nanoTime() < deadline)
+				TimeUnit.MILLISECONDS.sleep(5);
+			circuit.release.countDown();
+		} finally {
+			callers.shutdown();
+		}
+		return results;
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private final boolean failing;
+
+		private final TestBreaker breaker = new TestBreaker();
+
+		TestCircuit(boolean failing) {
+			this.failing = failing;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				if (failing)
+					throw new MockServiceSystemException("fault");
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return breaker;
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(CALLERS);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.THREAD_POOL;
+		}
+
+		public boolean isRequestCollapsingEnabled() {
+			return true;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ConcurrencyLimit;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.AdaptiveConcurrencyLimiter;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultConcurrencyLimit;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class ConcurrencyLimitTest {
+
+	@Test
+	public void testCallsAboveTheLimitAreLimited() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(limit(3, 3));
+		for (int i = 0; i < 3; i++)
+			assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		limiter.release();
+		assertTrue(limiter.tryAcquire());
+		assertEquals(3, limiter.getInFlightCalls());
+		assertEquals(1, limiter.getLimitedCalls());
+	}
+
+	@Test
+	public void testLimitFollowsTheLatency() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new DefaultConcurrencyLimit());
+		// the limit is fully used while the latency stays the same, so it grows
+		for (int i = 0; i < 50; i++) {
+			fill(limiter);
+			limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		int grown = limiter.getLimit();
+		assertTrue("Limit: " + grown, grown > 20);
+
+		// the latency gets much higher, so the limit shrinks
+		for (int i = 0; i < 50; i++) {
+			fill(limiter);
+			limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		int shrunk = limiter.getLimit();
+		assertTrue("Limit: " + shrunk, shrunk < grown);
+
+		drain(limiter);
+		limiter.onDrop();
+		assertTrue(limiter.getLimit() < shrunk);
+	}
+
+	@Test
+	public void testUnusedLimitDoesNotGrow() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new DefaultConcurrencyLimit());
+		for (int i = 0; i < 100; i++)
+			limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10));
+		assertEquals(20, limiter.getLimit());
+	}
+
+	@Test
+	public void testLimitedCallsAreAnsweredByFallback() throws Exception {
+		TestCircuit circuit = new TestCircuit();
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("limited", circuit);
+		ExecutorService callers = Executors.newFixedThreadPool(5);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 5; i++) {
+				final int k = i + 1;
+				results.add(callers.submit(() -> handle.execute(k)));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (handle.getConcurrencyLimitMetrics().getLimitedCalls() < 3 && System.nanoTime() < deadline)
+				TimeUnit.MILLISECONDS.sleep(5);
+			circuit.release.countDown();
+			int fallbacks = 0;
+			for (Future<Integer> result : results) {
+				if (result.get() == -1)
+					fallbacks++;
+			}
+			assertEquals(3, fallbacks);
+		} finally {
+			callers.shutdown();
+		}
+		assertEquals(2, circuit.calls.get());
+		assertEquals(3, handle.getMetrics().getNumberOfLimitedCalls());
+		assertEquals(CircuitState.CLOSED, handle.getState());
+		assertEquals(0, handle.getConcurrencyLimitMetrics().getInFlightCalls());
+		registry.close();
+	}
+
+	private static void fill(AdaptiveConcurrencyLimiter limiter) {
+		while (limiter.tryAcquire())
+			;
+	}
+
+	private static void drain(AdaptiveConcurrencyLimiter limiter) {
+		while (limiter.getInFlightCalls() > 0)
+			limiter.release();
+	}
+
+	private static ConcurrencyLimit limit(int initialLimit, int maximumLimit) {
+		return new DefaultConcurrencyLimit() {
+			public int getInitialLimit() {
+				return initialLimit;
+			}
+
+			public int getMaximumLimit() {
+				return maximumLimit;
+			}
+		};
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(10);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.THREAD_POOL;
+		}
+
+		public ConcurrencyLimit getConcurrencyLimit() {
+			return limit(2, 2);
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 0;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.anichakra.framework.circuitbreaker.api.SlidingWindowType;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CountBasedOutcomeWindow;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFailureRateThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.TimeBasedOutcomeWindow;
+import org.anichakra.framework.circuitbreaker.test.mock.MockRequest;
+import org.anichakra.framework.circuitbreaker.test.mock.MockResponse;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class FailureRateThresholdTest {
+
+	@Test
+	public void testCountBasedWindowReplacesOldestOutcome() {
+		CountBasedOutcomeWindow window = new CountBasedOutcomeWindow(4);
+		window.record(true, 0);
+		window.record(true, 0);
+		window.record(false, 0);
+		assertEquals(3, window.getNumberOfCalls(0));
+		assertEquals(2, window.getNumberOfFailedCalls(0));
+		window.record(false, 0);
+		window.record(false, 0);
+		assertEquals(4, window.getNumberOfCalls(0));
+		assertEquals(1, window.getNumberOfFailedCalls(0));
+		window.clear();
+		assertEquals(0, window.getNumberOfCalls(0));
+		assertEquals(0, window.getNumberOfFailedCalls(0));
+	}
+
+	@Test
+	public void testTimeBasedWindowSlides() {
+		TimeBasedOutcomeWindow window = new TimeBasedOutcomeWindow(10);
+		long start = 1000000;
+		window.record(true, start);
+		window.record(false, start + 5000);
+		assertEquals(2, window.getNumberOfCalls(start + 9999));
+		assertEquals(1, window.getNumberOfFailedCalls(start + 9999));
+		assertEquals(1, window.getNumberOfCalls(start + 10000));
+		assertEquals(0, window.getNumberOfFailedCalls(start + 10000));
+	}
+
+	@Test
+	public void testTripsOnFailureRate() {
+		TestBreaker breaker = new TestBreaker(SlidingWindowType.COUNT_BASED);
+		MockServiceSystemException fault = new MockServiceSystemException("fault");
+		for (int i = 0; i < 4; i++)
+			breaker.recordSuccess();
+		for (int i = 0; i < 5; i++)
+			assertFalse("minimum number of calls not reached", breaker.checkFault(fault));
+		// 5 failures in 10 calls is exactly the threshold
+		assertFalse(breaker.checkFault(new IllegalStateException("not a fault")));
+		assertTrue(breaker.checkFault(fault));
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<MockRequest, MockResponse> {
+
+		TestBreaker(final SlidingWindowType type) {
+			super(new DefaultFailureRateThreshold() {
+				public int getMinimumNumberOfCalls() {
+					return 10;
+				}
+
+				public SlidingWindowType getSlidingWindowType() {
+					return type;
+				}
+
+				public int getSlidingWindowSize() {
+					return 20;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public MockResponse executeFallback(MockRequest k) {
+			return new MockResponse("fallback");
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+
+		protected void executeHealthCheck(int counter) {
+		}
+	}
+}
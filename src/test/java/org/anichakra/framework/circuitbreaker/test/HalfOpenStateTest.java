@@ -0,0 +1,193 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.SystemClock;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockRequest;
+import org.anichakra.framework.circuitbreaker.test.mock.MockResponse;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class HalfOpenStateTest {
+
+	private static final MockServiceSystemException FAULT = new MockServiceSystemException("fault");
+
+	@Test
+	public void testTrialRequestsCloseTheCircuit() throws InterruptedException {
+		TestBreaker breaker = trippedBreaker();
+		assertFalse(breaker.tryAcquirePermission());
+		awaitState(breaker, CircuitState.HALF_OPEN);
+		assertTrue(breaker.tryAcquirePermission());
+		assertTrue(breaker.tryAcquirePermission());
+		assertFalse("only two trial requests are permitted", breaker.tryAcquirePermission());
+		breaker.recordSuccess();
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		breaker.recordSuccess();
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+		assertFalse("faults before the trip are forgotten", breaker.checkFault(FAULT));
+	}
+
+	@Test
+	public void testFaultyTrialRequestOpensTheCircuit() throws InterruptedException {
+		TestBreaker breaker = trippedBreaker();
+		awaitState(breaker, CircuitState.HALF_OPEN);
+		assertTrue(breaker.tryAcquirePermission());
+		assertTrue(breaker.checkFault(FAULT));
+		breaker.trip();
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquirePermission());
+		awaitState(breaker, CircuitState.HALF_OPEN);
+	}
+
+	@Test
+	public void testOutcomesOfEarlierGenerationsAreIgnored() throws InterruptedException {
+		TestBreaker breaker = new TestBreaker();
+		long beforeTrip = breaker.acquirePermission();
+		assertTrue(beforeTrip >= 0);
+		breaker.checkFault(FAULT);
+		breaker.checkFault(FAULT);
+		assertTrue(breaker.checkFault(FAULT));
+		breaker.trip();
+		assertTrue(breaker.getOpenSince() > 0);
+		awaitState(breaker, CircuitState.HALF_OPEN);
+		long trial = breaker.acquirePermission();
+		assertTrue(trial > beforeTrip);
+		// a slow call permitted before the trip neither closes nor opens the circuit
+		breaker.recordSuccess(beforeTrip);
+		breaker.recordSuccess(beforeTrip);
+		assertFalse(breaker.checkFault(FAULT, beforeTrip));
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		breaker.recordSuccess(trial);
+		breaker.recordSuccess(breaker.acquirePermission());
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getOpenSince());
+	}
+
+	@Test
+	public void testConcurrentTripsOpenOnce() throws InterruptedException {
+		TestBreaker breaker = new TestBreaker();
+		AtomicInteger opened = new AtomicInteger();
+		breaker.addStateTransitionListener((from, to) -> {
+			if (to == CircuitState.OPEN)
+				opened.incrementAndGet();
+		});
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[16];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				breaker.trip();
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(1, opened.get());
+	}
+
+	@Test
+	public void testLeakedTrialPermitReopensTheCircuit() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock);
+		breaker.trip();
+		clock.advance(1, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		// the outcome of the first trial request never comes back
+		assertTrue(breaker.acquirePermission() >= 0);
+		clock.advance(400, TimeUnit.MILLISECONDS);
+		long trial = breaker.acquirePermission();
+		assertTrue(trial >= 0);
+		clock.advance(499, TimeUnit.MILLISECONDS);
+		assertEquals("a trial request is still within its timeout", CircuitState.HALF_OPEN, breaker.getState());
+		clock.advance(1, TimeUnit.MILLISECONDS);
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		clock.advance(1, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	public void testIdleHalfOpenCircuitStaysHalfOpen() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock);
+		breaker.trip();
+		clock.advance(1, TimeUnit.SECONDS);
+		clock.advance(10, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		// a trial request which has succeeded is not running any more
+		breaker.recordSuccess(breaker.acquirePermission());
+		clock.advance(10, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+	}
+
+	private static TestBreaker trippedBreaker() {
+		TestBreaker breaker = new TestBreaker();
+		breaker.checkFault(FAULT);
+		breaker.checkFault(FAULT);
+		assertTrue(breaker.checkFault(FAULT));
+		breaker.trip();
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	private static void awaitState(TestBreaker breaker, CircuitState state) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (breaker.getState() != state && System.currentTimeMillis() < deadline)
+			TimeUnit.MILLISECONDS.sleep(50);
+		assertEquals(state, breaker.getState());
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<MockRequest, MockResponse> {
+
+		TestBreaker() {
+			this(SystemClock.INSTANCE);
+		}
+
+		TestBreaker(CircuitClock clock) {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold() {
+				public int getDelayBetweenHealthChecks() {
+					return 1;
+				}
+
+				public int getPermittedCallsInHalfOpenState() {
+					return 2;
+				}
+			}, clock);
+		}
+
+		public Duration getInvocationTimeout() {
+			return Duration.ofMillis(500);
+		}
+
+		public MockResponse executeFallback(MockRequest k) {
+			return new MockResponse("fallback");
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
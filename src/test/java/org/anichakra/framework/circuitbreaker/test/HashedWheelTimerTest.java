@@ -0,0 +1,62 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.impl.HashedWheelTimer;
+import org.anichakra.framework.circuitbreaker.impl.HashedWheelTimer.Timeout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+	private HashedWheelTimer timer;
+
+	@Before
+	public void initialize() {
+		timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 64);
+	}
+
+	@After
+	public void stop() {
+		timer.stop();
+	}
+
+	@Test
+	public void testTimeoutFiresAfterDelay() throws InterruptedException {
+		final CountDownLatch fired = new CountDownLatch(1);
+		long start = System.nanoTime();
+		Timeout timeout = timer.newTimeout(fired::countDown, 150, TimeUnit.MILLISECONDS);
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Fired after " + elapsed + "ms", elapsed >= 150);
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+	}
+
+	@Test
+	public void testManyTimeoutsWithCancellation() throws InterruptedException {
+		final int count = 200000;
+		final AtomicInteger fired = new AtomicInteger();
+		List<Timeout> timeouts = new ArrayList<Timeout>(count);
+		for (int i = 0; i < count; i++)
+			timeouts.add(timer.newTimeout(fired::incrementAndGet, 500 + i % 250, TimeUnit.MILLISECONDS));
+		for (int i = 0; i < count; i += 2)
+			assertTrue(timeouts.get(i).cancel());
+		long deadline = System.currentTimeMillis() + 10000;
+		while (timer.getPendingTimeouts() > 0 && System.currentTimeMillis() < deadline)
+			TimeUnit.MILLISECONDS.sleep(20);
+		assertEquals(0, timer.getPendingTimeouts());
+		assertEquals(count / 2, fired.get());
+		for (int i = 0; i < count; i++)
+			assertEquals(i % 2 == 1, timeouts.get(i).isExpired());
+	}
+}
@@ -0,0 +1,234 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitMetrics;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.HedgePolicy;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHedgePolicy;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class HedgingTest {
+
+	@Test
+	public void testSlowCallIsHedged() throws Exception {
+		TestCircuit circuit = new TestCircuit(policy(1), ExecutionMode.THREAD_POOL);
+		circuit.slowCalls.set(1);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("hedged", circuit);
+		long start = System.nanoTime();
+		assertEquals(Integer.valueOf(7), handle.execute(7));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+		// the slow attempt is cancelled
+		assertTrue(circuit.interrupted.await(1, TimeUnit.SECONDS));
+		assertEquals(2, circuit.calls.get());
+		CircuitMetrics metrics = handle.getMetrics();
+		assertEquals(1, metrics.getNumberOfHedgedCalls());
+		assertEquals(1, metrics.getNumberOfSuccessfulCalls());
+		assertEquals(0, metrics.getNumberOfFailedCalls());
+		assertEquals(0, metrics.getNumberOfTimedOutCalls());
+		assertEquals(CircuitState.CLOSED, handle.getState());
+		registry.close();
+	}
+
+	@Test
+	public void testSlowCallIsHedgedAsync() throws Exception {
+		TestCircuit circuit = new TestCircuit(policy(1), ExecutionMode.THREAD_POOL);
+		circuit.slowCalls.set(1);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("hedgedAsync", circuit);
+		assertEquals(Integer.valueOf(7), handle.executeAsync(7).get(1, TimeUnit.SECONDS));
+		assertTrue(circuit.interrupted.await(1, TimeUnit.SECONDS));
+		assertEquals(1, handle.getMetrics().getNumberOfHedgedCalls());
+		assertEquals(0, handle.getMetrics().getNumberOfFailedCalls());
+		assertEquals(CircuitState.CLOSED, handle.getState());
+		registry.close();
+	}
+
+	@Test
+	public void testHedgesAreBoundedByTheBudget() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(policy(0), ExecutionMode.THREAD_POOL);
+		circuit.slowCalls.set(1);
+		circuit.slowness = Duration.ofMillis(100);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("budget", circuit);
+		assertEquals(Integer.valueOf(7), handle.execute(7));
+		assertEquals(1, circuit.calls.get());
+		assertEquals(0, handle.getMetrics().getNumberOfHedgedCalls());
+		registry.close();
+	}
+
+	@Test
+	public void testNoHedgeBeforeEnoughCalls() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(new DefaultHedgePolicy(), ExecutionMode.THREAD_POOL);
+		circuit.slowCalls.set(1);
+		circuit.slowness = Duration.ofMillis(100);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("warmingUp", circuit);
+		assertEquals(Integer.valueOf(7), handle.execute(7));
+		assertEquals(1, circuit.calls.get());
+		assertEquals(0, handle.getMetrics().getNumberOfHedgedCalls());
+		registry.close();
+	}
+
+	@Test
+	public void testBothAttemptsFailAsOneFault() {
+		TestCircuit circuit = new TestCircuit(policy(1), ExecutionMode.THREAD_POOL);
+		circuit.slowCalls.set(Integer.MAX_VALUE);
+		circuit.slowness = Duration.ofMillis(100);
+		circuit.failing = true;
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("failing", circuit);
+		try {
+			handle.execute(7);
+			fail("The failure should be thrown");
+		} catch (CommandExecutionFailureException e) {
+			assertTrue(e.getCause() instanceof MockServiceSystemException);
+			assertEquals(2, circuit.calls.get());
+			assertEquals(1, handle.getMetrics().getNumberOfHedgedCalls());
+			assertEquals(1, handle.getMetrics().getNumberOfFailedCalls());
+		}
+		registry.close();
+	}
+
+	@Test
+	public void testErrorOfTheCommandIsThrown() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(policy(1), ExecutionMode.THREAD_POOL);
+		circuit.error = new AssertionError("broken");
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("error", circuit);
+		long start = System.nanoTime();
+		try {
+			handle.execute(7);
+			fail("The error should be thrown");
+		} catch (AssertionError e) {
+			assertEquals("broken", e.getMessage());
+		}
+		assertTrue("The call does not wait for its timeout",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+		registry.close();
+	}
+
+	private static HedgePolicy policy(double ratio) {
+		return new DefaultHedgePolicy() {
+			public Duration getMinimumDelay() {
+				return Duration.ofMillis(20);
+			}
+
+			public int getMinimumNumberOfCalls() {
+				return 0;
+			}
+
+			public double getHedgeBudgetRatio() {
+				return ratio;
+			}
+		};
+	}
+
+	/**
+	 * Makes the first calls asked slow, and fails them once they are over
+	 * when asked to
+	 */
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final AtomicInteger slowCalls = new AtomicInteger();
+
+		private final CountDownLatch interrupted = new CountDownLatch(1);
+
+		private final HedgePolicy hedgePolicy;
+
+		private final ExecutionMode executionMode;
+
+		private volatile Duration slowness = Duration.ofSeconds(2);
+
+		private volatile boolean failing;
+
+		private volatile Error error;
+
+		TestCircuit(HedgePolicy hedgePolicy, ExecutionMode executionMode) {
+			this.hedgePolicy = hedgePolicy;
+			this.executionMode = executionMode;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				if (error != null)
+					throw error;
+				if (slowCalls.getAndDecrement() > 0) {
+					try {
+						Thread.sleep(slowness.toMillis());
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+						throw new MockServiceSystemException("interrupted");
+					}
+					if (failing)
+						throw new MockServiceSystemException("fault");
+				}
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(4);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return executionMode;
+		}
+
+		public HedgePolicy getHedgePolicy() {
+			return hedgePolicy;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 100;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		public Duration getInvocationTimeout() {
+			return Duration.ofSeconds(5);
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
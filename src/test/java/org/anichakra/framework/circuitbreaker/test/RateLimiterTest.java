@@ -0,0 +1,178 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.RateLimit;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.TokenBucketRateLimiter;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+	@Test
+	public void testBurstThenRate() {
+		VirtualClock clock = new VirtualClock();
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(rate(10, 5, Duration.ZERO), clock);
+		assertEquals(5, limiter.getAvailablePermits());
+		for (int i = 0; i < 5; i++)
+			assertEquals(0, limiter.reserve());
+		assertEquals(-1, limiter.reserve());
+		assertEquals(1, limiter.getThrottledCalls());
+
+		clock.advance(100, TimeUnit.MILLISECONDS);
+		assertEquals(1, limiter.getAvailablePermits());
+		assertEquals(0, limiter.reserve());
+		assertEquals(-1, limiter.reserve());
+
+		// the bucket never holds more than the burst
+		clock.advance(1, TimeUnit.HOURS);
+		assertEquals(5, limiter.getAvailablePermits());
+	}
+
+	@Test
+	public void testRateChangesAtRuntime() {
+		VirtualClock clock = new VirtualClock();
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(rate(10, 1, Duration.ZERO), clock);
+		assertEquals(0, limiter.reserve());
+		// the permit taken before keeps its interval
+		limiter.setPermitsPerSecond(100);
+		clock.advance(100, TimeUnit.MILLISECONDS);
+		assertEquals(0, limiter.reserve());
+		limiter.setBurstSize(3);
+		clock.advance(30, TimeUnit.MILLISECONDS);
+		assertEquals(3, limiter.getAvailablePermits());
+		assertEquals(100, limiter.getPermitsPerSecond(), 0);
+	}
+
+	@Test
+	public void testCallsWaitForTheirPermitInOrder() {
+		VirtualClock clock = new VirtualClock();
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(rate(10, 1, Duration.ofMillis(250)), clock);
+		assertEquals(0, limiter.reserve());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(200), limiter.reserve());
+		assertEquals(-1, limiter.reserve());
+	}
+
+	@Test
+	public void testThrottledCallsAreNotFaults() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(rate(1, 2, Duration.ZERO));
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("throttled", circuit);
+		assertEquals(Integer.valueOf(1), handle.execute(1));
+		assertEquals(Integer.valueOf(2), handle.execute(2));
+		for (int i = 0; i < 3; i++)
+			assertEquals(Integer.valueOf(-1), handle.execute(3));
+		assertEquals(Integer.valueOf(-1), handle.executeAsync(4).join());
+		assertEquals(2, circuit.calls.get());
+		assertEquals(4, handle.getMetrics().getNumberOfThrottledCalls());
+		assertEquals(4, handle.getRateLimiter().getThrottledCalls());
+		assertEquals(CircuitState.CLOSED, handle.getState());
+		registry.close();
+	}
+
+	@Test
+	public void testCallsWaitForTheirPermit() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(rate(20, 1, Duration.ofSeconds(1)));
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("waiting", circuit);
+		long start = System.nanoTime();
+		assertEquals(Integer.valueOf(1), handle.execute(1));
+		assertEquals(Integer.valueOf(2), handle.execute(2));
+		assertEquals(Integer.valueOf(3), handle.executeAsync(3).join());
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Elapsed: " + elapsed, elapsed >= 90);
+		assertEquals(3, circuit.calls.get());
+		assertEquals(0, handle.getMetrics().getNumberOfThrottledCalls());
+		registry.close();
+	}
+
+	private static RateLimit rate(double permitsPerSecond, int burstSize, Duration maximumWait) {
+		return new RateLimit() {
+			public double getPermitsPerSecond() {
+				return permitsPerSecond;
+			}
+
+			public int getBurstSize() {
+				return burstSize;
+			}
+
+			public Duration getMaximumWait() {
+				return maximumWait;
+			}
+		};
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final RateLimit rateLimit;
+
+		TestCircuit(RateLimit rateLimit) {
+			this.rateLimit = rateLimit;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+
+		public RateLimit getRateLimit() {
+			return rateLimit;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 0;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
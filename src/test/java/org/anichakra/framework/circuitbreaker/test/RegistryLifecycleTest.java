@@ -0,0 +1,239 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.StateTransitionListener;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.SystemClock;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class RegistryLifecycleTest {
+
+	@Test
+	public void testHandleCallsTheCircuit() throws CommandExecutionFailureException {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("handle", new TestCircuit());
+		assertEquals("handle", handle.getName());
+		assertEquals(Integer.valueOf(3), handle.execute(3));
+		assertEquals(Integer.valueOf(4), handle.executeAsync(4).join());
+		assertEquals(CircuitState.CLOSED, handle.getState());
+		assertEquals(2, handle.getMetrics().getNumberOfSuccessfulCalls());
+		assertSame(handle, registry.getCircuit("handle"));
+		assertSame(handle, registry.discover("handle"));
+	}
+
+	@Test
+	public void testCircuitsAreASnapshot() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		registry.register("first", new TestCircuit());
+		registry.register("second", new TestCircuit());
+		Collection<CircuitHandle<?, ?>> circuits = registry.getCircuits();
+		registry.register("third", new TestCircuit());
+		assertEquals(2, circuits.size());
+		assertEquals(3, registry.getCircuits().size());
+		try {
+			circuits.clear();
+			fail("The snapshot should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnregisterClosesTheCircuit() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		TestCircuit circuit = new TestCircuit();
+		CircuitHandle<Integer, Integer> handle = registry.register("unregistered", circuit);
+		assertTrue(registry.unregister("unregistered"));
+		assertFalse(registry.unregister("unregistered"));
+		assertTrue(handle.isClosed());
+		assertTrue(circuit.executor.isShutdown());
+		assertNull(registry.getCircuit("unregistered"));
+		try {
+			handle.execute(1);
+			fail("A closed handle should not be called");
+		} catch (IllegalStateException | CommandExecutionFailureException e) {
+			assertTrue(e instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testClosingTheHandleUnregistersIt() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("closed", new TestCircuit());
+		handle.close();
+		handle.close();
+		assertNull(registry.getCircuit("closed"));
+		assertTrue(registry.getCircuits().isEmpty());
+	}
+
+	@Test
+	public void testRegisterAgainClosesTheReplacedCircuit() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		TestCircuit first = new TestCircuit();
+		CircuitHandle<Integer, Integer> replaced = registry.register("replaced", first);
+		CircuitHandle<Integer, Integer> handle = registry.register("replaced", new TestCircuit());
+		assertTrue(replaced.isClosed());
+		assertTrue(first.executor.isShutdown());
+		// closing the replaced handle again does not remove its successor
+		replaced.close();
+		assertSame(handle, registry.getCircuit("replaced"));
+	}
+
+	@Test
+	public void testRegisterAgainKeepsTheSharedBreakerRunning() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock);
+		registry.register("shared", new TestCircuit(breaker));
+		CircuitHandle<Integer, Integer> handle = registry.register("shared", new TestCircuit(breaker));
+		registry.register("sharing", new TestCircuit(breaker));
+		breaker.trip();
+		clock.advance(1, TimeUnit.HOURS);
+		assertEquals(1, breaker.healthChecks);
+		handle.close();
+		breaker.trip();
+		clock.advance(1, TimeUnit.HOURS);
+		assertEquals(2, breaker.healthChecks);
+		// the last circuit using the breaker shuts it down
+		registry.unregister("sharing");
+		breaker.trip();
+		clock.advance(1, TimeUnit.HOURS);
+		assertEquals(2, breaker.healthChecks);
+	}
+
+	@Test
+	public void testReplacedCircuitStopsListeningToTheBreaker() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		TestBreaker breaker = new TestBreaker(SystemClock.INSTANCE);
+		for (int i = 0; i < 3; i++)
+			registry.register("listened", new TestCircuit(breaker));
+		assertEquals(1, breaker.listeners.get());
+		registry.unregister("listened");
+		assertEquals(0, breaker.listeners.get());
+	}
+
+	@Test
+	public void testCloseTheRegistry() {
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> first = registry.register("first", new TestCircuit());
+		CircuitHandle<Integer, Integer> second = registry.register("second", new TestCircuit());
+		registry.close();
+		assertTrue(first.isClosed());
+		assertTrue(second.isClosed());
+		assertTrue(registry.getCircuits().isEmpty());
+		try {
+			registry.register("third", new TestCircuit());
+			fail("A closed registry should not register circuits");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testShutdownStopsTheRecovery() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock);
+		breaker.trip();
+		assertTrue(clock.getPendingTasks() > 0);
+		breaker.shutdown();
+		clock.advance(1, TimeUnit.HOURS);
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertEquals(0, breaker.healthChecks);
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		private final TestBreaker breaker;
+
+		TestCircuit() {
+			this(null);
+		}
+
+		TestCircuit(TestBreaker breaker) {
+			this.breaker = breaker;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> k;
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return breaker != null ? breaker : new TestBreaker(SystemClock.INSTANCE);
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(2) {
+				public ExecutorService getExecutorService() {
+					return executor;
+				}
+			};
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.THREAD_POOL;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		private volatile int healthChecks;
+
+		private final AtomicInteger listeners = new AtomicInteger();
+
+		TestBreaker(CircuitClock clock) {
+			super(new DefaultFaultThreshold(), new DefaultHealthThreshold(), clock);
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+
+		protected void executeHealthCheck(int counter) {
+			healthChecks++;
+		}
+
+		public void addStateTransitionListener(StateTransitionListener listener) {
+			super.addStateTransitionListener(listener);
+			listeners.incrementAndGet();
+		}
+
+		public void removeStateTransitionListener(StateTransitionListener listener) {
+			super.removeStateTransitionListener(listener);
+			listeners.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.CacheMetrics;
+import org.anichakra.framework.circuitbreaker.api.CachePolicy;
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.RateLimit;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+	@Test
+	public void testFreshResultSkipsTheCall() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(100, Duration.ofHours(1));
+		CommandProxy<Integer, Integer> command = new CommandProxy<Integer, Integer>("cached", circuit);
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		assertEquals(1, circuit.calls.get());
+		CacheMetrics metrics = command.getCacheMetrics();
+		assertEquals(1, metrics.getNumberOfHits());
+		assertEquals(1, metrics.getNumberOfMisses());
+		assertEquals(1, metrics.getSize());
+	}
+
+	@Test
+	public void testOldestInputsAreEvicted() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(3, Duration.ofHours(1));
+		CommandProxy<Integer, Integer> command = new CommandProxy<Integer, Integer>("evicting", circuit);
+		for (int i = 1; i <= 5; i++)
+			command.execute(i);
+		CacheMetrics metrics = command.getCacheMetrics();
+		assertEquals(3, metrics.getSize());
+		assertEquals(2, metrics.getNumberOfEvictions());
+		command.execute(5);
+		assertEquals(5, circuit.calls.get());
+		command.execute(1);
+		assertEquals(6, circuit.calls.get());
+	}
+
+	@Test
+	public void testStaleResultReplacesFallback() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(100, Duration.ZERO);
+		CommandProxy<Integer, Integer> command = new CommandProxy<Integer, Integer>("stale", circuit);
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		assertEquals(2, circuit.calls.get());
+
+		circuit.failing = true;
+		for (int i = 0; i < 2; i++) {
+			try {
+				command.execute(2);
+				fail("The fault should be thrown");
+			} catch (CommandExecutionFailureException e) {
+				// below the fault threshold
+			}
+		}
+		// the third fault trips the circuit
+		assertEquals(Integer.valueOf(-1), command.execute(2));
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		assertEquals(Integer.valueOf(-1), command.execute(3));
+		assertEquals(1, command.getCacheMetrics().getNumberOfStaleHits());
+		assertEquals(2, command.getMetrics().getNumberOfFallbackCalls());
+	}
+
+	@Test
+	public void testStaleResultIsNotServedWhenThrottled() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(100, Duration.ZERO);
+		circuit.rateLimit = new RateLimit() {
+			public double getPermitsPerSecond() {
+				return 0.001;
+			}
+
+			public int getBurstSize() {
+				return 1;
+			}
+
+			public Duration getMaximumWait() {
+				return Duration.ZERO;
+			}
+		};
+		CommandProxy<Integer, Integer> command = new CommandProxy<Integer, Integer>("throttled", circuit);
+		assertEquals(Integer.valueOf(1), command.execute(1));
+		// the circuit is closed, the external system is not known to be failing
+		assertEquals(Integer.valueOf(-1), command.execute(1));
+		assertEquals(1, circuit.calls.get());
+		assertEquals(0, command.getCacheMetrics().getNumberOfStaleHits());
+		assertEquals(1, command.getMetrics().getNumberOfFallbackCalls());
+	}
+
+	@Test
+	public void testResultsTooOldToServeAreRemoved() throws Exception {
+		TestCircuit circuit = new TestCircuit(100, Duration.ZERO, Duration.ofMillis(10));
+		CommandProxy<Integer, Integer> command = new CommandProxy<Integer, Integer>("swept", circuit);
+		for (int i = 1; i <= 3; i++)
+			command.execute(i);
+		assertEquals(3, command.getCacheMetrics().getSize());
+		// past the sweep interval of a second
+		Thread.sleep(1100);
+		command.execute(4);
+		assertEquals(1, command.getCacheMetrics().getSize());
+		assertEquals(0, command.getCacheMetrics().getNumberOfEvictions());
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final int maximumSize;
+
+		private final Duration timeToLive;
+
+		private final Duration maximumStaleness;
+
+		private volatile boolean failing;
+
+		private RateLimit rateLimit;
+
+		TestCircuit(int maximumSize, Duration timeToLive) {
+			this(maximumSize, timeToLive, Duration.ofHours(1));
+		}
+
+		TestCircuit(int maximumSize, Duration timeToLive, Duration maximumStaleness) {
+			this.maximumSize = maximumSize;
+			this.timeToLive = timeToLive;
+			this.maximumStaleness = maximumStaleness;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				if (failing)
+					throw new MockServiceSystemException("fault");
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return new TestBreaker();
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+
+		public CachePolicy getCachePolicy() {
+			return new CachePolicy() {
+				public int getMaximumSize() {
+					return maximumSize;
+				}
+
+				public Duration getTimeToLive() {
+					return timeToLive;
+				}
+
+				public Duration getMaximumStaleness() {
+					return maximumStaleness;
+				}
+			};
+		}
+
+		public RateLimit getRateLimit() {
+			return rateLimit;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
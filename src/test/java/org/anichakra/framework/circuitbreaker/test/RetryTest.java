@@ -0,0 +1,240 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.CommandExecutionFailureException;
+import org.anichakra.framework.circuitbreaker.api.CommandRegistry;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.RetryPolicy;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultRetryPolicy;
+import org.anichakra.framework.circuitbreaker.impl.RetryBudget;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class RetryTest {
+
+	@Test
+	public void testTransientFailureIsRetried() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(policy(3, 1, 10), ExecutionMode.THREAD_POOL);
+		circuit.failures.set(2);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("retried", circuit);
+		assertEquals(Integer.valueOf(5), handle.execute(5));
+		assertEquals(3, circuit.calls.get());
+		assertEquals(2, handle.getMetrics().getNumberOfRetries());
+		assertEquals(2, handle.getMetrics().getNumberOfFailedCalls());
+		assertEquals(1, handle.getMetrics().getNumberOfSuccessfulCalls());
+		registry.close();
+	}
+
+	@Test
+	public void testTransientFailureIsRetriedAsync() {
+		TestCircuit circuit = new TestCircuit(policy(3, 1, 10), ExecutionMode.CALLER_THREAD);
+		circuit.failures.set(2);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("retriedAsync", circuit);
+		assertEquals(Integer.valueOf(5), handle.executeAsync(5).join());
+		assertEquals(3, circuit.calls.get());
+		assertEquals(2, handle.getMetrics().getNumberOfRetries());
+		registry.close();
+	}
+
+	@Test
+	public void testRetriesAreBoundedByTheBudget() throws CommandExecutionFailureException {
+		TestCircuit circuit = new TestCircuit(policy(10, 0.5, 0), ExecutionMode.CALLER_THREAD);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("budget", circuit);
+		for (int i = 1; i <= 4; i++)
+			handle.execute(i);
+		circuit.failures.set(Integer.MAX_VALUE);
+		try {
+			handle.execute(5);
+			fail("The failure should be thrown");
+		} catch (CommandExecutionFailureException e) {
+			// 2 retries for 4 successful calls
+			assertEquals(4 + 3, circuit.calls.get());
+		}
+		try {
+			handle.executeAsync(6).join();
+			fail("The failure should be thrown");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof CommandExecutionFailureException);
+			assertEquals(4 + 3 + 1, circuit.calls.get());
+		}
+		registry.close();
+	}
+
+	@Test
+	public void testFailureIsNotRetryable() {
+		TestCircuit circuit = new TestCircuit(new DefaultRetryPolicy() {
+			public Duration getInitialBackoff() {
+				return Duration.ofMillis(1);
+			}
+
+			public boolean isRetryable(Exception exception) {
+				return !(exception instanceof MockServiceSystemException);
+			}
+		}, ExecutionMode.THREAD_POOL);
+		circuit.failures.set(1);
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("notRetryable", circuit);
+		try {
+			handle.execute(1);
+			fail("The failure should be thrown");
+		} catch (CommandExecutionFailureException e) {
+			assertEquals(1, circuit.calls.get());
+		}
+		registry.close();
+	}
+
+	@Test
+	public void testNoRetryOnceTheCircuitIsOpen() {
+		TestCircuit circuit = new TestCircuit(policy(3, 1, 10), ExecutionMode.CALLER_THREAD);
+		circuit.failures.set(Integer.MAX_VALUE);
+		circuit.tripping = true;
+		CommandRegistry registry = new DefaultCommandRegistry();
+		CircuitHandle<Integer, Integer> handle = registry.register("open", circuit);
+		try {
+			handle.execute(1);
+			fail("The failure should be thrown");
+		} catch (CommandExecutionFailureException e) {
+			assertEquals(1, circuit.calls.get());
+			assertEquals(CircuitState.OPEN, handle.getState());
+			assertEquals(0, handle.getMetrics().getNumberOfRetries());
+		}
+		registry.close();
+	}
+
+	@Test
+	public void testBackoffGrowsWithJitter() {
+		RetryBudget budget = new RetryBudget(new DefaultRetryPolicy());
+		for (int i = 0; i < 100; i++) {
+			long first = budget.backoffNanos(1);
+			assertTrue(first >= Duration.ofMillis(50).toNanos() && first <= Duration.ofMillis(100).toNanos());
+			long third = budget.backoffNanos(3);
+			assertTrue(third >= Duration.ofMillis(200).toNanos() && third <= Duration.ofMillis(400).toNanos());
+			long capped = budget.backoffNanos(10);
+			assertTrue(capped >= Duration.ofSeconds(1).toNanos() && capped <= Duration.ofSeconds(2).toNanos());
+		}
+	}
+
+	@Test
+	public void testBudgetBeforeTheOriginOfNanoTime() {
+		RetryBudget budget = new RetryBudget(policy(3, 1, 0));
+		// the milliseconds of System.nanoTime() may be negative
+		long now = -1234567;
+		assertFalse(budget.tryRetry(now));
+		budget.onSuccess(now);
+		assertTrue(budget.tryRetry(now + 1));
+		assertFalse(budget.tryRetry(now + 2));
+	}
+
+	private static RetryPolicy policy(int maxAttempts, double ratio, int minimumRetriesPerSecond) {
+		return new DefaultRetryPolicy() {
+			public int getMaxAttempts() {
+				return maxAttempts;
+			}
+
+			public Duration getInitialBackoff() {
+				return Duration.ofMillis(1);
+			}
+
+			public double getRetryBudgetRatio() {
+				return ratio;
+			}
+
+			public int getMinimumRetriesPerSecond() {
+				return minimumRetriesPerSecond;
+			}
+		};
+	}
+
+	/**
+	 * Fails as many calls as asked, and trips its own circuit during the
+	 * failing call when asked to
+	 */
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private final RetryPolicy retryPolicy;
+
+		private final ExecutionMode executionMode;
+
+		private final TestBreaker breaker = new TestBreaker();
+
+		private volatile boolean tripping;
+
+		TestCircuit(RetryPolicy retryPolicy, ExecutionMode executionMode) {
+			this.retryPolicy = retryPolicy;
+			this.executionMode = executionMode;
+		}
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> {
+				calls.incrementAndGet();
+				if (failures.getAndDecrement() > 0) {
+					if (tripping)
+						breaker.trip();
+					throw new MockServiceSystemException("fault");
+				}
+				return k;
+			};
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return breaker;
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(2);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return executionMode;
+		}
+
+		public RetryPolicy getRetryPolicy() {
+			return retryPolicy;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker() {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 100;
+				}
+			}, new DefaultHealthThreshold());
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.CircuitStateSlot;
+import org.anichakra.framework.circuitbreaker.impl.CircuitStateStore;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.MappedCircuitStateStore;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Two stores mapping the same file stand for two processes of a host.
+ */
+public class SharedStateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTripIsShared() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore first = new MappedCircuitStateStore(file);
+				MappedCircuitStateStore second = new MappedCircuitStateStore(file)) {
+			TestBreaker a = new TestBreaker(new VirtualClock(), first);
+			TestBreaker b = new TestBreaker(new VirtualClock(), second);
+			List<CircuitState> transitions = new CopyOnWriteArrayList<CircuitState>();
+			b.addStateTransitionListener((from, to) -> transitions.add(to));
+			for (int i = 0; i < 3; i++)
+				assertFalse(a.checkFault(new MockServiceSystemException("fault")));
+			assertTrue(a.checkFault(new MockServiceSystemException("fault")));
+			a.trip();
+			assertEquals(CircuitState.OPEN, b.getState());
+			assertEquals(-1, b.acquirePermission());
+			assertEquals(1, transitions.size());
+			assertEquals(CircuitState.OPEN, transitions.get(0));
+		}
+	}
+
+	@Test
+	public void testFaultsAreCountedTogether() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore first = new MappedCircuitStateStore(file);
+				MappedCircuitStateStore second = new MappedCircuitStateStore(file)) {
+			TestBreaker a = new TestBreaker(new VirtualClock(), first);
+			TestBreaker b = new TestBreaker(new VirtualClock(), second);
+			assertFalse(a.checkFault(new MockServiceSystemException("fault")));
+			assertFalse(b.checkFault(new MockServiceSystemException("fault")));
+			assertFalse(a.checkFault(new MockServiceSystemException("fault")));
+			assertTrue(b.checkFault(new MockServiceSystemException("fault")));
+		}
+	}
+
+	@Test
+	public void testRecoveryIsTakenOver() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore first = new MappedCircuitStateStore(file);
+				MappedCircuitStateStore second = new MappedCircuitStateStore(file)) {
+			TestBreaker a = new TestBreaker(new VirtualClock(), first);
+			VirtualClock clock = new VirtualClock();
+			TestBreaker b = new TestBreaker(clock, second);
+			a.trip();
+			// the process which tripped the circuit is gone before its recovery
+			a.shutdown();
+			assertEquals(-1, b.acquirePermission());
+			clock.advance(1, TimeUnit.SECONDS);
+			assertEquals(CircuitState.HALF_OPEN, b.getState());
+			long permission = b.acquirePermission();
+			assertTrue(permission >= 0);
+			b.recordSuccess(permission);
+			assertEquals(CircuitState.CLOSED, b.getState());
+			assertEquals(CircuitState.CLOSED, a.getState());
+		}
+	}
+
+	@Test
+	public void testLoserOfASimultaneousTripTakesOverTheRecovery() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore first = new MappedCircuitStateStore(file);
+				MappedCircuitStateStore second = new MappedCircuitStateStore(file)) {
+			TestBreaker a = new TestBreaker(new VirtualClock(), first);
+			AtomicBoolean tripTogether = new AtomicBoolean();
+			VirtualClock clock = new VirtualClock() {
+				public long currentTimeMillis() {
+					// the other process trips the circuit once this one has read its state
+					if (tripTogether.compareAndSet(true, false))
+						a.trip();
+					return super.currentTimeMillis();
+				}
+			};
+			TestBreaker b = new TestBreaker(clock, second);
+			List<CircuitState> transitions = new CopyOnWriteArrayList<CircuitState>();
+			b.addStateTransitionListener((from, to) -> transitions.add(to));
+			tripTogether.set(true);
+			b.trip();
+			assertFalse(tripTogether.get());
+			// the process which won the trip is gone before its recovery
+			a.shutdown();
+			assertEquals(CircuitState.OPEN, b.getState());
+			assertEquals(-1, b.acquirePermission());
+			assertEquals(1, transitions.size());
+			assertEquals(CircuitState.OPEN, transitions.get(0));
+			clock.advance(1, TimeUnit.SECONDS);
+			assertEquals(CircuitState.HALF_OPEN, b.getState());
+			assertEquals(CircuitState.HALF_OPEN, transitions.get(1));
+		}
+	}
+
+	@Test
+	public void testStateOutlivesTheProcesses() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore store = new MappedCircuitStateStore(file)) {
+			new TestBreaker(new VirtualClock(), store).trip();
+		}
+		try (MappedCircuitStateStore store = new MappedCircuitStateStore(file)) {
+			VirtualClock clock = new VirtualClock();
+			TestBreaker b = new TestBreaker(clock, store);
+			assertEquals(CircuitState.OPEN, b.getState());
+			assertEquals(-1, b.acquirePermission());
+			clock.advance(1, TimeUnit.SECONDS);
+			assertEquals(CircuitState.HALF_OPEN, b.getState());
+		}
+	}
+
+	@Test
+	public void testSlotsByName() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore store = new MappedCircuitStateStore(file, 2)) {
+			CircuitStateSlot payments = store.getSlot("payments", 60000, 0);
+			CircuitStateSlot orders = store.getSlot("orders", 60000, 0);
+			assertSame(payments, store.getSlot("payments", 60000, 0));
+			assertNotSame(payments, orders);
+			assertTrue(payments.compareAndSetWord(0, 42));
+			assertEquals(0, orders.getWord());
+			try {
+				store.getSlot("customers", 60000, 0);
+				fail("The file should be full");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			try {
+				store.getSlot(new String(new char[65]).replace('\0', 'x'), 60000, 0);
+				fail("The name should be too long");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try (MappedCircuitStateStore store = new MappedCircuitStateStore(file, 2)) {
+			assertEquals(42, store.getSlot("payments", 60000, 0).getWord());
+		}
+	}
+
+	@Test
+	public void testAbandonedClaimIsClaimedAgain() throws IOException {
+		File file = folder.newFile();
+		new MappedCircuitStateStore(file, 1).close();
+		// a process is gone in the middle of claiming the only slot: its status,
+		// the first word after the 8 words of the header, is a claim forever
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			ByteBuffer claim = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder());
+			claim.putLong(0, (42L << 2) | 1);
+			channel.write(claim, 8 * Long.BYTES);
+		}
+		try (MappedCircuitStateStore first = new MappedCircuitStateStore(file, 1);
+				MappedCircuitStateStore second = new MappedCircuitStateStore(file, 1)) {
+			long start = System.nanoTime();
+			CircuitStateSlot slot = first.getSlot("payments", 60000, 0);
+			assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+			assertEquals(0, slot.getWord());
+			slot.recordFault(0);
+			assertEquals(1, second.getSlot("payments", 60000, 0).countFaults(0));
+		}
+	}
+
+	@Test
+	public void testFaultWindowOfSlotAtNegativeTimes() throws IOException {
+		File file = folder.newFile();
+		try (MappedCircuitStateStore store = new MappedCircuitStateStore(file, 2)) {
+			CircuitStateSlot payments = store.getSlot("payments", 60000, 0);
+			CircuitStateSlot orders = store.getSlot("orders", 60000, 0);
+			payments.recordFault(-1);
+			payments.recordFault(-1500);
+			assertEquals(2, payments.countFaults(0));
+			assertEquals(2, payments.getFaults(0).length / 2);
+			assertEquals(0, orders.countFaults(0));
+			payments.clearFaults();
+			assertEquals(0, payments.countFaults(0));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotAStateFile() throws IOException {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write("not a circuit state file".getBytes("UTF-8"));
+		}
+		new MappedCircuitStateStore(file).close();
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker(CircuitClock clock, CircuitStateStore store) {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 3;
+				}
+			}, new DefaultHealthThreshold() {
+				public int getDelayBetweenHealthChecks() {
+					return 1;
+				}
+
+				public int getPermittedCallsInHalfOpenState() {
+					return 1;
+				}
+			}, clock, store, "payments");
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.impl.CircuitSimulation;
+import org.anichakra.framework.circuitbreaker.impl.CircuitSimulation.Result;
+import org.anichakra.framework.circuitbreaker.impl.CircuitSimulation.Transition;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.junit.Test;
+
+public class SimulationTest {
+
+	/**
+	 * The timeline of MockRemoteService: healthy for 15 seconds, unstable
+	 * until 30 seconds, unresponsive until 90 seconds and healthy again
+	 */
+	private static final CircuitSimulation.Scenario MOCK_REMOTE_SERVICE = (elapsed, random) -> {
+		if (elapsed < 15000 || elapsed >= 90000)
+			return 10;
+		if (elapsed >= 30000)
+			return 60000;
+		switch (random.nextInt(3)) {
+		case 0:
+			return 60000;
+		case 1:
+			return -1;
+		default:
+			return 10;
+		}
+	};
+
+	@Test
+	public void testTripAndRecovery() {
+		long start = System.nanoTime();
+		Result result = newSimulation(1).run(Duration.ofSeconds(300), Duration.ofMillis(200));
+		assertTrue("Simulation took too long", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		assertEquals(1500, result.getRequests());
+		assertTrue(result.getShortCircuited() > 0);
+		assertEquals(CircuitState.CLOSED, result.getFinalState());
+		List<Transition> transitions = result.getTransitions();
+		assertTrue(transitions.size() >= 2);
+		Transition trip = transitions.get(0);
+		assertEquals(CircuitState.OPEN, trip.getTo());
+		assertTrue(trip.getElapsedMillis() >= 15000);
+		Transition recovery = transitions.get(transitions.size() - 1);
+		assertEquals(CircuitState.CLOSED, recovery.getTo());
+		assertTrue(recovery.getElapsedMillis() >= 90000);
+	}
+
+	@Test
+	public void testSameSeedSameResult() {
+		assertEquals(newSimulation(7).run(Duration.ofHours(1), Duration.ofMillis(100)).toString(),
+				newSimulation(7).run(Duration.ofHours(1), Duration.ofMillis(100)).toString());
+	}
+
+	@Test
+	public void testVirtualClockOrder() {
+		VirtualClock clock = new VirtualClock();
+		List<String> runs = new ArrayList<String>();
+		clock.schedule(() -> runs.add("b"), 2, TimeUnit.SECONDS);
+		clock.schedule(() -> runs.add("a"), 1, TimeUnit.SECONDS);
+		clock.schedule(() -> runs.add("c"), 2, TimeUnit.SECONDS);
+		clock.schedule(() -> runs.add("d"), 3, TimeUnit.SECONDS).cancel(false);
+		clock.advance(2, TimeUnit.SECONDS);
+		assertEquals("[a, b, c]", runs.toString());
+		assertEquals(2000, clock.getElapsedMillis());
+		assertEquals(VirtualClock.DEFAULT_START_MILLIS + 2000, clock.currentTimeMillis());
+		clock.advance(1, TimeUnit.SECONDS);
+		assertEquals("[a, b, c]", runs.toString());
+		assertEquals(0, clock.getPendingTasks());
+	}
+
+	/**
+	 * The thresholds of {@link MainTest}
+	 */
+	private static CircuitSimulation newSimulation(long seed) {
+		return new CircuitSimulation(new DefaultFaultThreshold() {
+			public int getTimeSpanForCheck() {
+				return 1; // minute
+			}
+		}, new DefaultHealthThreshold() {
+			public int getTimeSpanForCheck() {
+				return 1; // minute
+			}
+
+			public int getDelayBetweenHealthChecks() {
+				return 5; // seconds
+			}
+		}, Duration.ofSeconds(2), MOCK_REMOTE_SERVICE, seed);
+	}
+}
@@ -0,0 +1,105 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.SlidingTimeWindow;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+public class SlidingTimeWindowTest {
+
+	@Test
+	public void testEmptyWindow() {
+		SlidingTimeWindow window = new SlidingTimeWindow(60000);
+		assertEquals(0, window.count(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void testEventsSlideOut() {
+		SlidingTimeWindow window = new SlidingTimeWindow(1000, 10);
+		long start = 1000000;
+		window.record(start);
+		window.add(start + 450, 2);
+		assertEquals(3, window.count(start + 500));
+		assertEquals(3, window.count(start + 999));
+		assertEquals(2, window.count(start + 1000));
+		assertEquals(0, window.count(start + 1450));
+	}
+
+	@Test
+	public void testBucketReuseAndClear() {
+		SlidingTimeWindow window = new SlidingTimeWindow(1000, 10);
+		long start = 1000000;
+		window.record(start);
+		window.record(start + 1000);
+		assertEquals(1, window.count(start + 1000));
+		window.clear();
+		assertEquals(0, window.count(start + 1000));
+	}
+
+	@Test
+	public void testZeroSpan() {
+		SlidingTimeWindow window = new SlidingTimeWindow(0);
+		assertEquals(1, window.getBucketMillis());
+		window.record(1000000);
+		assertEquals(1, window.count(1000000));
+		assertEquals(0, window.count(1000000 + SlidingTimeWindow.DEFAULT_BUCKETS));
+	}
+
+	@Test
+	public void testZeroTimeSpanForCheck() {
+		AbstractCircuitBreaker<Integer, Integer> breaker = new AbstractCircuitBreaker<Integer, Integer>(
+				new DefaultFaultThreshold() {
+					public int getTimeSpanForCheck() {
+						return 0;
+					}
+
+					public int getMaxAllowableFaults() {
+						return 0;
+					}
+				}, new DefaultHealthThreshold()) {
+
+			public Integer executeFallback(Integer k) {
+				return -1;
+			}
+
+			protected Class<? extends Exception> getFaultType() {
+				return MockServiceSystemException.class;
+			}
+		};
+		assertTrue(breaker.checkFault(new MockServiceSystemException("fault")));
+	}
+
+	@Test
+	public void testNegativeTimes() {
+		SlidingTimeWindow window = new SlidingTimeWindow(1000, 10);
+		long start = -1000050;
+		window.record(start);
+		window.add(start + 100, 2);
+		assertEquals(3, window.count(start + 100));
+		assertEquals(2, window.count(start + 1000));
+		assertEquals(0, window.count(start + 1100));
+		assertEquals(2, window.getBuckets(start + 100).length / 2);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final SlidingTimeWindow window = new SlidingTimeWindow(60000);
+		final long now = System.currentTimeMillis();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10000; j++)
+					window.record(now);
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(80000, window.count(now));
+	}
+}
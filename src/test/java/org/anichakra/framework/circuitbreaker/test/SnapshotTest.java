@@ -0,0 +1,198 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.anichakra.framework.circuitbreaker.api.Circuit;
+import org.anichakra.framework.circuitbreaker.api.CircuitBreaker;
+import org.anichakra.framework.circuitbreaker.api.CircuitHandle;
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.api.ExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.api.SnapshotPolicy;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.CircuitSnapshot;
+import org.anichakra.framework.circuitbreaker.impl.DefaultCommandRegistry;
+import org.anichakra.framework.circuitbreaker.impl.DefaultExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultSnapshotPolicy;
+import org.anichakra.framework.circuitbreaker.impl.SystemClock;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Two registries with the same snapshot file stand for a process and the one
+ * restarted after it.
+ */
+public class SnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOpenCircuitIsRestored() throws IOException {
+		SnapshotPolicy policy = new DefaultSnapshotPolicy(new File(folder.getRoot(), "circuits.snapshot"));
+		DefaultCommandRegistry before = new DefaultCommandRegistry(policy);
+		TestCircuit tripped = new TestCircuit();
+		before.register("payments", tripped);
+		before.register("orders", new TestCircuit());
+		tripped.breaker.trip();
+		before.close();
+
+		DefaultCommandRegistry after = new DefaultCommandRegistry(policy);
+		CircuitHandle<Integer, Integer> payments = after.register("payments", new TestCircuit());
+		CircuitHandle<Integer, Integer> orders = after.register("orders", new TestCircuit());
+		assertEquals(CircuitState.OPEN, payments.getState());
+		assertEquals(CircuitState.CLOSED, orders.getState());
+		after.close();
+	}
+
+	@Test
+	public void testUnregisteredSnapshotIsCarriedForward() throws IOException {
+		SnapshotPolicy policy = new DefaultSnapshotPolicy(new File(folder.getRoot(), "circuits.snapshot"));
+		DefaultCommandRegistry first = new DefaultCommandRegistry(policy);
+		TestCircuit tripped = new TestCircuit();
+		first.register("payments", tripped);
+		tripped.breaker.trip();
+		first.close();
+
+		// the circuit is not registered by the second process before it stops
+		new DefaultCommandRegistry(policy).close();
+
+		DefaultCommandRegistry third = new DefaultCommandRegistry(policy);
+		assertEquals(CircuitState.OPEN, third.register("payments", new TestCircuit()).getState());
+		third.close();
+	}
+
+	@Test
+	public void testStaleSnapshotIsIgnored() throws Exception {
+		File file = new File(folder.getRoot(), "circuits.snapshot");
+		DefaultCommandRegistry before = new DefaultCommandRegistry(new DefaultSnapshotPolicy(file));
+		TestCircuit tripped = new TestCircuit();
+		before.register("payments", tripped);
+		tripped.breaker.trip();
+		before.close();
+		Thread.sleep(50);
+
+		DefaultCommandRegistry after = new DefaultCommandRegistry(new DefaultSnapshotPolicy(file) {
+			public Duration getMaximumAge() {
+				return Duration.ofMillis(10);
+			}
+		});
+		assertEquals(CircuitState.CLOSED, after.register("payments", new TestCircuit()).getState());
+		after.close();
+	}
+
+	@Test
+	public void testCorruptFileIsIgnored() throws IOException {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write("not a snapshot file".getBytes("UTF-8"));
+		}
+		DefaultCommandRegistry registry = new DefaultCommandRegistry(new DefaultSnapshotPolicy(file));
+		assertEquals(CircuitState.CLOSED, registry.register("payments", new TestCircuit()).getState());
+		registry.close();
+	}
+
+	@Test
+	public void testRecoveryCountsTheTimeOpenBeforeTheRestart() {
+		VirtualClock before = new VirtualClock();
+		TestBreaker tripped = new TestBreaker(before);
+		tripped.trip();
+		before.advance(3, TimeUnit.SECONDS);
+		CircuitSnapshot snapshot = tripped.snapshot();
+		assertEquals(CircuitState.OPEN, snapshot.getState());
+		assertEquals(VirtualClock.DEFAULT_START_MILLIS, snapshot.getOpenSinceMillis());
+
+		// restarted a second later
+		VirtualClock after = new VirtualClock(before.currentTimeMillis() + 1000);
+		TestBreaker restored = new TestBreaker(after);
+		assertTrue(restored.restore(snapshot));
+		assertEquals(CircuitState.OPEN, restored.getState());
+		assertEquals(-1, restored.acquirePermission());
+		after.advance(1, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, restored.getState());
+		assertFalse(restored.restore(snapshot));
+	}
+
+	@Test
+	public void testFaultsAreRestored() {
+		VirtualClock before = new VirtualClock();
+		TestBreaker faulty = new TestBreaker(before);
+		for (int i = 0; i < 3; i++)
+			assertFalse(faulty.checkFault(new MockServiceSystemException("fault")));
+		CircuitSnapshot snapshot = faulty.snapshot();
+		assertEquals(CircuitState.CLOSED, snapshot.getState());
+
+		TestBreaker restored = new TestBreaker(new VirtualClock(before.currentTimeMillis() + 1000));
+		assertTrue(restored.restore(snapshot));
+		assertEquals(CircuitState.CLOSED, restored.getState());
+		assertTrue(restored.checkFault(new MockServiceSystemException("fault")));
+
+		// the faults have left the window by the time of the restart
+		TestBreaker late = new TestBreaker(new VirtualClock(before.currentTimeMillis() + TimeUnit.MINUTES.toMillis(11)));
+		assertTrue(late.restore(snapshot));
+		assertFalse(late.checkFault(new MockServiceSystemException("fault")));
+	}
+
+	private static class TestCircuit implements Circuit<Integer, Integer> {
+
+		private final TestBreaker breaker = new TestBreaker(SystemClock.INSTANCE);
+
+		public Command<Integer, Integer> getCommand() {
+			return (k) -> k;
+		}
+
+		public CircuitBreaker<Integer, Integer> getCircuitBreaker() {
+			return breaker;
+		}
+
+		public ExecutorServiceFactory getExecutorServiceFactory() {
+			return new DefaultExecutorServiceFactory(1);
+		}
+
+		public ExecutionMode getExecutionMode() {
+			return ExecutionMode.CALLER_THREAD;
+		}
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		TestBreaker(CircuitClock clock) {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 3;
+				}
+			}, new DefaultHealthThreshold() {
+				public int getDelayBetweenHealthChecks() {
+					return 4;
+				}
+
+				public int getPermittedCallsInHalfOpenState() {
+					return 1;
+				}
+			}, clock);
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
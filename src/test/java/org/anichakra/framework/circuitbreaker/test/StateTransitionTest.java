@@ -0,0 +1,183 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.anichakra.framework.circuitbreaker.api.CircuitState;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CircuitClock;
+import org.anichakra.framework.circuitbreaker.impl.DefaultFaultThreshold;
+import org.anichakra.framework.circuitbreaker.impl.DefaultHealthThreshold;
+import org.anichakra.framework.circuitbreaker.impl.SystemClock;
+import org.anichakra.framework.circuitbreaker.impl.VirtualClock;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+/**
+ * The transitions of the packed state word, driven by a {@link VirtualClock}
+ * unless threads race for them.
+ */
+public class StateTransitionTest {
+
+	private static final MockServiceSystemException FAULT = new MockServiceSystemException("fault");
+
+	@Test
+	public void testTripDoesNotBlockAndRecoveryIsScheduled() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock, 0);
+		breaker.trip();
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertEquals(clock.currentTimeMillis(), breaker.getOpenSince());
+		clock.advance(999, TimeUnit.MILLISECONDS);
+		assertEquals(0, breaker.healthChecks.get());
+		clock.advance(1, TimeUnit.MILLISECONDS);
+		assertEquals(1, breaker.healthChecks.get());
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testEveryTransitionIsANewGeneration() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock, 1);
+		long closed = breaker.acquirePermission();
+		breaker.trip(closed);
+		clock.advance(1, TimeUnit.SECONDS);
+		long halfOpen = breaker.acquirePermission();
+		assertEquals(closed + 2, halfOpen);
+		breaker.recordSuccess(halfOpen);
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertEquals(closed + 3, breaker.acquirePermission());
+	}
+
+	@Test
+	public void testStaleTripDoesNotReopenHalfOpenCircuit() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock, 1);
+		long slow = breaker.acquirePermission();
+		breaker.trip();
+		clock.advance(1, TimeUnit.SECONDS);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		// the call permitted before the trip fails late
+		breaker.trip(slow);
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	public void testStaleTripDoesNotReopenClosedCircuit() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock, 1);
+		long slow = breaker.acquirePermission();
+		breaker.trip();
+		clock.advance(1, TimeUnit.SECONDS);
+		breaker.recordSuccess(breaker.acquirePermission());
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		breaker.trip(slow);
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testFaultyTrialRequestReopensTheCircuit() {
+		VirtualClock clock = new VirtualClock();
+		TestBreaker breaker = new TestBreaker(clock, 1);
+		breaker.trip();
+		clock.advance(1, TimeUnit.SECONDS);
+		long trial = breaker.acquirePermission();
+		assertTrue(breaker.checkFault(FAULT, trial));
+		breaker.trip(trial);
+		assertEquals(CircuitState.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void testConcurrentTripsWithOnePermissionOpenOnce() throws InterruptedException {
+		TestBreaker breaker = new TestBreaker(SystemClock.INSTANCE, 1);
+		List<CircuitState> transitions = new CopyOnWriteArrayList<CircuitState>();
+		breaker.addStateTransitionListener((from, to) -> transitions.add(to));
+		long permission = breaker.acquirePermission();
+		race(16, () -> breaker.trip(permission));
+		assertEquals(1, transitions.size());
+		assertEquals(CircuitState.OPEN, transitions.get(0));
+		breaker.shutdown();
+	}
+
+	@Test
+	public void testTripRacingTrialSuccessMakesOneTransition() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			VirtualClock clock = new VirtualClock();
+			TestBreaker breaker = new TestBreaker(clock, 1);
+			breaker.trip();
+			clock.advance(1, TimeUnit.SECONDS);
+			long trial = breaker.acquirePermission();
+			List<CircuitState> transitions = new CopyOnWriteArrayList<CircuitState>();
+			breaker.addStateTransitionListener((from, to) -> transitions.add(to));
+			AtomicInteger turn = new AtomicInteger();
+			race(2, () -> {
+				if (turn.getAndIncrement() == 0)
+					breaker.recordSuccess(trial);
+				else
+					breaker.trip(trial);
+			});
+			// whichever comes first wins, the other one is from a past generation
+			assertEquals(1, transitions.size());
+			assertEquals(transitions.get(0), breaker.getState());
+		}
+	}
+
+	private static void race(int threads, Runnable action) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] racers = new Thread[threads];
+		for (int i = 0; i < racers.length; i++) {
+			racers[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				action.run();
+			});
+			racers[i].start();
+		}
+		start.countDown();
+		for (Thread racer : racers)
+			racer.join();
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Integer, Integer> {
+
+		private final AtomicInteger healthChecks = new AtomicInteger();
+
+		TestBreaker(CircuitClock clock, int permittedCallsInHalfOpenState) {
+			super(new DefaultFaultThreshold() {
+				public int getMaxAllowableFaults() {
+					return 2;
+				}
+			}, new DefaultHealthThreshold() {
+				public int getDelayBetweenHealthChecks() {
+					return 1;
+				}
+
+				public int getPermittedCallsInHalfOpenState() {
+					return permittedCallsInHalfOpenState;
+				}
+			}, clock);
+		}
+
+		public Integer executeFallback(Integer k) {
+			return -1;
+		}
+
+		protected void executeHealthCheck(int counter) {
+			healthChecks.incrementAndGet();
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}
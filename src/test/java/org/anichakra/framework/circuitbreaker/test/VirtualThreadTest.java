@@ -0,0 +1,93 @@
+package org.anichakra.framework.circuitbreaker.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.anichakra.framework.circuitbreaker.api.Command;
+import org.anichakra.framework.circuitbreaker.api.ExecutionMode;
+import org.anichakra.framework.circuitbreaker.impl.AbstractCircuitBreaker;
+import org.anichakra.framework.circuitbreaker.impl.CommandProxy;
+import org.anichakra.framework.circuitbreaker.impl.VirtualThreadExecutorServiceFactory;
+import org.anichakra.framework.circuitbreaker.test.mock.MockServiceSystemException;
+import org.junit.Test;
+
+/**
+ * The threads of {@link VirtualThreadExecutorServiceFactory} are virtual
+ * threads only when the classes of the multi-release jar for Java 21 are
+ * loaded, the tests check whichever version of the classes is on the class
+ * path.
+ */
+public class VirtualThreadTest {
+
+	@Test
+	public void testBlockedCallsDoNotWaitForEachOther() throws InterruptedException {
+		ExecutorService executor = new VirtualThreadExecutorServiceFactory().getExecutorService();
+		CountDownLatch started = new CountDownLatch(500);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			for (int i = 0; i < 500; i++) {
+				executor.execute(() -> {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+			}
+			assertTrue("Every blocked call has its own thread", started.await(10, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testThreadsAreVirtualWhenSupported() throws Exception {
+		ExecutorService executor = new VirtualThreadExecutorServiceFactory().getExecutorService();
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		executor.submit(() -> thread.set(Thread.currentThread())).get(10, TimeUnit.SECONDS);
+		executor.shutdown();
+		assertEquals(VirtualThreadExecutorServiceFactory.isVirtualThreadSupported(), isVirtual(thread.get()));
+		assertTrue("The threads do not keep the JVM alive", thread.get().isDaemon());
+		assertTrue(thread.get().getName().startsWith("circuit-breaker-command-"));
+	}
+
+	@Test
+	public void testCommandExecutesInThreadOfTheFactory() throws Exception {
+		Command<Long, Thread> command = new CommandProxy<Long, Thread>((k) -> Thread.currentThread(),
+				new TestBreaker(), new VirtualThreadExecutorServiceFactory(), ExecutionMode.THREAD_POOL);
+		Thread thread = command.execute(0L);
+		assertTrue(thread.getName().startsWith("circuit-breaker-command-"));
+		assertEquals(VirtualThreadExecutorServiceFactory.isVirtualThreadSupported(), isVirtual(thread));
+	}
+
+	private static boolean isVirtual(Thread thread) throws Exception {
+		Method isVirtual;
+		try {
+			isVirtual = Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			// a runtime older than Java 21
+			return false;
+		}
+		return (Boolean) isVirtual.invoke(thread);
+	}
+
+	private static class TestBreaker extends AbstractCircuitBreaker<Long, Thread> {
+
+		public Thread executeFallback(Long k) {
+			return null;
+		}
+
+		protected Class<? extends Exception> getFaultType() {
+			return MockServiceSystemException.class;
+		}
+	}
+}